@@ -0,0 +1,370 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import GUI.ModelImage;
+import Model.Procedure;
+import Model.ProcedureFrame;
+import Model.Step;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+
+/**
+ * Converts, validates and renders models from the command line without a
+ * display. Files run in parallel on a bounded pool of worker threads and the
+ * time spent on every step is reported for each file.
+ *
+ * @author Christos Darisaplis
+ */
+public class BatchConverter {
+
+    private static final String USAGE = "usage: Picturesque [options] files or directories\n"
+            + "  -o DIR     output directory, default is next to each input file\n"
+            + "  -t N       worker threads, default is one per processor\n"
+            + "  -f FORMAT  json, compact, binary, deflate or none (default json)\n"
+            + "  -v         validate, read every converted file back and compare it\n"
+            + "  -r         render every model to a PNG image";
+
+    private static final String OUT_SUFFIX = ".export";//added to output names
+    private static final String IMAGE_EXT = ".png";
+
+    /*Options*/
+    private File outDir;//null to write next to the inputs
+    private int threads;
+    private String format;
+    private boolean validate;
+    private boolean render;
+
+    private final List<Path> inputs;//files to process
+    private final List<Path> roots;//directory or file each input was found in
+
+    private BatchConverter() {
+        outDir = null;
+        threads = Runtime.getRuntime().availableProcessors();
+        format = "json";
+        validate = false;
+        render = false;
+        inputs = new ArrayList<>();
+        roots = new ArrayList<>();
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs a batch
+     *
+     * @param args the command line arguments
+     *
+     * @return exit code, 0 if all files succeeded, 1 if any failed and 2 for
+     * bad arguments
+     */
+    public static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");//never needs a display
+
+        BatchConverter batch = new BatchConverter();
+        try {
+            batch.parseArgs(args);
+        } catch (IllegalArgumentException | IOException ex) {
+            System.out.println(ex.getMessage());
+            System.out.println(USAGE);
+            return 2;
+        }
+        return batch.runAll();
+    }
+
+    /**
+     * Reads options and collects the model files to process
+     *
+     * @param args the command line arguments
+     *
+     * @throws IllegalArgumentException bad option
+     * @throws IOException directory listing error
+     */
+    private void parseArgs(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-o":
+                    outDir = new File(optionValue(args, ++i, arg));
+                    break;
+                case "-t":
+                    try {
+                        threads = Integer.parseInt(optionValue(args, ++i, arg));
+                    } catch (NumberFormatException ex) {
+                        threads = 0;
+                    }
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("Bad thread count");
+                    }
+                    break;
+                case "-f":
+                    format = optionValue(args, ++i, arg);
+                    if (!Stream.of("json", "compact", "binary", "deflate", "none")
+                            .anyMatch(format::equals)) {
+                        throw new IllegalArgumentException("Unknown format " + format);
+                    }
+                    break;
+                case "-v":
+                    validate = true;
+                    break;
+                case "-r":
+                    render = true;
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    addInput(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No model files given");
+        }
+        if (validate && format.equals("none")) {
+            throw new IllegalArgumentException("Nothing to validate without a format");
+        }
+
+        /*Files with the same name in different directories would write to the
+        same output when it goes to one directory*/
+        Map<Path, Path> outputs = new HashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            Path base = outputBase(inputs.get(i), roots.get(i))
+                    .toAbsolutePath().normalize();
+            Path other = outputs.putIfAbsent(base, inputs.get(i));
+            if (other != null) {
+                throw new IllegalArgumentException(other + " and "
+                        + inputs.get(i) + " would write to the same files");
+            }
+        }
+    }
+
+    private static String optionValue(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    /**
+     * Adds a model file, or every JSON and binary model in a directory tree
+     */
+    private void addInput(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            inputs.add(path);
+            roots.add(path.getParent());
+            return;
+        }
+        List<Path> found;
+        try (Stream<Path> walk = Files.walk(path)) {
+            found = walk.filter(Files::isRegularFile)
+                    .filter(p -> {
+                        String name = p.getFileName().toString();
+                        return (name.endsWith(".json") || name.endsWith(".pqm"))
+                                && !name.contains(OUT_SUFFIX + ".");
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path aFile : found) {
+            inputs.add(aFile);
+            roots.add(path);
+        }
+    }
+
+    /**
+     * Processes every file and prints one line per file, in input order
+     *
+     * @return exit code
+     */
+    private int runAll() {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            Path input = inputs.get(i);
+            Path root = roots.get(i);
+            results.add(pool.submit(() -> processFile(input, root)));
+        }
+        pool.shutdown();
+
+        int failed = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            try {
+                System.out.println("OK     " + inputs.get(i) + "  "
+                        + results.get(i).get());
+            } catch (ExecutionException | InterruptedException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                System.out.println("FAILED " + inputs.get(i) + "  "
+                        + cause.getClass().getSimpleName() + ": "
+                        + cause.getMessage());
+                failed++;
+            }
+        }
+
+        System.out.println(String.format("%d files, %d failed, %d ms", inputs.size(),
+                failed, (System.nanoTime() - start) / 1000000));
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Runs a single file through all steps, on a worker thread
+     *
+     * @param input model file
+     * @param root directory the file was found in, null for the current one
+     *
+     * @return timings of every step
+     *
+     * @throws Exception any failure of any step
+     */
+    private String processFile(Path input, Path root) throws Exception {
+        StringBuilder report = new StringBuilder();
+
+        long time = System.nanoTime();
+        Procedure model = new ModelImporter(input.toFile(), true).importModel();
+        time = lap(report, "import", time);
+
+        Path basePath = outputBase(input, root);
+        if (outDir != null) {
+            Files.createDirectories(basePath.toAbsolutePath().getParent());
+        }
+        String base = basePath.toString();
+        if (!format.equals("none")) {
+            File out = new File(base + OUT_SUFFIX
+                    + (format.equals("binary") || format.equals("deflate")
+                    ? ".pqm" : ".json"));
+            ModelExporter exporter = new ModelExporter(model);
+            switch (format) {
+                case "binary":
+                case "deflate":
+                    exporter.exportBinaryModel(out, format.equals("deflate"));
+                    break;
+                default:
+                    exporter.exportModel(out, format.equals("compact"));
+            }
+            time = lap(report, "export", time);
+
+            if (validate) {
+                Procedure readBack = new ModelImporter(out, true).importModel();
+                String diff = compare(model.getFrames(), readBack.getFrames());
+                if (diff != null) {
+                    throw new IOException(out + " differs: " + diff);
+                }
+                time = lap(report, "validate", time);
+            }
+        }
+
+        if (render) {
+            File image = new File(base + IMAGE_EXT);
+            if (!ImageIO.write(ModelImage.render(model), "png", image)) {
+                throw new IOException("No PNG writer available");
+            }
+            lap(report, "render", time);
+        }
+
+        int blocks = 0;
+        for (ProcedureFrame aFrame : model.getFrames()) {
+            blocks += aFrame.getSteps().size();
+        }
+        report.append(String.format("  (%d frames, %d blocks)", model.size(),
+                blocks));
+        return report.toString();
+    }
+
+    /**
+     * Appends the time elapsed since a step started
+     *
+     * @return current time, start of the next step
+     */
+    private static long lap(StringBuilder report, String step, long start) {
+        long now = System.nanoTime();
+        report.append(String.format("%s %d ms  ", step, (now - start) / 1000000));
+        return now;
+    }
+
+    /**
+     * Returns the path output names start with, keeping its place below the
+     * input directory when writing to an output directory. The extension is
+     * kept, so a.json and a.pqm never write to the same files.
+     */
+    private Path outputBase(Path input, Path root) {
+        if (outDir == null) {
+            return input;
+        }
+        Path relative = root != null ? root.relativize(input)
+                : input.getFileName();
+        return outDir.toPath().resolve(relative);
+    }
+
+    /**
+     * Compares two models frame by frame and block by block
+     *
+     * @return first difference, null if they are the same
+     */
+    private static String compare(List<ProcedureFrame> expected,
+            List<ProcedureFrame> actual) {
+        if (expected.size() != actual.size()) {
+            return expected.size() + " frames expected, found " + actual.size();
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            ProcedureFrame a = expected.get(i), b = actual.get(i);
+            if (!a.getName().equals(b.getName())) {
+                return "frame " + i + " title";
+            }
+            List<Step> aBlocks = a.getSteps(), bBlocks = b.getSteps();
+            if (aBlocks.size() != bBlocks.size()) {
+                return "frame " + i + " block count";
+            }
+            for (int j = 0; j < aBlocks.size(); j++) {
+                Step x = aBlocks.get(j), y = bBlocks.get(j);
+                if (!x.getName().equals(y.getName())
+                        || !x.getEntity().equals(y.getEntity())
+                        || !x.getAttributes().equals(y.getAttributes())) {
+                    return "frame " + i + " block " + j;
+                }
+            }
+        }
+        return null;
+    }
+}
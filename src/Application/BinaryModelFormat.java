@@ -0,0 +1,353 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import Model.EntityRegistry;
+import Model.ProcedureFrame;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads and writes the application's native binary model format. The layout
+ * is:
+ *
+ * <pre>
+ * header   magic "PQMB", u16 version, u16 flags (bit 0: body is deflated)
+ * body     varint string count, then each string as varint length + UTF-8
+ *          varint frame count
+ *          u32 length of the frame records, then u32 offset of each record
+ *          frame records
+ * record   varint title, varint block count, then for every block
+ *          varint name, varint entity, varint attribute prefix,
+ *          varint attribute remainder
+ * </pre>
+ *
+ * Every string is stored once in the dictionary and referred to by its index,
+ * attribute strings are split after their first ": " so prefixes such as
+ * "Subprocess: " are shared too. The JSON export remains the interchange
+ * format.
+ *
+ * @author Christos Darisaplis
+ */
+class BinaryModelFormat {
+
+    private static final byte[] MAGIC = {'P', 'Q', 'M', 'B'};
+    private static final int VERSION = 1;
+    private static final int FLAG_DEFLATE = 1;
+
+    private static final String ATTR_SEPARATOR = ": ";
+    private static final int BUFFER_SIZE = 65536;
+    private static final int MAX_STRING = 64 * 1024 * 1024;//sanity check
+    private static final int MAX_PRESIZE = 4096;//counts are only trusted so far
+
+    private BinaryModelFormat() {
+    }
+
+    /**
+     * Checks if a file starts with the binary model signature
+     *
+     * @param file file to check
+     *
+     * @return true for a binary model, false otherwise or if it can't be read
+     */
+    static boolean isBinaryModel(File file) {
+        byte[] head = new byte[MAGIC.length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(head);
+        } catch (IOException ex) {
+            return false;
+        }
+        return Arrays.equals(head, MAGIC);
+    }
+
+    /**
+     * Writes a model snapshot
+     *
+     * @param raw destination, not closed
+     * @param titles frame titles
+     * @param blocks name, entity and attributes of each frame's blocks
+     * @param deflate true to compress the body
+     *
+     * @throws IOException writing exception
+     */
+    static void write(OutputStream raw, String[] titles, String[][] blocks,
+            boolean deflate) throws IOException {
+        DataOutputStream header = new DataOutputStream(raw);
+        header.write(MAGIC);
+        header.writeShort(VERSION);
+        header.writeShort(deflate ? FLAG_DEFLATE : 0);
+        header.flush();
+
+        /*Build the dictionary and encode the records in one pass*/
+        HashMap<String, Integer> ids = new HashMap<>();
+        ArrayList<String> dictionary = new ArrayList<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream(BUFFER_SIZE);
+        int[] offsets = new int[titles.length];
+        for (int i = 0; i < titles.length; i++) {
+            offsets[i] = records.size();
+            writeVarint(records, intern(titles[i], ids, dictionary));
+
+            String[] blockStrings = blocks[i];
+            writeVarint(records, blockStrings.length / 3);
+            for (int j = 0; j < blockStrings.length; j += 3) {
+                writeVarint(records, intern(blockStrings[j], ids, dictionary));
+                writeVarint(records, intern(blockStrings[j + 1], ids, dictionary));
+
+                String attr = blockStrings[j + 2];
+                int split = attr.indexOf(ATTR_SEPARATOR);
+                split = split < 0 ? 0 : split + ATTR_SEPARATOR.length();
+                writeVarint(records, intern(attr.substring(0, split), ids, dictionary));
+                writeVarint(records, intern(attr.substring(split), ids, dictionary));
+            }
+        }
+
+        Deflater deflater = deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            OutputStream bodyOut = deflate ? new DeflaterOutputStream(raw, deflater,
+                    BUFFER_SIZE) : raw;
+            DataOutputStream body = new DataOutputStream(
+                    new BufferedOutputStream(bodyOut, BUFFER_SIZE));
+
+            writeVarint(body, dictionary.size());
+            for (String str : dictionary) {
+                byte[] utf = str.getBytes(StandardCharsets.UTF_8);
+                writeVarint(body, utf.length);
+                body.write(utf);
+            }
+
+            writeVarint(body, titles.length);
+            body.writeInt(records.size());
+            for (int offset : offsets) {
+                body.writeInt(offset);
+            }
+            records.writeTo(body);
+
+            body.flush();
+            if (deflate) {
+                ((DeflaterOutputStream) bodyOut).finish();
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Reads a model, passing each frame to the importer's listener as soon as
+     * it has been read
+     *
+     * @param raw source positioned at the start of the file
+     * @param owner importer that gets notified of finished frames
+     *
+     * @return list containing all of the model's frames
+     *
+     * @throws IOException reading exception or corrupt file
+     */
+    static ArrayList<ProcedureFrame> read(InputStream raw, ModelImporter owner)
+            throws IOException {
+        DataInputStream header = new DataInputStream(raw);
+        byte[] magic = new byte[MAGIC.length];
+        header.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary model file");
+        }
+        int version = header.readUnsignedShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported binary model version " + version);
+        }
+        int flags = header.readUnsignedShort();
+
+        Inflater inflater = new Inflater();
+        try {
+            InputStream bodyIn = (flags & FLAG_DEFLATE) != 0
+                    ? new InflaterInputStream(raw, inflater, BUFFER_SIZE) : raw;
+            DataInputStream body = new DataInputStream(
+                    new BufferedInputStream(bodyIn, BUFFER_SIZE));
+
+            /*Counts come from the file, lists grow as far as it really goes*/
+            int dictionarySize = readVarint(body);
+            ArrayList<String> dictionary = new ArrayList<>(
+                    Math.min(dictionarySize, MAX_PRESIZE));
+            byte[] utf = new byte[256];
+            for (int i = 0; i < dictionarySize; i++) {
+                int length = readVarint(body);
+                if (length > MAX_STRING) {
+                    throw corrupt();
+                }
+                if (length > utf.length) {
+                    utf = new byte[Math.max(length, utf.length * 2)];
+                }
+                body.readFully(utf, 0, length);
+                dictionary.add(new String(utf, 0, length, StandardCharsets.UTF_8));
+            }
+
+            /*Every record holds at least a title and a block count*/
+            int frameCount = readVarint(body);
+            int recordsLength = body.readInt();
+            if (recordsLength < 0 || frameCount > recordsLength / 2) {
+                throw corrupt();
+            }
+            int[] offsets = new int[Math.min(frameCount, MAX_PRESIZE) + 1];
+            for (int i = 0; i < frameCount; i++) {
+                if (i + 1 == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, (int) Math.min(
+                            frameCount + 1L, 2L * offsets.length));
+                }
+                offsets[i] = body.readInt();
+            }
+            offsets[frameCount] = recordsLength;
+
+            ArrayList<ProcedureFrame> framesList = new ArrayList<>(
+                    Math.min(frameCount, MAX_PRESIZE));
+            EntityRegistry entities = owner.getEntities();
+            CountingInput records = new CountingInput(body);
+            for (int i = 0; i < frameCount; i++) {//read all frames
+                owner.checkCancelled();
+                if (records.count != offsets[i]) {
+                    throw corrupt();
+                }
+                ProcedureFrame newFrame = new ProcedureFrame(
+                        lookup(dictionary, readVarint(records)), i);
+                int blockCount = readVarint(records);
+                for (int j = 0; j < blockCount; j++) {
+                    String blockName = lookup(dictionary, readVarint(records));
+                    String blockEnt = lookup(dictionary, readVarint(records));
+                    String prefix = lookup(dictionary, readVarint(records));
+                    String rest = lookup(dictionary, readVarint(records));
+                    newFrame.addStep(blockName, entities.intern(blockEnt),
+                            prefix.isEmpty() ? rest : prefix.concat(rest));
+                }
+                framesList.add(newFrame);
+                owner.frameBuilt(newFrame);
+            }
+            if (records.count != offsets[frameCount]) {
+                throw corrupt();
+            }
+            return framesList;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns the dictionary index of a string, adding it if needed
+     */
+    private static int intern(String str, HashMap<String, Integer> ids,
+            ArrayList<String> dictionary) {
+        Integer id = ids.get(str);
+        if (id == null) {
+            id = dictionary.size();
+            ids.put(str, id);
+            dictionary.add(str);
+        }
+        return id;
+    }
+
+    private static String lookup(ArrayList<String> dictionary, int id)
+            throws IOException {
+        if (id >= dictionary.size()) {
+            throw corrupt();
+        }
+        return dictionary.get(id);
+    }
+
+    /**
+     * Writes an unsigned LEB128 integer
+     */
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 integer
+     */
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw corrupt();
+                }
+                return value;
+            }
+        }
+        throw corrupt();
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Corrupt binary model file");
+    }
+
+    /**
+     * Counts the bytes read, so records can be checked against the offset
+     * table
+     */
+    private static final class CountingInput extends InputStream {
+
+        private final InputStream in;
+        private int count;//bytes read so far
+
+        CountingInput(InputStream in) {
+            this.in = in;
+            count = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import Model.Procedure;
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Takes a snapshot of a model to write as JSON in one layout, reusing the JSON
+ * of the frames that haven't changed since they were last written with the
+ * same cache. Those frames aren't copied, so the snapshot costs as much as the
+ * frames edited, and the JSON of the rest is kept for the next export.
+ *
+ * @author Christos Darisaplis
+ */
+public class CachedModelExporter {
+
+    private final ModelExporter snapshot;//frames missing the cache
+    private final boolean compact;//layout of the snapshot's JSON
+
+    /**
+     * Creates the exporter and takes a snapshot of a model to write
+     *
+     * @param toWrite model to write
+     * @param cache JSON of exported frames
+     * @param compact true to leave out all indentation and line breaks
+     */
+    public CachedModelExporter(Procedure toWrite, ExportCache cache,
+            boolean compact) {
+        snapshot = new ModelExporter(toWrite, Objects.requireNonNull(cache),
+                compact);
+        this.compact = compact;
+    }
+
+    /**
+     * Writes the snapshot to the specified file, in the layout it was taken
+     * for
+     *
+     * @param JSONFile file to write
+     *
+     * @throws IOException file writing exception
+     */
+    public void exportModel(File JSONFile) throws IOException {
+        snapshot.exportModel(JSONFile, compact);
+    }
+}
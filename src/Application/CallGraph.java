@@ -0,0 +1,105 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import Model.Procedure;
+import Model.ProcedureFrame;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Calls between the frames of a model, as found by a validation: a frame
+ * calls the frames its "Run Subprocess", "Parallel Procedures" and "Formal
+ * Assestment" blocks point at. The graph doesn't change once taken. A frame's
+ * calls are the same array from one graph to the next for as long as they
+ * haven't changed, so consumers can find the changed frames cheaply.
+ *
+ * @author Christos Darisaplis
+ */
+public final class CallGraph {
+
+    private final Procedure model;
+    private final ProcedureFrame[] frames;//model order, main process first
+    private final Map<ProcedureFrame, ProcedureFrame[]> calls;
+    private final Set<ProcedureFrame> cyclic;//frames calling themselves
+    private final Set<ProcedureFrame> unreachable;//not called from the main
+
+    CallGraph(Procedure model, ProcedureFrame[] frames,
+            Map<ProcedureFrame, ProcedureFrame[]> calls,
+            Set<ProcedureFrame> cyclic, Set<ProcedureFrame> unreachable) {
+        this.model = model;
+        this.frames = frames;
+        this.calls = calls;
+        this.cyclic = cyclic;
+        this.unreachable = unreachable;
+    }
+
+    /**
+     * @return model of the graph
+     */
+    public Procedure getModel() {
+        return model;
+    }
+
+    /**
+     * @return all frames, in model order
+     */
+    public List<ProcedureFrame> getFrames() {
+        return Collections.unmodifiableList(Arrays.asList(frames));
+    }
+
+    /**
+     * Returns the frames a frame calls. The array must not be changed.
+     *
+     * @param frame frame of the graph
+     *
+     * @return frames called, each one once, in the order of the blocks
+     */
+    public ProcedureFrame[] getCalls(ProcedureFrame frame) {
+        return calls.get(frame);
+    }
+
+    /**
+     * @param frame frame of the graph
+     *
+     * @return true if the frame calls itself, directly or through others
+     */
+    public boolean isCyclic(ProcedureFrame frame) {
+        return cyclic.contains(frame);
+    }
+
+    /**
+     * @param frame frame of the graph
+     *
+     * @return true if the main process doesn't call the frame, directly or
+     * through others
+     */
+    public boolean isUnreachable(ProcedureFrame frame) {
+        return unreachable.contains(frame);
+    }
+}
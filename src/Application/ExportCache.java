@@ -0,0 +1,98 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import Model.ProcedureFrame;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the JSON of every exported frame, so the next export of the same
+ * model only serializes the frames that have changed since. A frame's JSON is
+ * valid as long as its modification count is the same, see
+ * ProcedureFrame.getModCount(). Frames that are no longer in use are dropped
+ * along with their JSON.
+ *
+ * @author Christos Darisaplis
+ */
+public final class ExportCache {
+
+    private final Map<ProcedureFrame, Fragment> fragments;
+
+    public ExportCache() {
+        fragments = Collections.synchronizedMap(new WeakHashMap<>());
+    }
+
+    /**
+     * Returns the JSON of a frame, if it hasn't changed since it was cached
+     *
+     * @param frame frame to write
+     * @param modCount modification count of the frame when it was copied
+     * @param indent spaces per indentation level
+     *
+     * @return JSON of the frame, null if not cached
+     */
+    String get(ProcedureFrame frame, int modCount, int indent) {
+        Fragment fragment = fragments.get(frame);
+        return fragment != null && fragment.modCount == modCount
+                && fragment.indent == indent ? fragment.json : null;
+    }
+
+    /**
+     * Keeps the JSON of a frame, replacing any older one
+     *
+     * @param frame frame written
+     * @param modCount modification count of the frame when it was copied
+     * @param indent spaces per indentation level
+     * @param json JSON of the frame
+     */
+    void put(ProcedureFrame frame, int modCount, int indent, String json) {
+        fragments.put(frame, new Fragment(modCount, indent, json));
+    }
+
+    /**
+     * Drops all cached JSON
+     */
+    public void clear() {
+        fragments.clear();
+    }
+
+    /**
+     * JSON of a frame as it was at some modification count
+     */
+    private static final class Fragment {
+
+        private final int modCount;
+        private final int indent;
+        private final String json;
+
+        Fragment(int modCount, int indent, String json) {
+            this.modCount = modCount;
+            this.indent = indent;
+            this.json = json;
+        }
+    }
+}
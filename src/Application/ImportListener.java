@@ -0,0 +1,67 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import Model.ProcedureFrame;
+
+/**
+ * Receives the frames of a model while it is being imported. A frame is only
+ * passed on once the importer will not modify it any more, so it can safely be
+ * handed over to another thread. The main process of a compiler-generated
+ * document is only finished at the end, its blocks are passed on as strings
+ * while it is built so it can be shown early.
+ *
+ * @author Christos Darisaplis
+ */
+public interface ImportListener {
+
+    /**
+     * Called on the importing thread for every finished frame
+     *
+     * @param frame frame that has been completely built
+     */
+    void frameBuilt(ProcedureFrame frame);
+
+    /**
+     * Called on the importing thread once the name of the main process is
+     * known, before any of its blocks. Only streaming imports of
+     * compiler-generated documents, in sequential mode, call it.
+     *
+     * @param name name of the main process
+     */
+    default void mainFrameStarted(String name) {
+    }
+
+    /**
+     * Called on the importing thread for every block added to the main process
+     * after mainFrameStarted()
+     *
+     * @param name name of the block
+     * @param entity entity name of the block
+     * @param attributes attributes of the block
+     */
+    default void mainBlockAdded(String name, String entity, String attributes) {
+    }
+}
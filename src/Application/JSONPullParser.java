@@ -0,0 +1,576 @@
+/*
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * The Software shall be used for Good, not Evil.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads a JSON document one token at a time, never holding more than the
+ * current token in memory. Uses "stleary/JSON-java" only to materialize small
+ * subtrees on request (https://github.com/stleary/JSON-java)
+ *
+ * @author Christos Darisaplis
+ */
+class JSONPullParser implements Closeable {
+
+    /**
+     * Kinds of tokens returned by the parser
+     */
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, KEY, STRING, NUMBER,
+        TRUE, FALSE, NULL, END_DOCUMENT
+    }
+
+    /*Nesting states, one per open container*/
+    private static final int EMPTY_DOC = 0;
+    private static final int NONEMPTY_DOC = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_KEY = 5;//key read, value expected
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;//source of characters
+    private final char[] buffer;
+    private int pos, limit;//read window inside the buffer
+
+    private int[] stack;//nesting states
+    private int depth;
+    private final int baseDepth;//depth of the document inside another one
+
+    private Token peeked;//token read ahead, null if none
+    private String text;//text of the last KEY, STRING or NUMBER token
+
+    /**
+     * Creates a parser over a character stream. The parser does its own
+     * buffering so the reader does not need to be buffered.
+     *
+     * @param in source of the JSON document
+     */
+    JSONPullParser(Reader in) {
+        this(in, 0);
+    }
+
+    /**
+     * Creates a parser over a value captured from another document, which
+     * reports errors at the depths of the original document
+     *
+     * @param in source of the JSON value
+     * @param baseDepth depth the value was captured at, minus one
+     */
+    JSONPullParser(Reader in, int baseDepth) {
+        this.in = in;
+        this.baseDepth = baseDepth;
+        buffer = new char[BUFFER_SIZE];
+        pos = 0;
+        limit = 0;
+
+        stack = new int[32];
+        depth = 1;
+        stack[0] = EMPTY_DOC;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it
+     *
+     * @return next token
+     */
+    Token peek() {
+        if (peeked == null) {
+            peeked = readToken();
+        }
+        return peeked;
+    }
+
+    /**
+     * Consumes and returns the next token
+     *
+     * @return next token
+     */
+    Token next() {
+        Token result = peek();
+        peeked = null;
+        return result;
+    }
+
+    /**
+     * Text of the last consumed KEY, STRING or NUMBER token
+     *
+     * @return token text
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * Current nesting depth, 1 at the top level of the document
+     *
+     * @return depth
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Consumes the next token, which has to be a string value
+     *
+     * @param key key the value belongs to, used in error messages
+     *
+     * @return string value
+     */
+    String nextString(String key) {
+        if (next() != Token.STRING) {
+            throw new JSONException("JSONObject[" + JSONObject.quote(key)
+                    + "] not a string.");
+        }
+        return text;
+    }
+
+    /**
+     * Consumes the next value, including all of its contents
+     */
+    void skipValue() {
+        int open = 0;
+        do {
+            switch (next()) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    open++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    open--;
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    break;
+            }
+        } while (open > 0);
+    }
+
+    /**
+     * Consumes the rest of the array currently open, including its END_ARRAY
+     */
+    void skipRestOfArray() {
+        while (peek() != Token.END_ARRAY) {
+            skipValue();
+        }
+        next();
+    }
+
+    /**
+     * Consumes the next value and returns it re-encoded as compact JSON text,
+     * so it can be replayed later through a new parser
+     *
+     * @return JSON text of the value
+     */
+    String captureValue() {
+        StringBuilder out = new StringBuilder();
+        int open = 0;
+        do {
+            Token t = next();
+            /*Separate from the previous sibling if needed*/
+            char last = out.length() > 0 ? out.charAt(out.length() - 1) : '[';
+            if (t != Token.END_OBJECT && t != Token.END_ARRAY
+                    && last != '[' && last != '{' && last != ':') {
+                out.append(',');
+            }
+            switch (t) {
+                case BEGIN_OBJECT:
+                    out.append('{');
+                    open++;
+                    break;
+                case BEGIN_ARRAY:
+                    out.append('[');
+                    open++;
+                    break;
+                case END_OBJECT:
+                    out.append('}');
+                    open--;
+                    break;
+                case END_ARRAY:
+                    out.append(']');
+                    open--;
+                    break;
+                case KEY:
+                    out.append(JSONObject.quote(text)).append(':');
+                    break;
+                case STRING:
+                    out.append(JSONObject.quote(text));
+                    break;
+                case NUMBER:
+                    out.append(text);
+                    break;
+                case TRUE:
+                    out.append("true");
+                    break;
+                case FALSE:
+                    out.append("false");
+                    break;
+                case NULL:
+                    out.append("null");
+                    break;
+                default:
+                    throw syntaxError("Unexpected end of document");
+            }
+        } while (open > 0);
+        return out.toString();
+    }
+
+    /**
+     * Consumes the next object or array and returns its text as it is in the
+     * document. Only brackets and strings are looked at, which is much
+     * cheaper than tokenizing, so the contents are only checked once the text
+     * is parsed. A value cut short by the end of the document is returned as
+     * far as it goes, so parsing it reports the same error.
+     *
+     * @return JSON text of the value
+     */
+    String captureRawValue() {
+        Token t = next();
+        if (t != Token.BEGIN_OBJECT && t != Token.BEGIN_ARRAY) {
+            throw syntaxError("Expected '{' or '['");
+        }
+        StringBuilder out = new StringBuilder();
+        out.append(t == Token.BEGIN_OBJECT ? '{' : '[');
+        int open = 1;
+        boolean inString = false, escaped = false;
+        while (open > 0 && (pos < limit || fill())) {
+            int start = pos;
+            while (pos < limit && open > 0) {
+                char c = buffer[pos++];
+                if (escaped) {
+                    escaped = false;
+                } else if (inString) {
+                    escaped = c == '\\';
+                    inString = c != '"';
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    open++;
+                } else if (c == '}' || c == ']') {
+                    open--;
+                }
+            }
+            out.append(buffer, start, pos - start);
+        }
+        depth--;
+        return out.toString();
+    }
+
+    /**
+     * Consumes the next value and materializes it. Meant for small subtrees,
+     * such as the list of users of a step, or for documents that are walked
+     * in parallel anyway.
+     *
+     * @return JSONObject, JSONArray, String, Number, Boolean or JSONObject.NULL
+     */
+    Object readValue() {
+        Token t = next();
+        switch (t) {
+            case BEGIN_OBJECT:
+                JSONObject obj = new JSONObject();
+                while (next() == Token.KEY) {
+                    String key = text;
+                    obj.put(key, readValue());
+                }
+                return obj;
+            case BEGIN_ARRAY:
+                JSONArray arr = new JSONArray();
+                while (peek() != Token.END_ARRAY) {
+                    arr.put(readValue());
+                }
+                next();
+                return arr;
+            case STRING:
+                return text;
+            case NUMBER:
+                return JSONObject.stringToValue(text);
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case NULL:
+                return JSONObject.NULL;
+            default:
+                throw syntaxError("Unexpected " + t);
+        }
+    }
+
+    /**
+     * Closes the underlying reader
+     */
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException ex) {
+            throw new JSONException(ex);
+        }
+    }
+
+    /**
+     * Reads the next token from the stream and updates the nesting states
+     *
+     * @return token read
+     */
+    private Token readToken() {
+        int state = stack[depth - 1];
+        int c;
+
+        /*Consume separators depending on where we are*/
+        switch (state) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    depth--;
+                    return Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    depth--;
+                    return Token.END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                c = nextNonWhitespace();
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    depth--;
+                    return Token.END_OBJECT;
+                }
+                if (state == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a key");
+                }
+                text = readString();
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                stack[depth - 1] = DANGLING_KEY;
+                return Token.KEY;
+            case DANGLING_KEY:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                c = nextNonWhitespace();
+                break;
+            case EMPTY_DOC:
+                stack[depth - 1] = NONEMPTY_DOC;
+                c = nextNonWhitespace();
+                break;
+            default://NONEMPTY_DOC
+                if (nextNonWhitespace() != -1) {
+                    throw syntaxError("Unexpected data after the document");
+                }
+                return Token.END_DOCUMENT;
+        }
+
+        /*Read a value*/
+        switch (c) {
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            case '{':
+                push(EMPTY_OBJECT);
+                return Token.BEGIN_OBJECT;
+            case '[':
+                push(EMPTY_ARRAY);
+                return Token.BEGIN_ARRAY;
+            case '"':
+                text = readString();
+                return Token.STRING;
+            case 't':
+                readLiteral("rue");
+                return Token.TRUE;
+            case 'f':
+                readLiteral("alse");
+                return Token.FALSE;
+            case 'n':
+                readLiteral("ull");
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    text = readNumber((char) c);
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void push(int state) {
+        if (depth == stack.length) {//nesting is only bounded by memory
+            int[] newStack = new int[depth * 2];
+            System.arraycopy(stack, 0, newStack, 0, depth);
+            stack = newStack;
+        }
+        stack[depth++] = state;
+    }
+
+    /**
+     * Reads a string body, the opening quote has already been consumed
+     *
+     * @return unescaped string
+     */
+    private String readString() {
+        StringBuilder sb = null;
+        while (true) {
+            int start = pos;
+            while (pos < limit) {//fast path, copy straight from the buffer
+                char c = buffer[pos++];
+                if (c == '"') {
+                    if (sb == null) {
+                        return new String(buffer, start, pos - start - 1);
+                    }
+                    sb.append(buffer, start, pos - start - 1);
+                    return sb.toString();
+                } else if (c == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder();
+                    }
+                    sb.append(buffer, start, pos - start - 1);
+                    sb.append(readEscape());
+                    start = pos;
+                }
+            }
+            if (sb == null) {
+                sb = new StringBuilder();
+            }
+            sb.append(buffer, start, pos - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Illegal escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    private String readNumber(char first) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(first);
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E'
+                    || c == '+' || c == '-') {
+                sb.append(c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private void readLiteral(String rest) {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntaxError("Illegal literal");
+            }
+        }
+    }
+
+    private int nextNonWhitespace() {
+        while (pos < limit || fill()) {
+            char c = buffer[pos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private int read() {
+        if (pos < limit || fill()) {
+            return buffer[pos++];
+        }
+        throw syntaxError("Unexpected end of document");
+    }
+
+    /**
+     * Refills the buffer from the reader
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() {
+        try {
+            int n = in.read(buffer, 0, buffer.length);
+            pos = 0;
+            limit = Math.max(n, 0);
+            return n > 0;
+        } catch (IOException ex) {
+            throw new JSONException(ex);
+        }
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at depth " + (baseDepth + depth));
+    }
+}
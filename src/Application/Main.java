@@ -32,16 +32,21 @@ import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
 /**
- * Sets look and feel and runs application frame
+ * Sets look and feel and runs application frame, or runs a batch when given
+ * command line arguments
  *
  * @author Christos Darisaplis
  */
 public class Main {
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments, if there are any the application
+     * runs as a headless batch converter instead
      */
     public static void main(String[] args) {
+        if (args.length > 0) {//batch mode, see BatchConverter
+            System.exit(BatchConverter.run(args));
+        }
 
         try {//set look and feel
             UIManager.setLookAndFeel(
@@ -24,25 +24,42 @@
  */
 package Application;
 
-import GUI.ProcessBlock;
-import GUI.ProcessFrame;
+import Model.Procedure;
+import Model.ProcedureFrame;
+import Model.Step;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import org.json.JSONArray;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.List;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
- * Exports a model to a JSON file. Uses "stleary/JSON-java" library to handle
- * JSON objects (https://github.com/stleary/JSON-java)
+ * Exports a model to a JSON file. Frames and blocks are written straight to a
+ * buffered stream as they are walked, using "stleary/JSON-java" only to quote
+ * strings (https://github.com/stleary/JSON-java)
  *
  * @author Christos Darisaplis
  */
 public class ModelExporter {
 
-    private ArrayList<ProcessFrame> toWrite;//data to write
+    /*Snapshot of the data to write*/
+    private final String[] titles;//frame titles
+    private final String[][] blocks;//name, entity and attributes of each block
+    private final ProcedureFrame[] frames;//frames copied, keys of the cache
+    private final int[] modCounts;//modification counts of the frames copied
+    private final ExportCache cache;//JSON of unchanged frames, null if none
+    private final String[] cachedJSON;//JSON of frames not copied, if cached
     
     /*JSONObject keys*/
     private static final int IDENTATION = 4;//write identation
@@ -54,17 +71,63 @@ public class ModelExporter {
     private static final String BLOCK_ENT = "entity";
     private static final String BLOCK_ATTR = "attributes";
 
+    private static final int BUFFER_SIZE = 65536;//output buffer size
+    private static final SecureRandom TEMP_NAMES = new SecureRandom();
+
+    /**
+     * Creates the exporter and takes a snapshot of a model to write. Only the
+     * frames' strings are copied, so this is cheap, and the export itself can
+     * then run on another thread while the model is edited.
+     * 
+     * @param toWrite model to write
+     */
+    public ModelExporter(Procedure toWrite) {
+        this(toWrite, null, false);
+    }
+
     /**
-     * Creates the exporter and links it a list of frames to write
+     * Takes a snapshot for CachedModelExporter, leaving out the frames whose
+     * JSON is cached in a layout. Only that JSON export can be written from
+     * it, the frames left out are missing from the binary format.
      * 
-     * @param toWrite list of frames to write
+     * @param toWrite model to write
+     * @param cache JSON of exported frames, null to copy all frames
+     * @param compact layout of the JSON that will be written
      */
-    public ModelExporter(ArrayList<ProcessFrame> toWrite) {
-        this.toWrite = toWrite;
+    ModelExporter(Procedure toWrite, ExportCache cache, boolean compact) {
+        int indent = compact ? 0 : IDENTATION;
+        List<ProcedureFrame> modelFrames = toWrite.getFrames();
+        titles = new String[modelFrames.size()];
+        blocks = new String[modelFrames.size()][];
+        frames = modelFrames.toArray(new ProcedureFrame[0]);
+        modCounts = new int[frames.length];
+        this.cache = cache;
+        cachedJSON = cache != null ? new String[frames.length] : null;
+        for (int i = 0; i < frames.length; i++) {
+            ProcedureFrame aFrame = frames[i];
+            titles[i] = aFrame.getName();
+            modCounts[i] = aFrame.getModCount();
+            if (cache != null) {
+                cachedJSON[i] = cache.get(aFrame, modCounts[i], indent);
+                if (cachedJSON[i] != null) {
+                    continue;//written as it is, nothing to copy
+                }
+            }
+
+            List<Step> steps = aFrame.getSteps();
+            String[] blockStrings = new String[steps.size() * 3];
+            for (int j = 0; j < steps.size(); j++) {
+                Step aStep = steps.get(j);
+                blockStrings[3 * j] = aStep.getName();
+                blockStrings[3 * j + 1] = aStep.getEntity().getName();
+                blockStrings[3 * j + 2] = aStep.getAttributes();
+            }
+            blocks[i] = blockStrings;
+        }
     }
 
     /**
-     * Writes its linked list of Process Frames to the specified file
+     * Writes its snapshot of Process Frames to the specified file
      * 
      * @param JSONFile file to write
      * 
@@ -72,44 +135,249 @@ public class ModelExporter {
      * @throws JSONException  JSON writing exception
      */
     public void exportModel(File JSONFile) throws IOException, JSONException {
-        JSONObject jo = buildJSONObject();
-        
-        try (FileWriter file = new FileWriter(JSONFile)) {
-            file.write(jo.toString(IDENTATION));
-            
+        exportModel(JSONFile, false);
+    }
+
+    /**
+     * Writes its snapshot of Process Frames to the specified file. The file is
+     * written next to its destination first and moved in place at the end, so
+     * a failed export never leaves a half-written model behind.
+     * 
+     * @param JSONFile file to write
+     * @param compact true to leave out all indentation and line breaks
+     * 
+     * @throws IOException file writing exception
+     */
+    public void exportModel(File JSONFile, boolean compact) throws IOException {
+        writeFile(JSONFile, out -> {
+            /*Platform charset, same as FileWriter*/
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out),
+                    BUFFER_SIZE);
+            writeModel(writer, compact ? 0 : IDENTATION);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Writes its snapshot of Process Frames to the specified file in the
+     * application's binary format, which is much smaller and faster to read
+     * than JSON. JSON stays the format to exchange models with other tools.
+     * 
+     * @param modelFile file to write
+     * @param deflate true to compress the file
+     * 
+     * @throws IOException file writing exception
+     */
+    public void exportBinaryModel(File modelFile, boolean deflate)
+            throws IOException {
+        writeFile(modelFile, out -> BinaryModelFormat.write(out, titles, blocks,
+                deflate));
+    }
+
+    /**
+     * Writes its snapshot in the binary model format to a stream
+     * 
+     * @param out destination, not closed
+     * @param deflate true to compress the body
+     * 
+     * @throws IOException writing exception
+     */
+    void writeBinaryModel(OutputStream out, boolean deflate) throws IOException {
+        BinaryModelFormat.write(out, titles, blocks, deflate);
+    }
+
+    /**
+     * Writes a file next to its destination first and moves it in place at the
+     * end, so a failed export never leaves a half-written model behind. The
+     * file keeps the permissions of the one it replaces, a new file gets the
+     * same permissions as if it was written in place. Links are followed, the
+     * file they point to is replaced, not the link.
+     * 
+     * @param file file to write
+     * @param body writes the file's contents
+     * 
+     * @throws IOException file writing exception
+     */
+    private static void writeFile(File file, FileBody body) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        if (Files.exists(target)) {
+            target = target.toRealPath();
+        } else if (Files.isSymbolicLink(target)) {//link to a file not made yet
+            target = target.resolveSibling(Files.readSymbolicLink(target));
         }
+        Path temp = createTemp(target);
+        try {
+            copyPermissions(target, temp);
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                body.write(out);
+            }
 
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
     }
     
     /**
-     * Builds a JSONObject from the linked list of process frames
+     * Creates an empty file next to a target. Unlike Files.createTempFile(),
+     * which makes files only the owner can read, the file gets the default
+     * permissions of new files.
+     * 
+     * @param target file the temporary file will replace
+     * 
+     * @return temporary file
      * 
-     * @return JSONObject representation of the frames
+     * @throws IOException file creation exception
      */
-    private JSONObject buildJSONObject(){
-        JSONObject jo = new JSONObject();
-        JSONObject frameObject, blockObject;
-        
-        jo.put(APP_EXP, true);
-        jo.put(FRAMES_KEY, new JSONArray());//in case of no frames just an empty array
-        
-        for (ProcessFrame aFrame : toWrite){//write all frames
-            frameObject = new JSONObject();
-            frameObject.put(FRAME_TITLE, aFrame.getName());
-            /*Initialize array with an empty array in case of no blocks*/
-            frameObject.put(BLOCKS_KEY, new JSONArray());
-            
-            for (ProcessBlock aBlock : aFrame.getBlocks()){
-                blockObject = new JSONObject();
-                blockObject.put(BLOCK_NAME, aBlock.getName());
-                blockObject.put(BLOCK_ENT, aBlock.getEntName());
-                blockObject.put(BLOCK_ATTR, aBlock.getAttrString());
-                frameObject.append(BLOCKS_KEY, blockObject);
+    private static Path createTemp(Path target) throws IOException {
+        String prefix = target.getFileName().toString() + ".";
+        for (;;) {
+            Path temp = target.resolveSibling(prefix
+                    + Long.toHexString(TEMP_NAMES.nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException ex) {
+                /*Try another name*/
             }
-            jo.append(FRAMES_KEY, frameObject);
         }
+    }
+
+    /**
+     * Gives a file the POSIX permissions of an existing one, if there is one
+     * and the file system has such permissions
+     */
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (!Files.exists(from)) {
+            return;
+        }
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException ex) {
+            /*Not a POSIX file system, nothing to keep*/
+        }
+    }
+
+    /**
+     * Writes the snapshot as an application JSON document
+     * 
+     * @param out destination
+     * @param indent spaces per indentation level, 0 for compact output
+     * 
+     * @throws IOException writing exception
+     */
+    private void writeModel(Writer out, int indent) throws IOException {
+        out.write('{');
+        writeKey(out, APP_EXP, indent, 1, true);
+        out.write("true");
+        writeKey(out, FRAMES_KEY, indent, 1, false);
+        out.write('[');
         
-        return jo;
+        for (int i = 0; i < titles.length; i++) {//write all frames
+            writeBreak(out, indent, 2, i == 0);
+            if (cache == null) {
+                writeFrame(out, i, indent);
+                continue;
+            }
+            /*Only frames changed since the last export are serialized*/
+            String json = cachedJSON[i];
+            if (json == null) {
+                StringWriter frameOut = new StringWriter();
+                writeFrame(frameOut, i, indent);
+                json = frameOut.toString();
+                cache.put(frames[i], modCounts[i], indent, json);
+            }
+            out.write(json);
+        }
+        if (titles.length > 0) {
+            writeEnd(out, ']', indent, 1);
+        } else {
+            out.write(']');
+        }
+        writeEnd(out, '}', indent, 0);
+    }
+
+    /**
+     * Writes a frame object of the snapshot
+     * 
+     * @param out destination
+     * @param i index of the frame
+     * @param indent spaces per indentation level, 0 for compact output
+     * 
+     * @throws IOException writing exception
+     */
+    private void writeFrame(Writer out, int i, int indent) throws IOException {
+        out.write('{');
+        writeKey(out, FRAME_TITLE, indent, 3, true);
+        JSONObject.quote(titles[i], out);
+        writeKey(out, BLOCKS_KEY, indent, 3, false);
+        out.write('[');
+
+        String[] blockStrings = blocks[i];
+        for (int j = 0; j < blockStrings.length; j += 3) {
+            writeBreak(out, indent, 4, j == 0);
+            out.write('{');
+            writeKey(out, BLOCK_NAME, indent, 5, true);
+            JSONObject.quote(blockStrings[j], out);
+            writeKey(out, BLOCK_ENT, indent, 5, false);
+            JSONObject.quote(blockStrings[j + 1], out);
+            writeKey(out, BLOCK_ATTR, indent, 5, false);
+            JSONObject.quote(blockStrings[j + 2], out);
+            writeEnd(out, '}', indent, 4);
+        }
+        if (blockStrings.length > 0) {//empty arrays stay on one line
+            writeEnd(out, ']', indent, 3);
+        } else {
+            out.write(']');
+        }
+        writeEnd(out, '}', indent, 2);
+    }
+
+    /**
+     * Writes an object key, preceded by a separator if it's not the first one
+     */
+    private static void writeKey(Writer out, String key, int indent, int level,
+            boolean first) throws IOException {
+        writeBreak(out, indent, level, first);
+        JSONObject.quote(key, out);
+        out.write(indent > 0 ? ": " : ":");
+    }
+
+    /**
+     * Writes a value separator, if needed, and the indentation of a line
+     */
+    private static void writeBreak(Writer out, int indent, int level,
+            boolean first) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        if (indent > 0) {
+            out.write('\n');
+            for (int i = 0; i < indent * level; i++) {
+                out.write(' ');
+            }
+        }
+    }
+
+    /**
+     * Closes an object or array on its own line
+     */
+    private static void writeEnd(Writer out, char end, int indent, int level)
+            throws IOException {
+        writeBreak(out, indent, level, true);
+        out.write(end);
+    }
+
+    /**
+     * Writes the contents of an exported file
+     */
+    private interface FileBody {
+
+        void write(OutputStream out) throws IOException;
     }
 
 }
@@ -0,0 +1,456 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.json.JSONObject;
+
+/**
+ * Generates models of a given shape, as BPMML compiler output or as an
+ * application export, for benchmarks. The same settings and seed always give
+ * the same model, and both forms of it import to the same frames and blocks.
+ * <p>
+ * Frames form a tree under the main process, no deeper than the nesting depth
+ * given. Each subprocess is reached through a "process" command, a
+ * "parallelSteps" command holding one, or the failure branch of a
+ * "conditionSteps" command, in turn, so the importer makes exactly one frame
+ * of each. Frames are filled up with single commands to the number of blocks
+ * given.
+ *
+ * @author Christos Darisaplis
+ */
+public final class ModelGenerator {
+
+    private static final String[] COMMANDS = {"Execute", "Sign", "Send",
+        "Check"};//first words of single commands
+    private static final int ENTITIES = 16;//different users
+    private static final int USER_CHANGE = 7;//blocks between user changes
+
+    /*Kinds of subprocess frames*/
+    private static final int PROCESS = 0;
+    private static final int PARALLEL = 1;
+    private static final int FAILURE = 2;
+
+    private final int frameCount;
+    private final int blocksPerFrame;
+    private final int attrLength;
+    private final long seed;
+
+    private int[] kinds;//kind of each frame, by plan order
+    private List<List<Integer>> children;//subprocesses called by each frame
+
+    /**
+     * Plans a model
+     *
+     * @param frames number of frames, the main process included
+     * @param blocksPerFrame blocks of each frame, subprocess calls included
+     * @param depth nesting depth of subprocesses, at least 1
+     * @param attrLength length of the attributes of single commands
+     * @param seed seed of the generated texts
+     *
+     * @throws IllegalArgumentException if a setting is out of range
+     */
+    public ModelGenerator(int frames, int blocksPerFrame, int depth,
+            int attrLength, long seed) {
+        if (frames < 1 || blocksPerFrame < 1 || depth < 1 || attrLength < 0) {
+            throw new IllegalArgumentException("Bad model shape");
+        }
+        frameCount = frames;
+        this.blocksPerFrame = blocksPerFrame;
+        this.attrLength = attrLength;
+        this.seed = seed;
+        plan(depth);
+    }
+
+    /**
+     * Spreads the frames over a tree no deeper than the depth given, with the
+     * smallest fan-out that fits them, filled breadth first
+     */
+    private void plan(int depth) {
+        int fanOut = 1;
+        while (treeSize(fanOut, depth) < frameCount) {
+            fanOut++;
+        }
+        kinds = new int[frameCount];
+        children = new ArrayList<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 1; i < frameCount; i++) {
+            kinds[i] = i % 3;
+            children.get((i - 1) / fanOut).add(i);
+        }
+    }
+
+    /**
+     * Returns how many frames fit in a tree, capped at the frame count
+     */
+    private long treeSize(int fanOut, int depth) {
+        long size = 1, level = 1;
+        for (int i = 0; i < depth && size < frameCount; i++) {
+            level *= fanOut;
+            size += level;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the model as BPMML compiler output
+     *
+     * @param out destination, not closed
+     *
+     * @throws IOException writing exception
+     */
+    public void writeCompilerModel(Writer out) throws IOException {
+        Texts texts = new Texts();
+        out.write("{\"execute\":{\"name\":");
+        JSONObject.quote(frameName(0, texts), out);
+        out.write(",\"users\":");
+        writeUsers(out, texts.entity(0));
+        out.write(",\"commands\":");
+        writeCommands(out, 0, texts);
+        out.write("}}");
+    }
+
+    /**
+     * Writes the commands of a frame and, nested in them, of its subprocesses
+     */
+    private void writeCommands(Writer out, int frame, Texts texts)
+            throws IOException {
+        out.write('[');
+        boolean first = true;
+        for (Block aBlock : blocks(frame, texts)) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            if (aBlock.userChange != null) {
+                out.write("{\"type\":\"changeUsers\",\"currentUsers\":");
+                writeUsers(out, aBlock.userChange);
+                out.write("},");
+            }
+            if (aBlock.sub < 0) {
+                out.write("{\"type\":\"singleCommand\",\"commands\":");
+                JSONObject.quote(aBlock.command + " " + aBlock.attributes, out);
+                out.write('}');
+                continue;
+            }
+            int sub = aBlock.sub;
+            switch (kinds[sub]) {
+                case PROCESS:
+                    writeProcess(out, sub, texts);
+                    break;
+                case PARALLEL:
+                    out.write("{\"type\":\"parallelSteps\",\"commands\":[");
+                    writeProcess(out, sub, texts);
+                    out.write("]}");
+                    break;
+                default:
+                    out.write("{\"type\":\"conditionSteps\",\"condition\":");
+                    JSONObject.quote(aBlock.condition, out);
+                    out.write(",\"try\":[],\"yes\":[],\"no\":");
+                    writeCommands(out, sub, texts);
+                    out.write('}');
+            }
+        }
+        out.write(']');
+    }
+
+    /**
+     * Writes a "process" command for a subprocess
+     */
+    private void writeProcess(Writer out, int frame, Texts texts)
+            throws IOException {
+        out.write("{\"type\":\"process\",\"name\":");
+        JSONObject.quote(frameName(frame, texts), out);
+        out.write(",\"users\":");
+        writeUsers(out, texts.entity(frame));
+        out.write(",\"commands\":");
+        writeCommands(out, frame, texts);
+        out.write('}');
+    }
+
+    /**
+     * Writes a list of one user, given as its division, department, position
+     * and name
+     */
+    private static void writeUsers(Writer out, String[] user)
+            throws IOException {
+        out.write("[{\"div\":");
+        JSONObject.quote(user[0], out);
+        out.write(",\"dep\":");
+        JSONObject.quote(user[1], out);
+        out.write(",\"pos\":");
+        JSONObject.quote(user[2], out);
+        out.write(",\"name\":");
+        JSONObject.quote(user[3], out);
+        out.write("}]");
+    }
+
+    /**
+     * Writes the model as an application export, frames in the order the
+     * compiler output is imported in
+     *
+     * @param out destination, not closed
+     *
+     * @throws IOException writing exception
+     */
+    public void writeAppModel(Writer out) throws IOException {
+        Texts texts = new Texts();
+        out.write("{\"appExport\":true,\"frames\":[");
+        writeFrame(out, 0, texts.entityName(texts.entity(0)), texts);
+        out.write("]}");
+    }
+
+    /**
+     * Writes a frame object and then its subprocesses, depth first, the order
+     * the importer adds them in
+     *
+     * @param entity entity of the frame's first block
+     */
+    private void writeFrame(Writer out, int frame, String entity, Texts texts)
+            throws IOException {
+        if (frame > 0) {
+            out.write(',');
+        }
+        out.write("{\"title\":");
+        JSONObject.quote(frameName(frame, texts), out);
+        out.write(",\"blocks\":[");
+        List<Block> frameBlocks = blocks(frame, texts);
+        String[] subEntities = new String[frameBlocks.size()];
+        for (int i = 0; i < frameBlocks.size(); i++) {
+            Block aBlock = frameBlocks.get(i);
+            if (aBlock.userChange != null) {
+                entity = texts.entityName(aBlock.userChange);
+            }
+            subEntities[i] = entity;
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write("{\"name\":");
+            JSONObject.quote(blockName(aBlock), out);
+            out.write(",\"entity\":");
+            JSONObject.quote(entity, out);
+            out.write(",\"attributes\":");
+            JSONObject.quote(blockAttributes(aBlock, texts), out);
+            out.write('}');
+        }
+        out.write("]}");
+
+        /*Failure branches go on with the user of the frame calling them*/
+        for (int i = 0; i < frameBlocks.size(); i++) {
+            int sub = frameBlocks.get(i).sub;
+            if (sub >= 0) {
+                writeFrame(out, sub, kinds[sub] == FAILURE ? subEntities[i]
+                        : texts.entityName(texts.entity(sub)), texts);
+            }
+        }
+    }
+
+    /**
+     * Returns the name the importer gives to a block
+     */
+    private String blockName(Block aBlock) {
+        if (aBlock.sub < 0) {
+            return aBlock.command + (aBlock.command.equals("Execute")
+                    ? " Transaction" : " Document");
+        }
+        switch (kinds[aBlock.sub]) {
+            case PROCESS:
+                return "Run Subprocess";
+            case PARALLEL:
+                return "Parallel Procedures";
+            default:
+                return "Formal Assestment";
+        }
+    }
+
+    /**
+     * Returns the attributes the importer gives to a block
+     */
+    private String blockAttributes(Block aBlock, Texts texts) {
+        if (aBlock.sub < 0) {
+            return aBlock.attributes;
+        }
+        String name = frameName(aBlock.sub, texts);
+        switch (kinds[aBlock.sub]) {
+            case PROCESS:
+                return "Subprocess: " + name;
+            case PARALLEL:
+                return texts.parallelList(aBlock.sub);
+            default:
+                return "Condition: " + aBlock.condition + "\nOn Failure: " + name;
+        }
+    }
+
+    /**
+     * Returns the title the importer gives to a frame. Parallel and failure
+     * subprocesses are numbered in the order they are imported.
+     */
+    private String frameName(int frame, Texts texts) {
+        if (frame == 0) {
+            return "Main Process";
+        }
+        switch (kinds[frame]) {
+            case PROCESS:
+                return "Subprocess " + frame;
+            case PARALLEL:
+                return "Parallel Subprocess" + texts.ordinal(frame);
+            default:
+                return "Assestment Failure " + texts.ordinal(frame);
+        }
+    }
+
+    /**
+     * Returns the blocks of a frame, single commands first and the calls to
+     * its subprocesses spread among them
+     */
+    private List<Block> blocks(int frame, Texts texts) {
+        List<Integer> subs = children.get(frame);
+        int count = Math.max(blocksPerFrame, subs.size());
+        List<Block> frameBlocks = new ArrayList<>(count);
+        Random random = new Random(seed * 31 + frame);
+        int nextSub = 0;
+        for (int i = 0; i < count; i++) {
+            Block aBlock = new Block();
+            /*Calls are spread evenly, the last one goes at the end*/
+            if (nextSub < subs.size() && (i + 1) * subs.size() >= (nextSub + 1)
+                    * count) {
+                aBlock.sub = subs.get(nextSub++);
+                aBlock.condition = "condition " + aBlock.sub;
+            } else {
+                aBlock.sub = -1;
+                aBlock.command = COMMANDS[random.nextInt(COMMANDS.length)];
+                aBlock.attributes = texts.attributes(random);
+            }
+            if (i > 0 && i % USER_CHANGE == 0) {
+                aBlock.userChange = texts.entity(random.nextInt(ENTITIES));
+            }
+            frameBlocks.add(aBlock);
+        }
+        return frameBlocks;
+    }
+
+    /**
+     * A block of a frame, either a single command or a subprocess call
+     */
+    private static final class Block {
+
+        private int sub;//subprocess called, -1 for a single command
+        private String command;//first word of a single command
+        private String attributes;//rest of a single command
+        private String condition;//condition of a failure branch
+        private String[] userChange;//user set before the block, null if none
+    }
+
+    /**
+     * Generated texts that depend on the order frames are written in, kept
+     * for one model written
+     */
+    private final class Texts {
+
+        private final int[] ordinals;//numbers of parallel and failure frames
+        private final int[] lastParallel;//parallel number after each subtree
+        private int parallelCount;
+        private int failureCount;
+
+        private Texts() {
+            ordinals = new int[frameCount];
+            lastParallel = new int[frameCount];
+            number(0);
+        }
+
+        /**
+         * Numbers the parallel and failure frames of a subtree in the order
+         * they are imported, depth first
+         */
+        private void number(int frame) {
+            if (frame > 0 && kinds[frame] == PARALLEL) {
+                ordinals[frame] = ++parallelCount;
+            } else if (frame > 0 && kinds[frame] == FAILURE) {
+                ordinals[frame] = ++failureCount;
+            }
+            for (int sub : children.get(frame)) {
+                number(sub);
+            }
+            lastParallel[frame] = parallelCount;
+        }
+
+        private int ordinal(int frame) {
+            return ordinals[frame];
+        }
+
+        /**
+         * Returns the attributes of the block running a parallel frame. Like
+         * the importer, it lists every parallel frame numbered while the
+         * parallel frame's subtree was imported.
+         */
+        private String parallelList(int frame) {
+            StringBuilder list = new StringBuilder();
+            for (int i = ordinals[frame]; i <= lastParallel[frame]; i++) {
+                list.append("Parallel Subprocess ").append(i).append('\n');
+            }
+            return list.toString();
+        }
+
+        /**
+         * Returns a user, given as its division, department, position and name
+         */
+        private String[] entity(int n) {
+            int user = n % ENTITIES;
+            return new String[]{"Division " + user % 3, "Department " + user % 5,
+                "Position " + user % 2, "User " + user};
+        }
+
+        /**
+         * Returns the entity name the importer builds from a user
+         */
+        private String entityName(String[] user) {
+            return user[0] + " " + user[1] + " " + user[2] + " " + user[3];
+        }
+
+        /**
+         * Returns words of the attribute length, with a quote now and then so
+         * the JSON has escapes to handle
+         */
+        private String attributes(Random random) {
+            StringBuilder text = new StringBuilder(attrLength);
+            while (text.length() < attrLength) {
+                int word = 2 + random.nextInt(8);
+                for (int i = 0; i < word && text.length() < attrLength; i++) {
+                    text.append((char) ('a' + random.nextInt(26)));
+                }
+                if (text.length() < attrLength) {
+                    text.append(random.nextInt(20) == 0 ? '"' : ' ');
+                }
+            }
+            return text.toString();
+        }
+    }
+}
@@ -24,12 +24,25 @@
  */
 package Application;
 
-import GUI.ProcessFrame;
-import GUI.WorkspacePanel;
+import Model.EntityRegistry;
+import Model.Procedure;
+import Model.ProcedureFrame;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -44,37 +57,46 @@ import org.json.JSONObject;
 public class ModelImporter {
 
     /*JSON compiler export keys*/
-    private final static String MAIN = "execute";
-    private final static String COMMS = "commands";
-    private final static String NAME = "name";
-    private final static String TYPE = "type";
-    private final static String COMMAND = "singleCommand";
-    private final static String SUBPROCESS = "process";
-    private final static String PARALLEL = "parallelSteps";
-    private final static String CHANGE_ENT = "changeUsers";
-    private final static String CONDITION_STEPS = "conditionSteps";
-    private final static String DIVISION = "div";
-    private final static String DEPARTMENT = "dep";
-    private final static String POSITION = "pos";
-    private final static String USERS = "users";
-    private final static String CUR_USERS = "currentUsers";
-    private final static String TRY = "try";
-    private final static String YES = "yes";
-    private final static String NO = "no";
-    private final static String RETRY = "retry";
-    private final static String CONDITION = "condition";
+    final static String MAIN = "execute";
+    final static String COMMS = "commands";
+    final static String NAME = "name";
+    final static String TYPE = "type";
+    final static String COMMAND = "singleCommand";
+    final static String SUBPROCESS = "process";
+    final static String PARALLEL = "parallelSteps";
+    final static String CHANGE_ENT = "changeUsers";
+    final static String CONDITION_STEPS = "conditionSteps";
+    final static String DIVISION = "div";
+    final static String DEPARTMENT = "dep";
+    final static String POSITION = "pos";
+    final static String USERS = "users";
+    final static String CUR_USERS = "currentUsers";
+    final static String TRY = "try";
+    final static String YES = "yes";
+    final static String NO = "no";
+    final static String RETRY = "retry";
+    final static String CONDITION = "condition";
 
     /*JSON app export keys*/
-    private static final String APP_EXP = "appExport";
-    private static final String FRAME_TITLE = "title";
-    private static final String FRAMES_KEY = "frames";
-    private static final String BLOCKS_KEY = "blocks";
-    private static final String BLOCK_NAME = "name";
-    private static final String BLOCK_ENT = "entity";
-    private static final String BLOCK_ATTR = "attributes";
+    static final String APP_EXP = "appExport";
+    static final String FRAME_TITLE = "title";
+    static final String FRAMES_KEY = "frames";
+    static final String BLOCKS_KEY = "blocks";
+    static final String BLOCK_NAME = "name";
+    static final String BLOCK_ENT = "entity";
+    static final String BLOCK_ATTR = "attributes";
 
     private JSONObject jo;//the entire JSONObject as read from the file
-    private ArrayList<ProcessFrame> framesList;//imported data
+    private JSONPullParser parser;//token source in streaming mode
+    private InputStream binaryIn;//source of a binary model
+    private FileChannel channel;//file being streamed, used for progress
+    private final long fileSize;
+
+    private ImportListener listener;//notified of finished frames
+    private volatile boolean cancelled;//set from other threads
+    private boolean parallel;//build frames and subtrees on the fork-join pool
+    private ArrayList<ProcedureFrame> framesList;//imported data
+    private final EntityRegistry entities;//entities of the imported steps
 
     private int totalSubs;//total subprocess count
 
@@ -92,17 +114,48 @@ public class ModelImporter {
      */
     public ModelImporter(File JSONFile) throws
             FileNotFoundException, JSONException {
-        String JSONString;
-        /*Try with resources, build JSON string from file*/
-        try (Scanner scan = new Scanner(JSONFile)) {
-            JSONString = new String();
-            while (scan.hasNext()) {
-                JSONString += scan.nextLine();
+        this(JSONFile, false);
+    }
+
+    /**
+     * Initializes importer. In streaming mode the file is only opened here and
+     * is tokenized incrementally by importModel(), so the document is never
+     * held in memory as a whole. Binary models are recognized by their
+     * signature and are always streamed.
+     *
+     * @param JSONFile input file chosen by JChooser
+     * @param streaming true to stream the file instead of reading it up front
+     * 
+     * @throws FileNotFoundException file read error
+     * @throws JSONException        JSON read error
+     */
+    public ModelImporter(File JSONFile, boolean streaming) throws
+            FileNotFoundException, JSONException {
+        fileSize = JSONFile.length();
+        if (BinaryModelFormat.isBinaryModel(JSONFile)) {
+            channel = new FileInputStream(JSONFile).getChannel();
+            binaryIn = Channels.newInputStream(channel);
+        } else if (streaming) {
+            /*Decode with the platform charset, same as the exporter writes*/
+            channel = new FileInputStream(JSONFile).getChannel();
+            CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            parser = new JSONPullParser(Channels.newReader(channel, decoder, -1));
+        } else {
+            String JSONString;
+            /*Try with resources, build JSON string from file*/
+            try (Scanner scan = new Scanner(JSONFile)) {
+                JSONString = new String();
+                while (scan.hasNext()) {
+                    JSONString += scan.nextLine();
+                }
             }
-        }
 
-        jo = new JSONObject(JSONString);
+            jo = new JSONObject(JSONString);
+        }
         framesList = new ArrayList<>();
+        entities = new EntityRegistry();
         
         /*All counters to zero*/
         totalSubs = 0;
@@ -113,30 +166,146 @@ public class ModelImporter {
     }
 
     /**
-     * Import model and return an ordered list of all of its frames
+     * Import model and return it with all of its frames in order
      *
-     * @return list containing all of the model's frames
+     * @return the imported model
+     * 
+     * @throws UncheckedIOException binary model read error
      */
-    public ArrayList<ProcessFrame> importModel(){
-        int curFrame = 0;
+    public Procedure importModel(){
+        if (binaryIn != null) {//binary model
+            try (InputStream in = binaryIn) {
+                return new Procedure(BinaryModelFormat.read(in, this), entities);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        if (parser != null) {//streaming mode
+            try (JSONPullParser in = parser) {
+                return new Procedure(new StreamingImporter(in, this).importModel(),
+                        entities);
+            }
+        }
+
         /*Check if file comes from this app or compiler*/
         if (jo.has(APP_EXP)) {//import file has been generated from app
             processAppImport(jo.getJSONArray(FRAMES_KEY));
         } else {//import file has been generated from compiler
-            JSONObject execObj = jo.getJSONObject(MAIN);
-            /*Get list of commands to execute*/
-            JSONArray comArr = execObj.getJSONArray(COMMS);
-            
-            ProcessFrame mainFrame = new ProcessFrame(execObj.getString(NAME),
-                    curFrame);
-            framesList.add(mainFrame);//initialize model with main frame
-            WorkspacePanel.increaseSubCount();
+            processCompilerImport(jo.getJSONObject(MAIN));
+        }
 
-            String entName = buildEntString(execObj);//get ent names
-            processArray(curFrame, comArr, entName, false);
+        /*Frames are only finished once the whole tree has been walked*/
+        for (ProcedureFrame aFrame : framesList) {
+            frameBuilt(aFrame);
         }
+        return new Procedure(framesList, entities);
+    }
 
-        return framesList;
+    /**
+     * Sets the listener notified of every frame as soon as it is finished.
+     * Must be called before importModel().
+     *
+     * @param listener frame listener, null for none
+     */
+    public void setImportListener(ImportListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets whether independent frames and subprocesses are parsed and built
+     * in parallel on the common fork-join pool. Frames, their indices and the
+     * numbering of generated subprocesses come out exactly as in a sequential
+     * import. Compiler-generated documents are read as a whole first, even in
+     * streaming mode, so their nesting is bounded by the thread stack as in
+     * the non-streaming mode. Must be called before importModel().
+     *
+     * @param parallel true to import in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @return registry interning the entities of the imported steps, which
+     * becomes the imported model's
+     */
+    EntityRegistry getEntities() {
+        return entities;
+    }
+
+    /**
+     * Asks a running import to stop. importModel() then throws a
+     * CancellationException. Can be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns how much of the file has been read so far. Can be called from
+     * any thread.
+     *
+     * @return bytes read
+     */
+    public long getBytesRead() {
+        if (channel == null) {//read up front
+            return fileSize;
+        }
+        try {
+            return channel.position();
+        } catch (IOException ex) {//closed after the import finished
+            return fileSize;
+        }
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Passes a finished frame on to the listener, if any
+     *
+     * @param frame finished frame
+     */
+    void frameBuilt(ProcedureFrame frame) {
+        if (listener != null) {
+            listener.frameBuilt(frame);
+        }
+    }
+
+    /**
+     * Tells the listener, if any, the main process has been started
+     *
+     * @param name name of the main process
+     */
+    void mainFrameStarted(String name) {
+        if (listener != null) {
+            listener.mainFrameStarted(name);
+        }
+    }
+
+    /**
+     * Passes a block added to the main process on to the listener, if any
+     */
+    void mainBlockAdded(String name, String entity, String attributes) {
+        if (listener != null) {
+            listener.mainBlockAdded(name, entity, attributes);
+        }
+    }
+
+    /**
+     * Stops the import if it has been cancelled
+     *
+     * @throws CancellationException import cancelled
+     */
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Import cancelled");
+        }
     }
 
     /**
@@ -145,7 +314,23 @@ public class ModelImporter {
      * @param framesArr JSON representation of the frames
      */
     private void processAppImport(JSONArray framesArr) {
+        if (parallel) {
+            try {
+                framesList.addAll(IntStream.range(0, framesArr.length())
+                        .parallel().mapToObj(i -> {
+                            checkCancelled();
+                            return buildFrame(framesArr.getJSONObject(i), i);
+                        }).collect(Collectors.toList()));
+                return;
+            } catch (CancellationException ex) {
+                throw ex;
+            } catch (RuntimeException ex) {
+                /*Fail the same way a sequential import does below*/
+            }
+        }
+
         for (int i = 0; i < framesArr.length(); i++) {//iterate all frames
+            checkCancelled();
             JSONObject frameObj = framesArr.getJSONObject(i);
             framesList.add(buildFrame(frameObj, i));
         }
@@ -159,9 +344,9 @@ public class ModelImporter {
      *
      * @return the new frame that has been constructed
      */
-    private ProcessFrame buildFrame(JSONObject frameObj, int index) {
+    private ProcedureFrame buildFrame(JSONObject frameObj, int index) {
         String title = frameObj.getString(FRAME_TITLE);
-        ProcessFrame newFrame = new ProcessFrame(title, index);
+        ProcedureFrame newFrame = new ProcedureFrame(title, index);
         JSONArray blocksArr = frameObj.getJSONArray(BLOCKS_KEY);
 
         for (int i = 0; i < blocksArr.length(); i++) {//iterate blocks
@@ -171,12 +356,48 @@ public class ModelImporter {
             String blockName = blockObj.getString(BLOCK_NAME);
             String blockEnt = blockObj.getString(BLOCK_ENT);
             String blockAttr = blockObj.getString(BLOCK_ATTR);
-            newFrame.addBlock(blockName, blockEnt, blockAttr);
+            newFrame.addStep(blockName, entities.intern(blockEnt), blockAttr);
         }
 
         return newFrame;
     }
 
+    /**
+     * Builds the list of frames from a compiler JSON file
+     *
+     * @param execObj JSON representation of the main process
+     *
+     * @return list containing all of the model's frames
+     */
+    ArrayList<ProcedureFrame> processCompilerImport(JSONObject execObj) {
+        if (parallel) {
+            try {
+                ArrayList<ProcedureFrame> frames
+                        = new ParallelImporter(this).importModel(execObj);
+                if (frames != null) {
+                    framesList.addAll(frames);
+                    return framesList;
+                }
+            } catch (CancellationException ex) {
+                throw ex;
+            } catch (RuntimeException ex) {
+                /*Fail the same way a sequential import does below*/
+            }
+        }
+
+        int curFrame = 0;
+        /*Get list of commands to execute*/
+        JSONArray comArr = execObj.getJSONArray(COMMS);
+
+        ProcedureFrame mainFrame = new ProcedureFrame(execObj.getString(NAME),
+                curFrame);
+        framesList.add(mainFrame);//initialize model with main frame
+
+        String entName = buildEntString(execObj);//get ent names
+        processArray(curFrame, comArr, entName, false);
+        return framesList;
+    }
+
     /**
      * Processes an array of commands in JSON form, recursively processes the entire
      * compile-generated JSON file.
@@ -189,9 +410,10 @@ public class ModelImporter {
     private void processArray(int curFrame, JSONArray comArr, String entName,
             boolean inPar){
         for (int i = 0; i < comArr.length(); i++) {//process all commands
-            /*Catch the "retry" loop string and ignore it*/
-            String retryCase = comArr.get(i).toString();
-            if (retryCase.equals(RETRY)) {
+            checkCancelled();
+            /*Catch the "retry" loop string and ignore it, without writing
+            out whole subtrees just to compare them*/
+            if (RETRY.equals(comArr.get(i))) {
                 return;//ignore
             }
             
@@ -219,15 +441,16 @@ public class ModelImporter {
                     /*Create a unique subprocess for each command if inside a
                     parallel branch*/
                     if (!inPar) {//normal case
-                        framesList.get(curFrame).addBlock(blockName, entName, blockAttr);
+                        framesList.get(curFrame).addStep(blockName,
+                                entities.intern(entName), blockAttr);
                     } else {//parallel case
                         parlCount++;//new parallel subprocess added
                         totalSubs++;
-                        ProcessFrame parFrame = new ProcessFrame("Parallel "
+                        ProcedureFrame parFrame = new ProcedureFrame("Parallel "
                                 + "Subprocess" + Integer.toString(parlCount), totalSubs);
-                        parFrame.addBlock(blockName, entName, blockAttr);
+                        parFrame.addStep(blockName, entities.intern(entName),
+                                blockAttr);
                         framesList.add(parFrame);
-                        WorkspacePanel.increaseSubCount();
                     }
                     break;
                 case SUBPROCESS:
@@ -237,16 +460,16 @@ public class ModelImporter {
                         /*Add "Run Subprocess" block to current frame*/
                         blockName = "Run Subprocess";
                         blockAttr = "Subprocess: " + curObj.getString(NAME);
-                        framesList.get(curFrame).addBlock(blockName, entName, blockAttr);
+                        framesList.get(curFrame).addStep(blockName,
+                                entities.intern(entName), blockAttr);
 
                         /*Add new frame for the subprocess and process it*/
                         newArr = curObj.getJSONArray(COMMS);
                         totalSubs++;
                         subCount++;
-                        ProcessFrame subFrame = new ProcessFrame(curObj.getString(NAME),
+                        ProcedureFrame subFrame = new ProcedureFrame(curObj.getString(NAME),
                                 totalSubs);
                         framesList.add(subFrame);
-                        WorkspacePanel.increaseSubCount();
 
                         processArray(totalSubs, newArr, buildEntString(curObj), false);
                     } else {//parallel case
@@ -255,10 +478,9 @@ public class ModelImporter {
                         newArr = curObj.getJSONArray(COMMS);
                         totalSubs++;
                         parlCount++;//new parallel subprocess added
-                        ProcessFrame parlFrame = new ProcessFrame("Parallel Subprocess"
+                        ProcedureFrame parlFrame = new ProcedureFrame("Parallel Subprocess"
                                 + Integer.toString(parlCount), totalSubs);
                         framesList.add(parlFrame);
-                        WorkspacePanel.increaseSubCount();
 
                         processArray(totalSubs, newArr, buildEntString(curObj), false);
                     }
@@ -274,8 +496,9 @@ public class ModelImporter {
 
                         /*Add "Parallel Procedures" block*/
                         blockName = "Parallel Procedures";
-                        blockAttr = this.buildParlString(temp, parlCount);
-                        framesList.get(curFrame).addBlock(blockName, entName, blockAttr);
+                        blockAttr = buildParlString(temp, parlCount);
+                        framesList.get(curFrame).addStep(blockName,
+                                entities.intern(entName), blockAttr);
                     } else {//move deeper in the parallel branch
                         newArr = curObj.getJSONArray(COMMS);
                         processArray(totalSubs, newArr, entName, true);
@@ -284,9 +507,7 @@ public class ModelImporter {
                 case CHANGE_ENT:
                     /*Only gets the first entity listed, app does not support
                     multiple entities for one block*/
-                    JSONObject curUser = curObj.getJSONArray(CUR_USERS).getJSONObject(0);
-                    entName = curUser.getString(DIVISION) + " " + curUser.getString(DEPARTMENT)
-                            + " " + curUser.getString(POSITION) + " " + curUser.getString(NAME);
+                    entName = buildUserString(curObj.getJSONArray(CUR_USERS).getJSONObject(0));
                     break;
                 case CONDITION_STEPS:
                     /*Process try blocks normally in current frame*/
@@ -305,7 +526,8 @@ public class ModelImporter {
                     }
                     
                     /*Success blocks are added normally to the current frame*/
-                    framesList.get(curFrame).addBlock(blockName, entName, blockAttr);
+                    framesList.get(curFrame).addStep(blockName,
+                            entities.intern(entName), blockAttr);
                     newArr = curObj.getJSONArray(YES);
                     processArray(curFrame, newArr, entName, false);
 
@@ -313,9 +535,8 @@ public class ModelImporter {
                     newArr = curObj.getJSONArray(NO);
                     if (!newArr.isEmpty()) {//new subprocess for failure if needed
                         String frameName = "Assestment Failure " + Integer.toString(failCount);
-                        ProcessFrame subFrame = new ProcessFrame(frameName, totalSubs);
+                        ProcedureFrame subFrame = new ProcedureFrame(frameName, totalSubs);
                         framesList.add(subFrame);
-                        WorkspacePanel.increaseSubCount();
 
                         processArray(totalSubs, newArr, entName, false);
                     }
@@ -333,16 +554,36 @@ public class ModelImporter {
      * @return entity string
      */
     private String buildEntString(JSONObject curObj){
-        String entString = "";
-        if (!curObj.getJSONArray(USERS).isEmpty()) {
-            JSONObject entity = curObj.getJSONArray(USERS).getJSONObject(0);
-            entString = entity.getString(DIVISION) + " " + entity.getString(DEPARTMENT)
-                    + " " + entity.getString(POSITION) + " " + entity.getString(NAME);
+        return buildEntString(curObj.getJSONArray(USERS));
+    }
 
+    /**
+     * Builds the entity string from the first user of a list of users
+     *
+     * @param users JSON representation of the users
+     * 
+     * @return entity string, empty if there are no users
+     */
+    static String buildEntString(JSONArray users){
+        String entString = "";
+        if (!users.isEmpty()) {
+            entString = buildUserString(users.getJSONObject(0));
         }
         return entString;
     }
 
+    /**
+     * Builds the entity string of a single user
+     *
+     * @param entity JSON representation of the user
+     * 
+     * @return entity string
+     */
+    static String buildUserString(JSONObject entity){
+        return entity.getString(DIVISION) + " " + entity.getString(DEPARTMENT)
+                + " " + entity.getString(POSITION) + " " + entity.getString(NAME);
+    }
+
     /**
      * Builds a "Parallel Procedures" block's attributes string to point to all
      * the parallel subprocess it adds.
@@ -352,7 +593,7 @@ public class ModelImporter {
      * 
      * @return string pointers to the parallel subprocesses
      */
-    private String buildParlString(int start, int end) {
+    static String buildParlString(int start, int end) {
         String parString = "";//shouldn't remain empty!
         for (int i = start; i < end; i++) {
             parString = parString.concat("Parallel Subprocess "
@@ -0,0 +1,619 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import Model.Entity;
+import Model.Procedure;
+import Model.ProcedureFrame;
+import Model.Step;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a model safe between exports with an append-only journal of its edits.
+ * A generation is a binary snapshot of the model followed by a journal of the
+ * edits made since:
+ *
+ * <pre>
+ * snapshot-N.pqm   binary model, see BinaryModelFormat
+ * journal-N.log    magic "PQMJ", u16 version, then records
+ * record           u32 payload length, u32 CRC-32 of the payload, payload
+ * payload          u8 operation, then its int positions and strings, strings
+ *                  as u32 length + UTF-8
+ * </pre>
+ *
+ * Edits are encoded on the caller's thread, which must be the one editing the
+ * model, and written by a background thread that syncs the journal to disk
+ * every second. Once the journal has grown large enough, a new snapshot is
+ * written and a new generation started, and the older one is deleted only
+ * after the new snapshot is safely on disk. A crash loses at most the last
+ * second of edits, and a torn last record is ignored on replay.
+ *
+ * @author Christos Darisaplis
+ */
+public final class ModelJournal implements Closeable {
+
+    private static final byte[] MAGIC = {'P', 'Q', 'M', 'J'};
+    private static final int VERSION = 1;
+    private static final Pattern FILE_NAME//snapshot or journal of a generation
+            = Pattern.compile("snapshot-(\\d+)\\.pqm|journal-(\\d+)\\.log");
+
+    private static final long SYNC_INTERVAL = 1000;//ms between syncs
+    private static final long COMPACT_BYTES = 4L * 1024 * 1024;//journal size
+    private static final int MAX_STRING = 64 * 1024 * 1024;//sanity check
+
+    /*Operations*/
+    private static final int INSERT_STEP = 1;
+    private static final int REMOVE_STEP = 2;
+    private static final int SWAP_STEPS = 3;
+    private static final int MOVE_STEP = 4;
+    private static final int SET_ATTRIBUTES = 5;
+    private static final int SET_ENTITY = 6;
+    private static final int INSERT_FRAME = 7;
+    private static final int REMOVE_FRAME = 8;
+    private static final int RENAME_FRAME = 9;
+
+    private final File dir;
+    private final ScheduledExecutorService writer;//owns all file access
+    private final Thread shutdownHook;
+
+    /*Only used by the editing thread*/
+    private Procedure model;//model journaled, null before the first reset
+    private long generation;//last generation used
+    private long journalBytes;//bytes appended in this generation
+
+    /*Only used by the writer thread*/
+    private FileChannel journal;//journal of the current generation
+    private boolean unsynced;//bytes written since the last sync
+    private boolean failed;//writing failed, nothing is written anymore
+
+    /**
+     * Opens a journal directory. Nothing is written until the first reset(),
+     * so a model can be recovered from the directory first.
+     *
+     * @param dir directory holding the snapshots and journals
+     *
+     * @throws IOException if the directory can't be created
+     */
+    public ModelJournal(File dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir.toPath());
+        File snapshot = findSnapshot(dir);
+        generation = snapshot == null ? 0 : generationOf(snapshot);
+        model = null;
+        journalBytes = 0;
+
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "Model journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL, SYNC_INTERVAL,
+                TimeUnit.MILLISECONDS);
+        shutdownHook = new Thread(this::close, "Model journal shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Starts a new generation from a snapshot of a model, after the model has
+     * been replaced or its journal has grown large
+     *
+     * @param model model to journal from now on
+     */
+    public void reset(Procedure model) {
+        this.model = model;
+        journalBytes = 0;
+        long next = ++generation;
+        ModelExporter snapshot = new ModelExporter(model);//copied right here
+        writer.execute(() -> startGeneration(next, snapshot));
+    }
+
+    /*Edits, positions are the ones before the edit unless noted*/
+
+    /**
+     * @param frame position of the frame
+     * @param pos position of the new step
+     * @param step inserted step
+     */
+    public void insertStep(int frame, int pos, Step step) {
+        append(INSERT_STEP, new int[]{frame, pos}, step.getName(),
+                step.getEntity().getName(), step.getAttributes());
+    }
+
+    public void removeStep(int frame, int pos) {
+        append(REMOVE_STEP, new int[]{frame, pos});
+    }
+
+    public void swapSteps(int frame, int a, int b) {
+        append(SWAP_STEPS, new int[]{frame, a, b});
+    }
+
+    /**
+     * @param frame position of the frame
+     * @param from position of the step
+     * @param to position of the step after the move
+     */
+    public void moveStep(int frame, int from, int to) {
+        append(MOVE_STEP, new int[]{frame, from, to});
+    }
+
+    public void setAttributes(int frame, int pos, String attributes) {
+        append(SET_ATTRIBUTES, new int[]{frame, pos}, attributes);
+    }
+
+    public void setEntity(int frame, int pos, String entity) {
+        append(SET_ENTITY, new int[]{frame, pos}, entity);
+    }
+
+    /**
+     * @param pos position of the new, empty frame
+     * @param name name of the new frame
+     */
+    public void insertFrame(int pos, String name) {
+        append(INSERT_FRAME, new int[]{pos}, name);
+    }
+
+    public void removeFrame(int pos) {
+        append(REMOVE_FRAME, new int[]{pos});
+    }
+
+    public void renameFrame(int pos, String name) {
+        append(RENAME_FRAME, new int[]{pos}, name);
+    }
+
+    /**
+     * Encodes an edit and hands it to the writer, starting a new generation
+     * if the journal has grown large
+     */
+    private void append(int operation, int[] positions, String... strings) {
+        if (model == null || writer.isShutdown()) {//no generation to add to
+            return;
+        }
+        byte[] record;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream payload = new DataOutputStream(bytes);
+            payload.writeInt(0);//length and checksum, filled in below
+            payload.writeInt(0);
+            payload.writeByte(operation);
+            for (int pos : positions) {
+                payload.writeInt(pos);
+            }
+            for (String str : strings) {
+                byte[] utf = str.getBytes(StandardCharsets.UTF_8);
+                payload.writeInt(utf.length);
+                payload.write(utf);
+            }
+            record = bytes.toByteArray();
+        } catch (IOException ex) {//can't happen in memory
+            throw new IllegalStateException(ex);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        ByteBuffer header = ByteBuffer.wrap(record);
+        header.putInt(record.length - 8);
+        header.putInt((int) crc.getValue());
+
+        writer.execute(() -> write(record));
+        journalBytes += record.length;
+        if (journalBytes > COMPACT_BYTES) {
+            reset(model);
+        }
+    }
+
+    /**
+     * Writes the snapshot of a new generation, starts its journal and deletes
+     * the older generations. Runs on the writer thread.
+     */
+    private void startGeneration(long next, ModelExporter snapshot) {
+        if (failed) {
+            return;
+        }
+        try {
+            Path target = snapshotFile(dir, next).toPath();
+            Path temp = Files.createTempFile(dir.toPath(), "snapshot", ".tmp");
+            try {
+                try (FileChannel out = FileChannel.open(temp,
+                        StandardOpenOption.WRITE)) {
+                    snapshot.writeBinaryModel(Channels.newOutputStream(out), true);
+                    out.force(true);
+                }
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            closeJournal();
+            journal = FileChannel.open(journalFile(dir, next).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 2);
+            header.put(MAGIC).putShort((short) VERSION).flip();
+            writeFully(header);
+            journal.force(true);
+            syncDirectory();//the new names must be on disk before the old go
+
+            File[] files = dir.listFiles();//older generations aren't needed
+            for (File aFile : files == null ? new File[0] : files) {
+                long fileGeneration = generationOf(aFile);
+                if (fileGeneration >= 0 && fileGeneration < next) {
+                    Files.deleteIfExists(aFile.toPath());
+                }
+            }
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Flushes the entries of the journal directory to disk, so renamed and
+     * created files survive a crash. Some platforms can't open or flush a
+     * directory, there the file system is trusted.
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ex) {
+            /*Not supported here*/
+        }
+    }
+
+    /**
+     * Appends a record to the journal. Runs on the writer thread.
+     */
+    private void write(byte[] record) {
+        if (failed || journal == null) {
+            return;
+        }
+        try {
+            writeFully(ByteBuffer.wrap(record));
+            unsynced = true;
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+    }
+
+    /**
+     * Flushes the journal to disk if it has changed. Runs on the writer
+     * thread.
+     */
+    private void sync() {
+        if (failed || journal == null || !unsynced) {
+            return;
+        }
+        try {
+            journal.force(false);
+            unsynced = false;
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.force(false);
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Stops journaling after a write error, the last good generation stays on
+     * disk
+     */
+    private void fail(IOException ex) {
+        failed = true;
+        System.out.println(Arrays.toString(ex.getStackTrace()));
+        System.out.println(ex.getMessage());
+    }
+
+    /**
+     * Writes and syncs everything appended so far, then stops the writer
+     */
+    @Override
+    public synchronized void close() {
+        if (writer.isShutdown()) {
+            return;
+        }
+        writer.execute(() -> {
+            sync();
+            try {
+                closeJournal();
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * Finds the latest snapshot in a journal directory
+     *
+     * @param dir directory holding the snapshots and journals
+     *
+     * @return latest snapshot, null if there is none
+     */
+    public static File findSnapshot(File dir) {
+        File[] files = dir.listFiles();
+        File latest = null;
+        for (File aFile : files == null ? new File[0] : files) {
+            if (aFile.getName().startsWith("snapshot") && generationOf(aFile) >= 0
+                    && (latest == null
+                    || generationOf(aFile) > generationOf(latest))) {
+                latest = aFile;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Renames a snapshot that couldn't be recovered, and its journal, so the
+     * next generation doesn't delete them. Their names get the suffix
+     * ".unrecovered-" and the current time. Must be called before the first
+     * reset(), nothing else touches the files then.
+     *
+     * @param snapshot snapshot found by findSnapshot()
+     *
+     * @return new name of the snapshot
+     *
+     * @throws IOException renaming exception
+     */
+    public File setAside(File snapshot) throws IOException {
+        if (model != null) {
+            throw new IllegalStateException("Journaling has already started");
+        }
+        String suffix = ".unrecovered-" + System.currentTimeMillis();
+        File journalFile = journalOf(snapshot);
+        File kept = new File(snapshot.getPath() + suffix);
+        Files.move(snapshot.toPath(), kept.toPath());
+        if (journalFile.exists()) {
+            Files.move(journalFile.toPath(),
+                    new File(journalFile.getPath() + suffix).toPath());
+        }
+        return kept;
+    }
+
+    /**
+     * Returns the journal of a snapshot's generation
+     *
+     * @param snapshot snapshot found by findSnapshot()
+     *
+     * @return journal, which may not exist
+     */
+    public static File journalOf(File snapshot) {
+        return journalFile(snapshot.getParentFile(), generationOf(snapshot));
+    }
+
+    /**
+     * Applies the edits of a journal to the model read from its snapshot. A
+     * torn or corrupt record, as left by a crash, ends the replay.
+     *
+     * @param journalFile journal to replay, nothing is done if it doesn't exist
+     * @param model model read from the journal's snapshot
+     *
+     * @return number of edits applied
+     *
+     * @throws IOException journal reading exception
+     */
+    public static int replay(File journalFile, Procedure model)
+            throws IOException {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        int applied = 0;
+        try (InputStream in = Files.newInputStream(journalFile.toPath())) {
+            DataInputStream data = new DataInputStream(
+                    new BufferedInputStream(in));
+            byte[] magic = new byte[MAGIC.length];
+            try {
+                data.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC)
+                        || data.readUnsignedShort() > VERSION) {
+                    throw new IOException("Not a model journal: " + journalFile);
+                }
+            } catch (EOFException ex) {//crashed while starting the journal
+                return 0;
+            }
+
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = data.readInt();
+                    int checksum = data.readInt();
+                    if (length <= 0 || length > MAX_STRING) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    data.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException ex) {//torn last record
+                    break;
+                }
+                try {
+                    apply(new DataInputStream(new ByteArrayInputStream(payload)),
+                            model);
+                } catch (IndexOutOfBoundsException | IOException ex) {
+                    throw new IOException("Journal doesn't match its snapshot"
+                            + " after " + applied + " edits", ex);
+                }
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Applies one edit to a model
+     */
+    private static void apply(DataInputStream in, Procedure model)
+            throws IOException {
+        int operation = in.readUnsignedByte();
+        switch (operation) {
+            case INSERT_STEP: {
+                ProcedureFrame frame = model.getFrame(in.readInt());
+                int pos = in.readInt();
+                frame.insertStep(pos, new Step(readString(in),
+                        new Entity(readString(in)), readString(in)));
+                break;
+            }
+            case REMOVE_STEP:
+                model.getFrame(in.readInt()).removeStep(in.readInt());
+                break;
+            case SWAP_STEPS:
+                model.getFrame(in.readInt()).swapSteps(in.readInt(),
+                        in.readInt());
+                break;
+            case MOVE_STEP: {
+                ProcedureFrame frame = model.getFrame(in.readInt());
+                Step moved = frame.removeStep(in.readInt());
+                frame.insertStep(in.readInt(), moved);
+                break;
+            }
+            case SET_ATTRIBUTES: {
+                ProcedureFrame frame = model.getFrame(in.readInt());
+                frame.getSteps().get(in.readInt()).setAttributes(readString(in));
+                break;
+            }
+            case SET_ENTITY: {
+                ProcedureFrame frame = model.getFrame(in.readInt());
+                frame.getSteps().get(in.readInt()).setEntity(
+                        new Entity(readString(in)));
+                break;
+            }
+            case INSERT_FRAME: {
+                int pos = in.readInt();
+                model.insertFrame(pos, new ProcedureFrame(readString(in), pos));
+                reindex(model, pos);
+                break;
+            }
+            case REMOVE_FRAME: {
+                int pos = in.readInt();
+                model.removeFrame(pos);
+                reindex(model, pos);
+                break;
+            }
+            case RENAME_FRAME:
+                model.getFrame(in.readInt()).setName(readString(in));
+                break;
+            default:
+                throw new IOException("Unknown journal operation " + operation);
+        }
+    }
+
+    /**
+     * Updates the indexes of the frames from a position onwards
+     */
+    private static void reindex(Procedure model, int from) {
+        for (int i = from; i < model.size(); i++) {
+            model.getFrame(i).setIndex(i);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING) {
+            throw new IOException("Corrupt journal string");
+        }
+        byte[] utf = new byte[length];
+        in.readFully(utf);
+        return new String(utf, StandardCharsets.UTF_8);
+    }
+
+    private static File snapshotFile(File dir, long generation) {
+        return new File(dir, "snapshot-" + generation + ".pqm");
+    }
+
+    private static File journalFile(File dir, long generation) {
+        return new File(dir, "journal-" + generation + ".log");
+    }
+
+    /**
+     * Returns the generation of a snapshot or journal file
+     *
+     * @return generation, -1 if the file isn't part of the journal
+     */
+    private static long generationOf(File file) {
+        Matcher matcher = FILE_NAME.matcher(file.getName());
+        if (!matcher.matches()) {
+            return -1;
+        }
+        String number = matcher.group(1) != null ? matcher.group(1)
+                : matcher.group(2);
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException ex) {//too many digits
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,681 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import Model.Procedure;
+import Model.ProcedureFrame;
+import Model.Step;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Checks that the blocks of a model point at subprocesses that exist, and that
+ * every subprocess has blocks and can be reached from the main process.
+ * "Run Subprocess" blocks point at the frame named on their "Subprocess:"
+ * line, "Parallel Procedures" blocks at a frame on every line and "Formal
+ * Assestment" blocks at the frame on their "On Failure:" line, if any. Names
+ * are compared ignoring white space, as the importers name parallel frames
+ * "Parallel SubprocessN" and point at them as "Parallel Subprocess N".
+ *
+ * Validation is split like an export: snapshot() copies the frames changed
+ * since the last snapshot on the EDT, and validate() checks them on another
+ * thread, one validation at a time. Frames are found by name through an
+ * index, and every name knows the frames pointing at it, so only the changed
+ * frames and the frames pointing at names that have come or gone are checked
+ * again. Reachability and call cycles are worked out again on every
+ * validation, in a single pass over the frames each, and handed over along
+ * with the calls as a CallGraph.
+ *
+ * @author Christos Darisaplis
+ */
+public final class ModelValidator {
+
+    private final Procedure model;//model validated
+
+    /*Used by snapshot(), on the EDT*/
+    private final Map<ProcedureFrame, Integer> copied;//mod counts copied
+
+    /*Used by validate(), one thread at a time*/
+    private final Map<ProcedureFrame, FrameInfo> infos;//checked frames
+    private final Map<String, List<FrameInfo>> byName;//frames of each name
+    private final Map<String, Set<FrameInfo>> referrers;//frames pointing at names
+    private final Map<ProcedureFrame, FrameProblems> problems;//frames with any
+    private int pass;//number of the last validation
+
+    /*Block names and attribute lines pointing at frames*/
+    private static final String RUN_SUB = "Run Subprocess";
+    private static final String PARALLEL = "Parallel Procedures";
+    private static final String ASSESTMENT = "Formal Assestment";
+    private static final String SUB_LINE = "Subprocess:";
+    private static final String FAILURE_LINE = "On Failure:";
+
+    private static final String[] NO_NAMES = new String[0];
+
+    /**
+     * Creates the validator, nothing is checked until the first validation
+     *
+     * @param model model to validate
+     */
+    public ModelValidator(Procedure model) {
+        this.model = model;
+        copied = new IdentityHashMap<>();
+        infos = new IdentityHashMap<>();
+        byName = new HashMap<>();
+        referrers = new HashMap<>();
+        problems = new IdentityHashMap<>();
+    }
+
+    /**
+     * @return model validated
+     */
+    public Procedure getModel() {
+        return model;
+    }
+
+    /**
+     * Copies the frames changed since the last snapshot, must run on the
+     * thread that edits the model
+     *
+     * @return changes to validate
+     */
+    public Changes snapshot() {
+        List<ProcedureFrame> modelFrames = model.getFrames();
+        ProcedureFrame[] order = modelFrames.toArray(new ProcedureFrame[0]);
+        ArrayList<FrameCopy> changed = new ArrayList<>();
+        for (ProcedureFrame aFrame : order) {
+            Integer modCount = copied.put(aFrame, aFrame.getModCount());
+            if (modCount == null || modCount != aFrame.getModCount()) {
+                changed.add(new FrameCopy(aFrame));
+            }
+        }
+        ArrayList<ProcedureFrame> removed = new ArrayList<>();
+        if (copied.size() > order.length) {
+            Set<ProcedureFrame> present
+                    = Collections.newSetFromMap(new IdentityHashMap<>());
+            Collections.addAll(present, order);
+            Iterator<ProcedureFrame> it = copied.keySet().iterator();
+            while (it.hasNext()) {
+                ProcedureFrame aFrame = it.next();
+                if (!present.contains(aFrame)) {
+                    removed.add(aFrame);
+                    it.remove();
+                }
+            }
+        }
+        return new Changes(order, changed, removed);
+    }
+
+    /**
+     * Checks the changes of a snapshot and the frames they affect, may run on
+     * any thread but only one validation at a time, in snapshot order
+     *
+     * @param changes changes taken by snapshot()
+     *
+     * @return problems of the model
+     */
+    public Result validate(Changes changes) {
+        pass++;
+        Set<String> names = new HashSet<>();//names come or gone
+        ArrayList<FrameInfo> recheck = new ArrayList<>();
+        Set<ProcedureFrame> updated
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (ProcedureFrame aFrame : changes.removed) {
+            FrameInfo info = infos.remove(aFrame);
+            if (info != null) {
+                unlink(info);
+                names.add(info.key);
+                if (problems.remove(aFrame) != null) {
+                    updated.add(aFrame);
+                }
+            }
+        }
+        for (FrameCopy copy : changes.changed) {
+            FrameInfo info = infos.get(copy.frame);
+            if (info == null) {
+                info = new FrameInfo(copy.frame);
+                infos.put(copy.frame, info);
+            } else {
+                unlink(info);
+                if (!info.key.equals(key(copy.name))) {
+                    names.add(info.key);
+                }
+            }
+            info.update(copy);
+            link(info);
+            names.add(info.key);
+            info.checkPass = pass;
+            recheck.add(info);
+        }
+        for (String name : names) {
+            for (FrameInfo info : referrers.getOrDefault(name,
+                    Collections.emptySet())) {
+                if (info.checkPass != pass) {
+                    info.checkPass = pass;
+                    recheck.add(info);
+                }
+            }
+        }
+        for (FrameInfo info : recheck) {
+            info.checkBlocks();
+        }
+
+        /*Reachability can change anywhere, it's cheap to find again*/
+        ArrayDeque<FrameInfo> queue = new ArrayDeque<>();
+        if (changes.order.length > 0) {
+            FrameInfo main = infos.get(changes.order[0]);
+            main.reachPass = pass;
+            queue.add(main);
+        }
+        while (!queue.isEmpty()) {
+            for (FrameInfo target : queue.poll().targets) {
+                if (target.reachPass != pass) {
+                    target.reachPass = pass;
+                    queue.add(target);
+                }
+            }
+        }
+
+        for (int i = 0; i < changes.order.length; i++) {
+            FrameInfo info = infos.get(changes.order[i]);
+            String frameProblem = null;
+            if (i > 0 && info.blocks == 0) {
+                frameProblem = "Empty subprocess";
+            } else if (i > 0 && info.reachPass != pass) {
+                frameProblem = "Not reachable from the main process";
+            }
+            if (info.checkPass != pass
+                    && Objects.equals(frameProblem, info.frameProblem)) {
+                continue;//nothing new
+            }
+            info.frameProblem = frameProblem;
+            FrameProblems old = problems.get(info.frame);
+            FrameProblems current = info.problems();
+            if (current != null) {
+                problems.put(info.frame, current);
+            } else {
+                problems.remove(info.frame);
+            }
+            if (old != null || current != null) {
+                updated.add(info.frame);
+            }
+        }
+        return new Result(new IdentityHashMap<>(problems), updated,
+                callGraph(changes.order));
+    }
+
+    /**
+     * Takes the calls between the frames, as of this validation
+     *
+     * @param order frames in model order
+     *
+     * @return call graph
+     */
+    private CallGraph callGraph(ProcedureFrame[] order) {
+        FrameInfo[] ordered = new FrameInfo[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ordered[i] = infos.get(order[i]);
+        }
+        findCycles(ordered);
+
+        Map<ProcedureFrame, ProcedureFrame[]> calls
+                = new IdentityHashMap<>(order.length);
+        Set<ProcedureFrame> cyclic
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<ProcedureFrame> unreachable
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (FrameInfo info : ordered) {
+            calls.put(info.frame, info.calls);
+            if (info.cyclePass == pass) {
+                cyclic.add(info.frame);
+            }
+            if (info.reachPass != pass) {
+                unreachable.add(info.frame);
+            }
+        }
+        return new CallGraph(model, order, calls, cyclic, unreachable);
+    }
+
+    /**
+     * Marks the frames that call themselves, directly or through other frames,
+     * finding the strongly connected components of the calls with Tarjan's
+     * algorithm. The depth first search keeps its own stack, as call chains
+     * may be much deeper than the thread's stack.
+     *
+     * @param ordered all frames
+     */
+    private void findCycles(FrameInfo[] ordered) {
+        int visited = 0;
+        ArrayDeque<FrameInfo> component = new ArrayDeque<>();
+        ArrayDeque<FrameInfo> path = new ArrayDeque<>();//search stack
+        ArrayDeque<Integer> next = new ArrayDeque<>();//next target of each
+        for (FrameInfo root : ordered) {
+            if (root.visitPass == pass) {
+                continue;
+            }
+            root.visitPass = pass;
+            root.order = root.lowLink = visited++;
+            root.onStack = true;
+            component.push(root);
+            path.push(root);
+            next.push(0);
+            while (!path.isEmpty()) {
+                FrameInfo info = path.peek();
+                int i = next.pop();
+                if (i < info.targets.length) {
+                    next.push(i + 1);
+                    FrameInfo target = info.targets[i];
+                    if (target == info) {
+                        info.cyclePass = pass;//calls itself
+                    } else if (target.visitPass != pass) {
+                        target.visitPass = pass;
+                        target.order = target.lowLink = visited++;
+                        target.onStack = true;
+                        component.push(target);
+                        path.push(target);
+                        next.push(0);
+                    } else if (target.onStack) {
+                        info.lowLink = Math.min(info.lowLink, target.order);
+                    }
+                    continue;
+                }
+                path.pop();
+                if (!path.isEmpty()) {
+                    FrameInfo caller = path.peek();
+                    caller.lowLink = Math.min(caller.lowLink, info.lowLink);
+                }
+                if (info.lowLink == info.order) {//root of a component
+                    FrameInfo member = component.pop();
+                    member.onStack = false;
+                    if (member != info) {//more than one frame
+                        member.cyclePass = pass;
+                        do {
+                            member = component.pop();
+                            member.onStack = false;
+                            member.cyclePass = pass;
+                        } while (member != info);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a frame to the name index and to the names it points at
+     */
+    private void link(FrameInfo info) {
+        byName.computeIfAbsent(info.key, k -> new ArrayList<>(1)).add(info);
+        for (String[] blockNames : info.refs) {
+            for (String name : blockNames) {
+                referrers.computeIfAbsent(name, k -> Collections
+                        .newSetFromMap(new IdentityHashMap<>(4))).add(info);
+            }
+        }
+    }
+
+    /**
+     * Removes a frame from the name index and from the names it points at
+     */
+    private void unlink(FrameInfo info) {
+        List<FrameInfo> named = byName.get(info.key);
+        named.remove(info);
+        if (named.isEmpty()) {
+            byName.remove(info.key);
+        }
+        for (String[] blockNames : info.refs) {
+            for (String name : blockNames) {
+                Set<FrameInfo> pointing = referrers.get(name);
+                if (pointing != null && pointing.remove(info)
+                        && pointing.isEmpty()) {
+                    referrers.remove(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return frames with a name, compared ignoring white space
+     */
+    private List<FrameInfo> framesNamed(String name) {
+        List<FrameInfo> named = byName.get(name);
+        return named != null ? named : Collections.emptyList();
+    }
+
+    /**
+     * @return name with all white space removed
+     */
+    private static String key(String name) {
+        StringBuilder key = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isWhitespace(name.charAt(i))) {
+                key.append(name.charAt(i));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Finds the frame names a block points at
+     *
+     * @param blockName name of the block
+     * @param attributes attributes of the block
+     *
+     * @return names as written, empty if none
+     */
+    private static String[] namesOf(String blockName, String attributes) {
+        switch (blockName) {
+            case RUN_SUB:
+                String sub = lineValue(attributes, SUB_LINE);
+                return sub != null ? new String[]{sub} : NO_NAMES;
+            case ASSESTMENT:
+                String failure = lineValue(attributes, FAILURE_LINE);
+                return failure != null ? new String[]{failure} : NO_NAMES;
+            case PARALLEL:
+                ArrayList<String> names = new ArrayList<>();
+                for (String line : attributes.split("\n")) {
+                    if (!line.trim().isEmpty()) {
+                        names.add(line.trim());
+                    }
+                }
+                return names.toArray(NO_NAMES);
+            default:
+                return NO_NAMES;
+        }
+    }
+
+    /**
+     * @return the rest of the first line starting with a label, trimmed, null
+     * if there's no such line or it's empty
+     */
+    private static String lineValue(String attributes, String label) {
+        for (String line : attributes.split("\n")) {
+            line = line.trim();
+            if (line.startsWith(label)) {
+                String value = line.substring(label.length()).trim();
+                return value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Frames changed since the previous snapshot
+     */
+    public static final class Changes {
+
+        private final ProcedureFrame[] order;//all frames, in model order
+        private final List<FrameCopy> changed;
+        private final List<ProcedureFrame> removed;
+
+        Changes(ProcedureFrame[] order, List<FrameCopy> changed,
+                List<ProcedureFrame> removed) {
+            this.order = order;
+            this.changed = changed;
+            this.removed = removed;
+        }
+    }
+
+    /**
+     * Strings of a frame needed to check it
+     */
+    private static final class FrameCopy {
+
+        private final ProcedureFrame frame;
+        private final int modCount;
+        private final String name;
+        private final String[] blockNames;
+        private final String[] attributes;
+
+        FrameCopy(ProcedureFrame frame) {
+            this.frame = frame;
+            modCount = frame.getModCount();
+            name = frame.getName();
+            List<Step> steps = frame.getSteps();
+            blockNames = new String[steps.size()];
+            attributes = new String[steps.size()];
+            for (int i = 0; i < blockNames.length; i++) {
+                blockNames[i] = steps.get(i).getName();
+                attributes[i] = steps.get(i).getAttributes();
+            }
+        }
+    }
+
+    /**
+     * What's known about a frame as of its last copy
+     */
+    private final class FrameInfo {
+
+        private final ProcedureFrame frame;
+        private int modCount;
+        private String key;//name without white space
+        private int blocks;//number of blocks
+        private String[][] refs;//keys of the names each block points at
+        private String[][] written;//names as written in the attributes
+        private String[] blockNames;
+        private String[] blockProblems;//by position, null if none
+        private FrameInfo[] targets;//frames pointed at, as of the last check
+        private ProcedureFrame[] calls;//the same frames, each one once
+        private int checkPass;//last validation the blocks were checked in
+        private int reachPass;//last validation the frame was reached in
+        private int cyclePass;//last validation the frame was found in a cycle
+
+        /*Used while looking for cycles, see findCycles()*/
+        private int visitPass;//last validation the frame was visited in
+        private int order;//visiting order
+        private int lowLink;//lowest order reachable
+        private boolean onStack;
+        private String frameProblem;//null if none
+
+        FrameInfo(ProcedureFrame frame) {
+            this.frame = frame;
+            refs = new String[0][];
+            targets = new FrameInfo[0];
+            calls = new ProcedureFrame[0];
+        }
+
+        void update(FrameCopy copy) {
+            modCount = copy.modCount;
+            key = key(copy.name);
+            blocks = copy.blockNames.length;
+            blockNames = copy.blockNames;
+            refs = new String[blocks][];
+            written = new String[blocks][];
+            for (int i = 0; i < blocks; i++) {
+                written[i] = namesOf(copy.blockNames[i], copy.attributes[i]);
+                refs[i] = written[i].length > 0
+                        ? new String[written[i].length] : NO_NAMES;
+                for (int j = 0; j < written[i].length; j++) {
+                    refs[i][j] = key(written[i][j]);
+                }
+            }
+        }
+
+        /**
+         * Finds the frames the blocks point at, and the blocks pointing at
+         * frames that don't exist or at nothing
+         */
+        void checkBlocks() {
+            blockProblems = null;
+            ArrayList<FrameInfo> found = new ArrayList<>(0);
+            for (int i = 0; i < blocks; i++) {
+                String problem = null;
+                if (written[i].length == 0 && blockNames[i].equals(RUN_SUB)) {
+                    problem = "No subprocess given";
+                } else if (written[i].length == 0
+                        && blockNames[i].equals(PARALLEL)) {
+                    problem = "No parallel subprocesses listed";
+                }
+                for (int j = 0; j < refs[i].length; j++) {
+                    List<FrameInfo> named = framesNamed(refs[i][j]);
+                    found.addAll(named);
+                    if (named.isEmpty()) {
+                        problem = (problem == null ? "" : problem + "; ")
+                                + "Subprocess \"" + written[i][j]
+                                + "\" doesn't exist";
+                    }
+                }
+                if (problem != null) {
+                    if (blockProblems == null) {
+                        blockProblems = new String[blocks];
+                    }
+                    blockProblems[i] = problem;
+                }
+            }
+            targets = found.toArray(new FrameInfo[0]);
+            Set<ProcedureFrame> called
+                    = Collections.newSetFromMap(new IdentityHashMap<>());
+            ArrayList<ProcedureFrame> distinct = new ArrayList<>(targets.length);
+            for (FrameInfo target : targets) {
+                if (called.add(target.frame)) {
+                    distinct.add(target.frame);
+                }
+            }
+            ProcedureFrame[] newCalls = distinct.toArray(new ProcedureFrame[0]);
+            if (!Arrays.equals(newCalls, calls)) {//kept if the same
+                calls = newCalls;
+            }
+        }
+
+        /**
+         * @return problems of the frame, null if none
+         */
+        FrameProblems problems() {
+            return blockProblems != null || frameProblem != null
+                    ? new FrameProblems(modCount, frameProblem, blockProblems)
+                    : null;
+        }
+    }
+
+    /**
+     * Problems found in a frame
+     */
+    public static final class FrameProblems {
+
+        private final int modCount;
+        private final String frameProblem;
+        private final String[] blockProblems;
+
+        FrameProblems(int modCount, String frameProblem,
+                String[] blockProblems) {
+            this.modCount = modCount;
+            this.frameProblem = frameProblem;
+            this.blockProblems = blockProblems;
+        }
+
+        /**
+         * Tells whether the problems are still those of the frame. Problems of
+         * a frame that has changed since are only valid after the next
+         * validation, as its blocks may have moved.
+         *
+         * @param frame frame the problems have been found in
+         *
+         * @return true if the frame hasn't changed since it was copied
+         */
+        public boolean isCurrent(ProcedureFrame frame) {
+            return frame.getModCount() == modCount;
+        }
+
+        /**
+         * @return problem of the frame itself, null if none
+         */
+        public String getFrameProblem() {
+            return frameProblem;
+        }
+
+        /**
+         * @param pos position of a block
+         *
+         * @return problems of the block, null if none
+         */
+        public String getBlockProblem(int pos) {
+            return blockProblems != null && pos >= 0
+                    && pos < blockProblems.length ? blockProblems[pos] : null;
+        }
+
+        /**
+         * @return number of blocks checked
+         */
+        public int getBlockCount() {
+            return blockProblems != null ? blockProblems.length : 0;
+        }
+    }
+
+    /**
+     * Problems of a model after a validation
+     */
+    public static final class Result {
+
+        private final Map<ProcedureFrame, FrameProblems> problems;
+        private final Set<ProcedureFrame> updated;
+        private final CallGraph callGraph;
+
+        Result(Map<ProcedureFrame, FrameProblems> problems,
+                Set<ProcedureFrame> updated, CallGraph callGraph) {
+            this.problems = problems;
+            this.updated = updated;
+            this.callGraph = callGraph;
+        }
+
+        /**
+         * @return calls between the frames found by the validation
+         */
+        public CallGraph getCallGraph() {
+            return callGraph;
+        }
+
+        /**
+         * @param frame frame of the model
+         *
+         * @return problems of the frame, null if none
+         */
+        public FrameProblems getProblems(ProcedureFrame frame) {
+            return problems.get(frame);
+        }
+
+        /**
+         * @return frames whose problems have changed with this validation
+         */
+        public Set<ProcedureFrame> getUpdated() {
+            return Collections.unmodifiableSet(updated);
+        }
+
+        /**
+         * @return number of frames with problems
+         */
+        public int getFrameCount() {
+            return problems.size();
+        }
+    }
+}
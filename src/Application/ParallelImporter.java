@@ -0,0 +1,388 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import static Application.ModelImporter.*;
+import Model.EntityRegistry;
+import Model.ProcedureFrame;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Parallel counterpart of ModelImporter's walk of compiler-generated JSON.
+ * Every subprocess gets a frame of its own, so each subprocess subtree is
+ * built as a separate task on the common fork-join pool. The numbers a
+ * subtree uses only depend on how many subprocesses are started before it, so
+ * the subprocess counts of all subtrees are worked out first, also in
+ * parallel, and each subtree then starts from exactly the counts the
+ * sequential walk reaches it with. Frames come out in the sequential order.
+ *
+ * The sequential walk adds blocks to frames by their position in the list of
+ * frames, which is the frame an array was started for unless a subprocess is
+ * started while a failure subprocess is still waiting to be added, or a
+ * condition sits inside a parallel branch. Documents that do either are left
+ * to the sequential walk.
+ *
+ * @author Christos Darisaplis
+ */
+final class ParallelImporter {
+
+    private final ModelImporter owner;//cancel state
+    private final EntityRegistry entities;//interns the entities of all steps
+
+    /**
+     * Subprocess counts of an array of commands, and of the subtrees it
+     * starts, in the order the walk reaches them
+     */
+    private static final class Counts {
+
+        final ArrayList<Counts> subtrees = new ArrayList<>();
+        int totalSubs;//subprocesses started, subtrees included
+        int parlCount;//parallel subprocesses started
+        int failCount;//assestment failure subprocesses started
+        boolean unsafe;//blocks could end up in another array's frame
+    }
+
+    /**
+     * Creates the importer
+     *
+     * @param owner importer whose cancel state is checked
+     */
+    ParallelImporter(ModelImporter owner) {
+        this.owner = owner;
+        entities = owner.getEntities();
+    }
+
+    /**
+     * Builds all frames of the compiler-generated "execute" object
+     *
+     * @param execObj JSON representation of the main process
+     *
+     * @return all frames in order, null if the document has to be walked
+     * sequentially
+     */
+    ArrayList<ProcedureFrame> importModel(JSONObject execObj) {
+        JSONArray comArr = execObj.getJSONArray(COMMS);
+        Counts counts = new CountTask(comArr).invoke();
+        if (counts.unsafe) {
+            return null;
+        }
+
+        ProcedureFrame mainFrame = new ProcedureFrame(execObj.getString(NAME), 0);
+        return new BuildTask(mainFrame, comArr, buildEntString(
+                execObj.getJSONArray(USERS)), counts, 0, 0, 0).invoke();
+    }
+
+    /**
+     * Waits for a task and returns its result. Exceptions thrown on another
+     * thread come out as they were thrown, not as the copy the pool makes.
+     *
+     * @param task forked task
+     *
+     * @return result of the task
+     */
+    static <T> T join(ForkJoinTask<T> task) {
+        try {
+            return task.join();
+        } catch (RuntimeException ex) {
+            Throwable cause = ex.getCause();
+            if (cause != null && cause.getClass() == ex.getClass()) {
+                throw (RuntimeException) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Counts the subprocesses an array of commands starts, following the
+     * counters of ModelImporter.processArray
+     */
+    private final class CountTask extends RecursiveTask<Counts> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final JSONArray comArr;
+        private final ArrayList<CountTask> subtrees;//forked, in walk order
+
+        CountTask(JSONArray comArr) {
+            this.comArr = comArr;
+            subtrees = new ArrayList<>();
+        }
+
+        @Override
+        protected Counts compute() {
+            Counts counts = new Counts();
+            count(comArr, false, counts);
+
+            for (CountTask task : subtrees) {
+                Counts sub = ParallelImporter.join(task);
+                counts.subtrees.add(sub);
+                counts.totalSubs += sub.totalSubs;
+                counts.parlCount += sub.parlCount;
+                counts.failCount += sub.failCount;
+                counts.unsafe |= sub.unsafe;
+            }
+            return counts;
+        }
+
+        private void count(JSONArray comArr, boolean inPar, Counts counts) {
+            for (int i = 0; i < comArr.length(); i++) {
+                owner.checkCancelled();
+                if (RETRY.equals(comArr.get(i))) {
+                    return;//ignore the rest
+                }
+
+                JSONObject curObj = comArr.getJSONObject(i);
+                switch (curObj.getString(TYPE)) {
+                    case COMMAND:
+                        if (inPar) {//one parallel subprocess per command
+                            counts.parlCount++;
+                            counts.totalSubs++;
+                        }
+                        break;
+                    case SUBPROCESS:
+                        counts.totalSubs++;
+                        if (inPar) {
+                            counts.parlCount++;
+                        }
+                        fork(curObj.getJSONArray(COMMS));
+                        break;
+                    case PARALLEL:
+                        count(curObj.getJSONArray(COMMS), true, counts);
+                        break;
+                    case CONDITION_STEPS:
+                        /*Inside a parallel branch the block goes to the frame
+                        of the last subprocess started*/
+                        counts.unsafe |= inPar;
+                        count(curObj.getJSONArray(TRY), false, counts);
+
+                        JSONArray noArr = curObj.getJSONArray(NO);
+                        if (!noArr.isEmpty()) {
+                            counts.failCount++;
+                            counts.totalSubs++;
+                        }
+                        int started = counts.totalSubs;
+                        count(curObj.getJSONArray(YES), false, counts);
+                        if (!noArr.isEmpty()) {
+                            /*Frames added before the failure frame shift the
+                            positions of all frames after them*/
+                            counts.unsafe |= counts.totalSubs != started;
+                            fork(noArr);
+                        }
+                        break;
+                }
+            }
+        }
+
+        private void fork(JSONArray comArr) {
+            CountTask task = new CountTask(comArr);
+            task.fork();
+            subtrees.add(task);
+        }
+    }
+
+    /**
+     * Builds the frame of a subprocess and the frames of all subprocesses it
+     * starts, mirroring ModelImporter.processArray
+     */
+    private final class BuildTask extends RecursiveTask<ArrayList<ProcedureFrame>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ProcedureFrame frame;//frame of the subprocess
+        private final JSONArray comArr;
+        private final String entName;
+        private final Counts counts;//counts of comArr
+        private final ArrayList<Object> parts;//frames and forked subtrees
+
+        private int totalSubs;//total subprocess count
+        private int parlCount;//parallel subprocess count
+        private int failCount;//assestment failure subprocess count
+        private int nextSubtree;//next subtree in counts
+
+        BuildTask(ProcedureFrame frame, JSONArray comArr, String entName,
+                Counts counts, int totalSubs, int parlCount, int failCount) {
+            this.frame = frame;
+            this.comArr = comArr;
+            this.entName = entName;
+            this.counts = counts;
+            this.totalSubs = totalSubs;
+            this.parlCount = parlCount;
+            this.failCount = failCount;
+            parts = new ArrayList<>();
+        }
+
+        @Override
+        protected ArrayList<ProcedureFrame> compute() {
+            parts.add(frame);
+            processArray(frame, comArr, entName, false);
+
+            ArrayList<ProcedureFrame> frames = new ArrayList<>();
+            for (Object part : parts) {
+                if (part instanceof BuildTask) {
+                    frames.addAll(ParallelImporter.join((BuildTask) part));
+                } else {
+                    frames.add((ProcedureFrame) part);
+                }
+            }
+            return frames;
+        }
+
+        /**
+         * Processes an array of commands, forking every subprocess
+         *
+         * @param curFrame frame blocks are added to, null inside a parallel
+         * branch
+         * @param comArr current commands array
+         * @param entName current entity name
+         * @param inPar true if inside a parallel branch
+         */
+        private void processArray(ProcedureFrame curFrame, JSONArray comArr,
+                String entName, boolean inPar) {
+            for (int i = 0; i < comArr.length(); i++) {//process all commands
+                owner.checkCancelled();
+                /*Catch the "retry" loop string and ignore it*/
+                if (RETRY.equals(comArr.get(i))) {
+                    return;//ignore
+                }
+
+                JSONObject curObj = comArr.getJSONObject(i);
+                String blockName, blockAttr;
+                JSONArray newArr;
+                switch (curObj.getString(TYPE)) {
+                    case COMMAND:
+                        /*Split name and attributes*/
+                        String[] nameAttr = curObj.getString(COMMS).split(" ", 2);
+                        blockName = nameAttr[0];
+                        if (blockName.equals("Execute")) {
+                            blockName += " Transaction";
+                        } else {
+                            blockName += " Document";
+                        }
+                        blockAttr = nameAttr[1];
+
+                        if (!inPar) {//normal case
+                            curFrame.addStep(blockName, entities.intern(entName),
+                                    blockAttr);
+                        } else {//parallel case
+                            parlCount++;
+                            totalSubs++;
+                            ProcedureFrame parFrame = new ProcedureFrame("Parallel "
+                                    + "Subprocess" + Integer.toString(parlCount),
+                                    totalSubs);
+                            parFrame.addStep(blockName, entities.intern(entName),
+                                    blockAttr);
+                            parts.add(parFrame);
+                        }
+                        break;
+                    case SUBPROCESS:
+                        newArr = curObj.getJSONArray(COMMS);
+                        String frameName;
+                        if (!inPar) {//normal case
+                            curFrame.addStep("Run Subprocess",
+                                    entities.intern(entName),
+                                    "Subprocess: " + curObj.getString(NAME));
+                            totalSubs++;
+                            frameName = curObj.getString(NAME);
+                        } else {//parallel case
+                            totalSubs++;
+                            parlCount++;
+                            frameName = "Parallel Subprocess"
+                                    + Integer.toString(parlCount);
+                        }
+                        fork(new ProcedureFrame(frameName, totalSubs), newArr,
+                                buildEntString(curObj.getJSONArray(USERS)));
+                        break;
+                    case PARALLEL:
+                        if (!inPar) {//normal case
+                            int temp = parlCount;
+                            processArray(null, curObj.getJSONArray(COMMS),
+                                    entName, true);
+                            curFrame.addStep("Parallel Procedures",
+                                    entities.intern(entName),
+                                    buildParlString(temp, parlCount));
+                        } else {//move deeper in the parallel branch
+                            processArray(null, curObj.getJSONArray(COMMS),
+                                    entName, true);
+                        }
+                        break;
+                    case CHANGE_ENT:
+                        entName = buildUserString(curObj.getJSONArray(CUR_USERS)
+                                .getJSONObject(0));
+                        break;
+                    case CONDITION_STEPS:
+                        processArray(curFrame, curObj.getJSONArray(TRY), entName,
+                                false);
+
+                        blockAttr = "Condition: " + curObj.getString(CONDITION) + "\n";
+                        if (curObj.getJSONArray(NO).isEmpty()) {//nothing on failure
+                            blockAttr = "";
+                        } else {//failure subprocess needed
+                            failCount++;
+                            totalSubs++;
+                            blockAttr += "On Failure: Assestment Failure "
+                                    + Integer.toString(failCount);
+                        }
+                        curFrame.addStep("Formal Assestment",
+                                entities.intern(entName), blockAttr);
+                        processArray(curFrame, curObj.getJSONArray(YES), entName,
+                                false);
+
+                        newArr = curObj.getJSONArray(NO);
+                        if (!newArr.isEmpty()) {
+                            fork(new ProcedureFrame("Assestment Failure "
+                                    + Integer.toString(failCount), totalSubs),
+                                    newArr, entName);
+                        }
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Starts building a subtree and moves the counters past it
+         *
+         * @param subFrame frame of the subtree, its index already counted
+         * @param newArr commands of the subtree
+         * @param subEnt entity name the subtree starts with
+         */
+        private void fork(ProcedureFrame subFrame, JSONArray newArr,
+                String subEnt) {
+            Counts sub = counts.subtrees.get(nextSubtree++);
+            BuildTask task = new BuildTask(subFrame, newArr, subEnt, sub,
+                    totalSubs, parlCount, failCount);
+            task.fork();
+            parts.add(task);
+
+            totalSubs += sub.totalSubs;
+            parlCount += sub.parlCount;
+            failCount += sub.failCount;
+        }
+    }
+
+}
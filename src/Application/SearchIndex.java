@@ -0,0 +1,511 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import Model.Procedure;
+import Model.ProcedureFrame;
+import Model.Step;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index of the words in a model's frame titles and in its blocks'
+ * names, entities and attributes. Every query word matches the indexed words
+ * starting with it, so hits can be shown as a query is typed.
+ *
+ * The index is built in two halves like an export: the constructor copies the
+ * model's strings on the EDT and build() indexes them on any thread. After
+ * that the index belongs to the EDT, and every search first indexes again the
+ * frames whose modification count has changed, see
+ * ProcedureFrame.getModCount(), so only edited frames cost anything.
+ *
+ * Titles and blocks are documents numbered in the order they are indexed, a
+ * frame's documents being numbered one after the other, and every word keeps
+ * the numbers of its documents in ascending order. Documents of edited or
+ * removed frames are only marked dead, and the numbers are given out again
+ * once most of them are dead.
+ *
+ * @author Christos Darisaplis
+ */
+public final class SearchIndex {
+
+    private final Procedure model;//model indexed
+    private final Map<ProcedureFrame, FrameEntry> entries;//indexed frames
+    private final TreeMap<String, Postings> postings;//documents of each word
+    private ArrayList<Doc> docs;//documents by number, null once dead
+    private final BitSet live;//numbers of the live documents
+    private int liveDocs;//number of live documents
+    private int generation;//number of the last sync, see sync()
+
+    /*Snapshot of the model to build the index from, dropped once built*/
+    private ProcedureFrame[] frames;
+    private int[] modCounts;
+    private String[] titles;
+    private Step[][] steps;
+    private String[][] blocks;//name, entity and attributes of each block
+
+    private static final int MIN_COMPACT = 1024;//dead documents kept at least
+
+    /**
+     * Creates the index and takes a snapshot of the model's strings, must run
+     * on the thread that edits the model
+     *
+     * @param model model to index
+     */
+    public SearchIndex(Procedure model) {
+        this.model = model;
+        entries = new IdentityHashMap<>();
+        postings = new TreeMap<>();
+        docs = new ArrayList<>();
+        live = new BitSet();
+
+        List<ProcedureFrame> modelFrames = model.getFrames();
+        frames = modelFrames.toArray(new ProcedureFrame[0]);
+        modCounts = new int[frames.length];
+        titles = new String[frames.length];
+        steps = new Step[frames.length][];
+        blocks = new String[frames.length][];
+        for (int i = 0; i < frames.length; i++) {
+            ProcedureFrame aFrame = frames[i];
+            modCounts[i] = aFrame.getModCount();
+            titles[i] = aFrame.getName();
+            steps[i] = aFrame.getSteps().toArray(new Step[0]);
+            blocks[i] = blockStrings(steps[i]);
+        }
+    }
+
+    /**
+     * Indexes the snapshot taken by the constructor, may run on any thread
+     *
+     * @return the index
+     */
+    public SearchIndex build() {
+        for (int i = 0; i < frames.length; i++) {
+            entries.put(frames[i], index(frames[i], modCounts[i], titles[i],
+                    steps[i], blocks[i]));
+        }
+        frames = null;
+        modCounts = null;
+        titles = null;
+        steps = null;
+        blocks = null;
+        return this;
+    }
+
+    /**
+     * @return model indexed
+     */
+    public Procedure getModel() {
+        return model;
+    }
+
+    /**
+     * Finds the frame titles and blocks holding every word of a query, or
+     * words starting with them
+     *
+     * @param query words to look for, case is ignored
+     * @param limit maximum number of hits returned
+     *
+     * @return hits in model order, frame titles before their blocks
+     */
+    public List<Hit> search(String query, int limit) {
+        sync();
+        String[] words = words(query);
+        if (words.length == 0) {
+            return Collections.emptyList();
+        }
+
+        /*Collect the documents of the rarest word, check the rest on them*/
+        int rarest = 0;
+        long fewest = Long.MAX_VALUE;
+        for (int i = 0; i < words.length; i++) {
+            long count = 0;
+            for (Postings aPostings : withPrefix(words[i]).values()) {
+                count += aPostings.size;
+            }
+            if (count < fewest) {
+                fewest = count;
+                rarest = i;
+            }
+        }
+        if (fewest == 0) {
+            return Collections.emptyList();
+        }
+        BitSet found = new BitSet(docs.size());
+        for (Postings aPostings : withPrefix(words[rarest]).values()) {
+            for (int i = 0; i < aPostings.size; i++) {
+                found.set(aPostings.docs[i]);
+            }
+        }
+        found.and(live);
+
+        /*A frame's documents are numbered in order, walk them frame by frame.
+        Frames mostly follow each other in number too, so the gap up to the
+        next document found is remembered instead of being scanned again.*/
+        List<Hit> hits = new ArrayList<>();
+        int scanned = 0;//nothing found from here...
+        int next = nextFound(found, 0);//...up to here
+        for (ProcedureFrame aFrame : model.getFrames()) {
+            FrameEntry entry = entries.get(aFrame);
+            int end = entry.first + entry.count;
+            if (entry.first < scanned || entry.first > next) {
+                scanned = entry.first;
+                next = nextFound(found, scanned);
+            }
+            while (next < end) {
+                Doc aDoc = docs.get(next);
+                if (words.length == 1 || aDoc.matches(words)) {
+                    hits.add(aDoc);
+                    if (hits.size() == limit) {
+                        return hits;
+                    }
+                }
+                scanned = next + 1;
+                next = nextFound(found, scanned);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return first document found from a number on, Integer.MAX_VALUE if
+     * none
+     */
+    private static int nextFound(BitSet found, int from) {
+        int next = found.nextSetBit(from);
+        return next >= 0 ? next : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Indexes again the frames changed since the last sync and drops the
+     * frames no longer in the model
+     */
+    private void sync() {
+        generation++;
+        List<ProcedureFrame> modelFrames = model.getFrames();
+        for (ProcedureFrame aFrame : modelFrames) {
+            FrameEntry entry = entries.get(aFrame);
+            if (entry == null || entry.modCount != aFrame.getModCount()) {
+                if (entry != null) {
+                    unindex(entry);
+                }
+                Step[] frameSteps = aFrame.getSteps().toArray(new Step[0]);
+                entry = index(aFrame, aFrame.getModCount(), aFrame.getName(),
+                        frameSteps, blockStrings(frameSteps));
+                entries.put(aFrame, entry);
+            }
+            entry.generation = generation;
+        }
+        if (entries.size() > modelFrames.size()) {//some have been removed
+            Iterator<FrameEntry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                FrameEntry entry = it.next();
+                if (entry.generation != generation) {
+                    unindex(entry);
+                    it.remove();
+                }
+            }
+        }
+        if (docs.size() - liveDocs > Math.max(liveDocs, MIN_COMPACT)) {
+            compact();
+        }
+    }
+
+    /**
+     * Adds the documents of a frame, numbered after all existing ones
+     *
+     * @return the frame's entry
+     */
+    private FrameEntry index(ProcedureFrame frame, int modCount, String title,
+            Step[] frameSteps, String[] blockStrings) {
+        FrameEntry entry = new FrameEntry(modCount, docs.size(),
+                frameSteps.length + 1);
+        ArrayList<String> words = new ArrayList<>();
+        addWords(title, words);
+        add(new Doc(frame, null, -1, sortWords(words)));
+        for (int j = 0; j < frameSteps.length; j++) {
+            words.clear();
+            addWords(blockStrings[3 * j], words);
+            addWords(blockStrings[3 * j + 1], words);
+            addWords(blockStrings[3 * j + 2], words);
+            add(new Doc(frame, frameSteps[j], j, sortWords(words)));
+        }
+        return entry;
+    }
+
+    /**
+     * Numbers a document and adds it to the postings of its words
+     */
+    private void add(Doc aDoc) {
+        int number = docs.size();
+        docs.add(aDoc);
+        live.set(number);
+        liveDocs++;
+        String[] words = aDoc.words;
+        for (int i = 0; i < words.length; i++) {
+            Postings aPostings = postings.get(words[i]);
+            if (aPostings == null) {
+                aPostings = new Postings(words[i]);
+                postings.put(words[i], aPostings);
+            }
+            words[i] = aPostings.word;//one copy of every word
+            aPostings.add(number);
+        }
+    }
+
+    /**
+     * Marks the documents of a frame dead
+     */
+    private void unindex(FrameEntry entry) {
+        int end = entry.first + entry.count;
+        for (int i = entry.first; i < end; i++) {
+            docs.set(i, null);
+        }
+        live.clear(entry.first, end);
+        liveDocs -= entry.count;
+    }
+
+    /**
+     * Numbers the live documents again, dropping the dead ones and the words
+     * left without documents. Live documents keep their order, so every
+     * word's numbers stay ascending.
+     */
+    private void compact() {
+        int[] numbers = new int[docs.size()];//new number of each document
+        ArrayList<Doc> liveList = new ArrayList<>(liveDocs);
+        for (int i = 0; i < numbers.length; i++) {
+            Doc aDoc = docs.get(i);
+            numbers[i] = aDoc != null ? liveList.size() : -1;
+            if (aDoc != null) {
+                liveList.add(aDoc);
+            }
+        }
+        for (FrameEntry entry : entries.values()) {
+            entry.first = numbers[entry.first];
+        }
+
+        Iterator<Postings> it = postings.values().iterator();
+        while (it.hasNext()) {
+            Postings aPostings = it.next();
+            int size = 0;
+            for (int i = 0; i < aPostings.size; i++) {
+                int number = numbers[aPostings.docs[i]];
+                if (number >= 0) {
+                    aPostings.docs[size++] = number;
+                }
+            }
+            aPostings.size = size;
+            if (size == 0) {
+                it.remove();
+            }
+        }
+        docs = liveList;
+        live.clear();
+        live.set(0, liveDocs);
+    }
+
+    /**
+     * @return postings of the words starting with a prefix
+     */
+    private Map<String, Postings> withPrefix(String prefix) {
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE,
+                false);
+    }
+
+    /**
+     * Copies the name, entity and attributes of some steps
+     */
+    private static String[] blockStrings(Step[] frameSteps) {
+        String[] strings = new String[frameSteps.length * 3];
+        for (int j = 0; j < frameSteps.length; j++) {
+            strings[3 * j] = frameSteps[j].getName();
+            strings[3 * j + 1] = frameSteps[j].getEntity().getName();
+            strings[3 * j + 2] = frameSteps[j].getAttributes();
+        }
+        return strings;
+    }
+
+    /**
+     * Splits a text into lower case words of letters and digits
+     *
+     * @param text text to split
+     *
+     * @return distinct words, sorted
+     */
+    private static String[] words(String text) {
+        ArrayList<String> words = new ArrayList<>();
+        addWords(text, words);
+        return sortWords(words);
+    }
+
+    /**
+     * Adds the lower case words of a text to a list
+     */
+    private static void addWords(String text, List<String> words) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length()
+                    && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * @return the distinct words of a list, sorted
+     */
+    private static String[] sortWords(List<String> words) {
+        String[] sorted = words.toArray(new String[0]);
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (count == 0 || !sorted[i].equals(sorted[count - 1])) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * A frame title or a block found by a search
+     */
+    public interface Hit {
+
+        /**
+         * @return frame of the hit
+         */
+        ProcedureFrame getFrame();
+
+        /**
+         * @return step of the block found, null if the frame title was found
+         */
+        Step getStep();
+
+        /**
+         * @return position of the block in its frame, -1 for the frame title
+         */
+        int getPosition();
+    }
+
+    /**
+     * An indexed frame title or block
+     */
+    private static final class Doc implements Hit {
+
+        private final ProcedureFrame frame;
+        private final Step step;
+        private final int position;
+        private final String[] words;//distinct words, sorted
+
+        Doc(ProcedureFrame frame, Step step, int position, String[] words) {
+            this.frame = frame;
+            this.step = step;
+            this.position = position;
+            this.words = words;
+        }
+
+        /**
+         * @param prefixes query words
+         *
+         * @return true if a word of the document starts with every query word
+         */
+        boolean matches(String[] prefixes) {
+            for (String prefix : prefixes) {
+                int i = Arrays.binarySearch(words, prefix);
+                if (i < 0 && (-i - 1 == words.length
+                        || !words[-i - 1].startsWith(prefix))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public ProcedureFrame getFrame() {
+            return frame;
+        }
+
+        @Override
+        public Step getStep() {
+            return step;
+        }
+
+        @Override
+        public int getPosition() {
+            return position;
+        }
+    }
+
+    /**
+     * Numbers of the documents holding a word, ascending
+     */
+    private static final class Postings {
+
+        private final String word;
+        private int[] docs;
+        private int size;
+
+        Postings(String word) {
+            this.word = word;
+            docs = new int[2];
+        }
+
+        void add(int number) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = number;
+        }
+    }
+
+    /**
+     * Documents of an indexed frame
+     */
+    private static final class FrameEntry {
+
+        private final int modCount;//modification count when indexed
+        private int first;//number of the title, the blocks follow it
+        private final int count;//number of documents
+        private int generation;//last sync the frame was in the model
+
+        FrameEntry(int modCount, int first, int count) {
+            this.modCount = modCount;
+            this.first = first;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,846 @@
+/*
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * The Software shall be used for Good, not Evil.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Application;
+
+import static Application.ModelImporter.*;
+import Application.JSONPullParser.Token;
+import Model.EntityRegistry;
+import Model.ProcedureFrame;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Streaming counterpart of ModelImporter's JSON walk. Consumes the document
+ * token by token and keeps an explicit stack of open command arrays instead of
+ * recursing, so neither the document size nor its nesting depth is bounded by
+ * the heap or the thread stack. Produces exactly the same frames as the
+ * recursive walk.
+ *
+ * A command's nested arrays are streamed in place whenever the keys they
+ * depend on have already been read. Arrays that arrive too early (e.g. the
+ * "yes" branch of a condition before its "no" branch is known to be empty or
+ * not) are captured as compact text and replayed once they can be processed.
+ *
+ * Frames are passed on to the owner's listener as soon as no open or future
+ * array can add blocks to them any more. The main process is only finished at
+ * the end, so its blocks are passed on one by one as they are added.
+ *
+ * In parallel mode, the frames of an application file are cut out of the
+ * document one by one and parsed on the fork-join pool, while the "execute"
+ * object of a compiler file is read as a whole and handed to ModelImporter's
+ * parallel walk.
+ *
+ * @author Christos Darisaplis
+ */
+class StreamingImporter {
+
+    private final JSONPullParser in;//document source
+    private final ModelImporter owner;//listener and cancel state
+    private final EntityRegistry entities;//interns the entities of all steps
+    private final ArrayList<ProcedureFrame> framesList;//imported data
+    private final ArrayDeque<Scope> stack;//open command arrays
+
+    /*Application frames being parsed at once, per worker thread*/
+    private static final int FRAMES_PER_WORKER = 4;
+
+    private int[] frameRefs;//open arrays adding blocks to each frame
+    private final BitSet finished;//frames passed on to the listener
+    private int checked;//frames below this index have been checked once
+
+    private int totalSubs;//total subprocess count
+
+    private int subCount;//regular subprocess count
+    private int parlCount;//parallel subprocess count
+    private int failCount;//assestment failure subprocess count
+
+    /**
+     * An array of commands being processed, the equivalent of one
+     * ModelImporter.processArray call
+     */
+    private static final class Scope {
+
+        final JSONPullParser in;//source of the array's elements
+        final int frame;//index of the frame blocks are added to
+        final boolean inPar;//inside a parallel branch
+        final boolean isArray;//false for the "execute" object
+        String entName;//current entity name, changed by "changeUsers"
+        Command cmd;//command object currently open, null between commands
+        int count;//commands read so far
+
+        Scope(JSONPullParser in, int frame, String entName, boolean inPar,
+                boolean isArray) {
+            this.in = in;
+            this.frame = frame;
+            this.entName = entName;
+            this.inPar = inPar;
+            this.isArray = isArray;
+        }
+    }
+
+    /**
+     * A command object read so far, and how far its processing has gone
+     */
+    private static final class Command {
+
+        final boolean main;//the "execute" object
+        String type, name, condition, text;
+        JSONArray users, curUsers;
+        final HashMap<String, String> deferred;//arrays captured for later
+        Boolean noEmpty;//null while the "no" branch hasn't been seen
+        boolean noOpen;//"no" array opened in the stream, waiting for "yes"
+        int parlStart;//parallel subprocess count before a parallel branch
+        int step;//next processing step
+        boolean ended;//END_OBJECT has been read
+
+        Command(boolean main) {
+            this.main = main;
+            deferred = new HashMap<>(4);
+        }
+    }
+
+    /**
+     * Creates the importer
+     *
+     * @param in parser positioned at the start of the document
+     * @param owner importer that gets notified of finished frames
+     */
+    StreamingImporter(JSONPullParser in, ModelImporter owner) {
+        this.in = in;
+        this.owner = owner;
+        entities = owner.getEntities();
+        framesList = new ArrayList<>();
+        stack = new ArrayDeque<>();
+
+        frameRefs = new int[16];
+        finished = new BitSet();
+        checked = 0;
+
+        /*All counters to zero*/
+        totalSubs = 0;
+
+        subCount = 0;
+        parlCount = 0;
+        failCount = 0;
+    }
+
+    /**
+     * Import model and return an ordered list of all of its frames
+     *
+     * @return list containing all of the model's frames
+     */
+    ArrayList<ProcedureFrame> importModel() {
+        if (in.next() != Token.BEGIN_OBJECT) {
+            throw new JSONException("A JSONObject text must begin with '{'");
+        }
+
+        boolean found = false;
+        while (in.next() == Token.KEY) {
+            String key = in.getText();
+            if (!found && key.equals(FRAMES_KEY)) {//generated from app
+                if (owner.isParallel()) {
+                    readAppFramesParallel();
+                } else {
+                    readAppFrames();
+                }
+                found = true;
+            } else if (!found && key.equals(MAIN)) {//generated from compiler
+                if (owner.isParallel()) {
+                    if (in.peek() != Token.BEGIN_OBJECT) {
+                        throw notAn(MAIN, "JSONObject");
+                    }
+                    framesList.addAll(owner.processCompilerImport(
+                            (JSONObject) in.readValue()));
+                    found = true;
+                    continue;
+                }
+                if (in.next() != Token.BEGIN_OBJECT) {
+                    throw notAn(MAIN, "JSONObject");
+                }
+                Scope root = new Scope(in, 0, "", false, false);
+                root.cmd = new Command(true);
+                run(root);
+                found = true;
+            } else {
+                in.skipValue();
+            }
+        }
+        if (!found) {
+            throw notFound(MAIN);
+        }
+
+        /*Whatever is left, starting with the main process, is done now*/
+        for (int i = finished.nextClearBit(0); i < framesList.size();
+                i = finished.nextClearBit(i + 1)) {
+            finishFrame(i);
+        }
+        return framesList;
+    }
+
+    /**
+     * Builds the list of frames from an application JSON file
+     */
+    private void readAppFrames() {
+        if (in.next() != Token.BEGIN_ARRAY) {
+            throw notAn(FRAMES_KEY, "JSONArray");
+        }
+        int index = 0;
+        while (in.peek() != Token.END_ARRAY) {//iterate all frames
+            owner.checkCancelled();
+            framesList.add(readAppFrame(in, index, entities));
+            finishFrame(index++);
+        }
+        in.next();
+    }
+
+    /**
+     * Builds the list of frames from an application JSON file, parsing the
+     * frames on the fork-join pool. Only the raw text of each frame is
+     * scanned here, and only a few frames per worker are pending at any time,
+     * so they are still passed on in order and the document is not held in
+     * memory as a whole.
+     */
+    private void readAppFramesParallel() {
+        if (in.next() != Token.BEGIN_ARRAY) {
+            throw notAn(FRAMES_KEY, "JSONArray");
+        }
+        ArrayDeque<ForkJoinTask<ProcedureFrame>> pending = new ArrayDeque<>();
+        int window = FRAMES_PER_WORKER * ForkJoinPool.getCommonPoolParallelism();
+        int index = 0;
+        while (true) {//iterate all frames
+            String frame;
+            int baseDepth;
+            try {
+                owner.checkCancelled();
+                Token t = in.peek();
+                if (t == Token.END_ARRAY) {
+                    in.next();
+                    break;
+                } else if (t != Token.BEGIN_OBJECT) {
+                    throw notAn(FRAMES_KEY, "JSONObject");
+                }
+                baseDepth = in.getDepth() - 2;
+                frame = in.captureRawValue();
+            } catch (RuntimeException ex) {
+                /*Frames before a syntax error still fail first, as they
+                would sequentially*/
+                while (!pending.isEmpty()) {
+                    addAppFrame(pending.poll());
+                }
+                throw ex;
+            }
+
+            int frameIndex = index++;
+            pending.add(ForkJoinTask.adapt(() -> readAppFrame(
+                    new JSONPullParser(new StringReader(frame), baseDepth),
+                    frameIndex, entities)).fork());
+            if (pending.size() >= window) {
+                addAppFrame(pending.poll());
+            }
+        }
+        while (!pending.isEmpty()) {
+            addAppFrame(pending.poll());
+        }
+    }
+
+    private void addAppFrame(ForkJoinTask<ProcedureFrame> task) {
+        framesList.add(ParallelImporter.join(task));
+        finishFrame(framesList.size() - 1);
+    }
+
+    /**
+     * Builds a single frame from an application JSON file
+     *
+     * @param in parser positioned at the frame
+     * @param index index of the frame in the list of frames
+     * @param entities registry interning the entities of the blocks
+     *
+     * @return the new frame that has been constructed
+     */
+    private static ProcedureFrame readAppFrame(JSONPullParser in, int index,
+            EntityRegistry entities) {
+        if (in.next() != Token.BEGIN_OBJECT) {
+            throw notAn(FRAMES_KEY, "JSONObject");
+        }
+
+        String title = null;
+        String blocks = null;//blocks captured before the title
+        ProcedureFrame newFrame = null;
+        while (in.next() == Token.KEY) {
+            String key = in.getText();
+            if (key.equals(FRAME_TITLE)) {
+                title = in.nextString(FRAME_TITLE);
+            } else if (key.equals(BLOCKS_KEY) && title != null) {
+                newFrame = new ProcedureFrame(title, index);
+                readAppBlocks(in, newFrame, entities);
+            } else if (key.equals(BLOCKS_KEY)) {//title not known yet
+                blocks = in.captureValue();
+            } else {
+                in.skipValue();
+            }
+        }
+
+        if (title == null) {
+            throw notFound(FRAME_TITLE);
+        }
+        if (newFrame == null) {
+            if (blocks == null) {
+                throw notFound(BLOCKS_KEY);
+            }
+            newFrame = new ProcedureFrame(title, index);
+            readAppBlocks(new JSONPullParser(new StringReader(blocks)), newFrame,
+                    entities);
+        }
+        return newFrame;
+    }
+
+    /**
+     * Adds all blocks of an application JSON frame to a frame
+     *
+     * @param blocksIn parser positioned at the blocks array
+     * @param newFrame frame to add the blocks to
+     * @param entities registry interning the entities of the blocks
+     */
+    private static void readAppBlocks(JSONPullParser blocksIn,
+            ProcedureFrame newFrame, EntityRegistry entities) {
+        if (blocksIn.next() != Token.BEGIN_ARRAY) {
+            throw notAn(BLOCKS_KEY, "JSONArray");
+        }
+        while (blocksIn.next() == Token.BEGIN_OBJECT) {//iterate blocks
+            String blockName = null, blockEnt = null, blockAttr = null;
+            while (blocksIn.next() == Token.KEY) {
+                switch (blocksIn.getText()) {
+                    case BLOCK_NAME:
+                        blockName = blocksIn.nextString(BLOCK_NAME);
+                        break;
+                    case BLOCK_ENT:
+                        blockEnt = blocksIn.nextString(BLOCK_ENT);
+                        break;
+                    case BLOCK_ATTR:
+                        blockAttr = blocksIn.nextString(BLOCK_ATTR);
+                        break;
+                    default:
+                        blocksIn.skipValue();
+                        break;
+                }
+            }
+
+            /*Add block to frame*/
+            if (blockName == null || blockEnt == null || blockAttr == null) {
+                throw notFound(blockName == null ? BLOCK_NAME
+                        : blockEnt == null ? BLOCK_ENT : BLOCK_ATTR);
+            }
+            newFrame.addStep(blockName, entities.intern(blockEnt), blockAttr);
+        }
+    }
+
+    /**
+     * Processes the compiler-generated "execute" object and everything nested
+     * in it, one token at a time
+     *
+     * @param root scope holding the "execute" command, its opening brace
+     * already consumed
+     */
+    private void run(Scope root) {
+        push(root);
+        while (!stack.isEmpty()) {
+            owner.checkCancelled();
+            Scope s = stack.peek();
+            Command c = s.cmd;
+
+            if (c == null) {//between two commands of an array
+                switch (s.in.next()) {
+                    case BEGIN_OBJECT:
+                        s.cmd = new Command(false);
+                        s.count++;
+                        break;
+                    case END_ARRAY:
+                        pop();
+                        break;
+                    case STRING:
+                        /*Catch the "retry" loop string and ignore the rest*/
+                        if (!s.in.getText().equals(RETRY)) {
+                            throw notAnElement(s.count);
+                        }
+                        s.in.skipRestOfArray();
+                        pop();
+                        break;
+                    default:
+                        throw notAnElement(s.count);
+                }
+            } else if (advance(s, c)) {//a nested array has been opened
+                continue;
+            } else if (c.ended) {//command fully processed
+                s.cmd = null;
+                if (!s.isArray) {
+                    pop();
+                }
+            } else if (s.in.next() == Token.KEY) {
+                readKey(s, c, s.in.getText());
+            } else {//END_OBJECT
+                c.ended = true;
+            }
+        }
+    }
+
+    /**
+     * Reads the value of one key of the current command
+     *
+     * @param s scope the command belongs to
+     * @param c current command
+     * @param key key just read
+     */
+    private void readKey(Scope s, Command c, String key) {
+        JSONPullParser keyIn = s.in;
+        switch (key) {
+            case TYPE:
+                c.type = optString(keyIn);
+                break;
+            case NAME:
+                c.name = optString(keyIn);
+                break;
+            case CONDITION:
+                c.condition = optString(keyIn);
+                break;
+            case USERS:
+                c.users = optArray(keyIn);
+                break;
+            case CUR_USERS:
+                c.curUsers = optArray(keyIn);
+                break;
+            case COMMS:
+                if (keyIn.peek() == Token.STRING) {//single command text
+                    c.text = optString(keyIn);
+                } else {
+                    readArray(s, c, key);
+                }
+                break;
+            case TRY:
+            case YES:
+            case NO:
+                readArray(s, c, key);
+                break;
+            default:
+                keyIn.skipValue();
+                break;
+        }
+    }
+
+    /**
+     * Streams a nested array in place if it can be processed right now,
+     * captures it for later otherwise
+     *
+     * @param s scope the command belongs to
+     * @param c current command
+     * @param key key of the array
+     */
+    private void readArray(Scope s, Command c, String key) {
+        JSONPullParser keyIn = s.in;
+        if (keyIn.peek() != Token.BEGIN_ARRAY
+                || (hasType(c) && !usesArray(c, key))) {
+            keyIn.skipValue();
+        } else if (hasType(c) && key.equals(arrayKey(c))
+                && missingKey(s, c) == null) {//next in line, stream it
+            keyIn.next();
+            openArray(s, c, keyIn);
+        } else if (key.equals(NO) && c.step == 1 && c.condition != null
+                && c.deferred.containsKey(YES)) {
+            /*Only the emptiness of "no" was missing, "yes" gets replayed
+            before the rest of this array is streamed*/
+            keyIn.next();
+            c.noEmpty = keyIn.peek() == Token.END_ARRAY;
+            if (c.noEmpty) {
+                keyIn.next();
+            } else {
+                c.noOpen = true;
+            }
+        } else {//too early, keep it for later
+            String captured = keyIn.captureValue();
+            if (key.equals(NO)) {
+                c.noEmpty = captured.equals("[]");
+            }
+            c.deferred.put(key, captured);
+        }
+    }
+
+    /**
+     * Runs as many processing steps of a command as its keys read so far
+     * allow. Steps mirror the order of ModelImporter.processArray.
+     *
+     * @param s scope the command belongs to
+     * @param c current command
+     *
+     * @return true if a nested array has been opened on the stack
+     */
+    private boolean advance(Scope s, Command c) {
+        if (!hasType(c)) {
+            if (c.ended) {
+                throw notFound(TYPE);
+            }
+            return false;
+        }
+
+        while (c.step < stepCount(c)) {
+            String missing = missingKey(s, c);
+            if (missing != null) {//wait for more keys
+                if (c.ended) {
+                    throw notFound(missing);
+                }
+                return false;
+            }
+
+            String key = arrayKey(c);
+            if (key == null) {//step without a nested array
+                runStep(s, c);
+                c.step++;
+            } else if (key.equals(NO) && c.noEmpty) {//nothing on failure
+                c.step++;
+            } else if (c.deferred.containsKey(key)) {//replay captured array
+                JSONPullParser replay = new JSONPullParser(
+                        new StringReader(c.deferred.remove(key)));
+                replay.next();
+                openArray(s, c, replay);
+                return true;
+            } else if (key.equals(NO) && c.noOpen) {//resume the stream
+                c.noOpen = false;
+                openArray(s, c, s.in);
+                return true;
+            } else if (c.ended) {
+                throw notFound(key);
+            } else {//wait for the array
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a processing step that does not involve a nested array
+     *
+     * @param s scope the command belongs to
+     * @param c current command
+     */
+    private void runStep(Scope s, Command c) {
+        String blockName, blockAttr;
+        switch (c.type) {
+            case COMMAND:
+                /*Split name and attributes*/
+                String[] nameAttr = c.text.split(" ", 2);
+                blockName = nameAttr[0];
+                /*Temp solution to compiler commands being only one word*/
+                if (blockName.equals("Execute")) {
+                    blockName += " Transaction";
+                } else {
+                    blockName += " Document";
+                }
+                blockAttr = nameAttr[1];
+
+                /*Create a unique subprocess for each command if inside a
+                parallel branch*/
+                if (!s.inPar) {//normal case
+                    addStep(s.frame, blockName, s.entName, blockAttr);
+                } else {//parallel case
+                    parlCount++;//new parallel subprocess added
+                    totalSubs++;
+                    ProcedureFrame parFrame = new ProcedureFrame("Parallel "
+                            + "Subprocess" + Integer.toString(parlCount), totalSubs);
+                    parFrame.addStep(blockName, entities.intern(s.entName),
+                            blockAttr);
+                    framesList.add(parFrame);
+                }
+                break;
+            case PARALLEL:
+                /*Add "Parallel Procedures" block after the branches*/
+                if (!s.inPar) {
+                    blockName = "Parallel Procedures";
+                    blockAttr = buildParlString(c.parlStart, parlCount);
+                    addStep(s.frame, blockName, s.entName, blockAttr);
+                }
+                break;
+            case CHANGE_ENT:
+                /*Only gets the first entity listed*/
+                s.entName = buildUserString(c.curUsers.getJSONObject(0));
+                break;
+            case CONDITION_STEPS:
+                blockName = "Formal Assestment";//add block to curr process
+                blockAttr = "Condition: " + c.condition + "\n";
+                if (c.noEmpty) {//nothing on failure
+                    blockAttr = "";
+                } else {//failure subprocess needed
+                    failCount++;//increase count
+                    totalSubs++;
+                    blockAttr += "On Failure: Assestment Failure "
+                            + Integer.toString(failCount);
+                }
+                addStep(s.frame, blockName, s.entName, blockAttr);
+                break;
+        }
+    }
+
+    /**
+     * Runs the processing step that opens a nested array and pushes the array
+     * on the stack
+     *
+     * @param s scope the command belongs to
+     * @param c current command
+     * @param arrIn parser positioned right after the array's opening bracket
+     */
+    private void openArray(Scope s, Command c, JSONPullParser arrIn) {
+        int frame = s.frame;
+        String entName = s.entName;
+        boolean inPar = false;
+
+        if (c.main) {//initialize model with main frame
+            framesList.add(new ProcedureFrame(c.name, 0));
+            owner.mainFrameStarted(c.name);//shown before it's finished
+            frame = 0;
+            entName = buildEntString(c.users);
+        } else if (c.type.equals(SUBPROCESS)) {
+            if (!s.inPar) {
+                /*Add "Run Subprocess" block to current frame*/
+                addStep(s.frame, "Run Subprocess", s.entName,
+                        "Subprocess: " + c.name);
+                totalSubs++;
+                subCount++;
+                framesList.add(new ProcedureFrame(c.name, totalSubs));
+            } else {
+                totalSubs++;
+                parlCount++;//new parallel subprocess added
+                framesList.add(new ProcedureFrame("Parallel Subprocess"
+                        + Integer.toString(parlCount), totalSubs));
+            }
+            frame = totalSubs;
+            entName = buildEntString(c.users);
+        } else if (c.type.equals(PARALLEL)) {
+            c.parlStart = parlCount;
+            frame = totalSubs;
+            inPar = true;
+        } else if (c.step == 3) {//failure blocks are added in a new subprocess
+            String frameName = "Assestment Failure " + Integer.toString(failCount);
+            framesList.add(new ProcedureFrame(frameName, totalSubs));
+            frame = totalSubs;
+        }
+
+        c.step++;
+        push(new Scope(arrIn, frame, entName, inPar, true));
+    }
+
+    /**
+     * Adds a block to a frame, passing the blocks of the main process on as
+     * they are added
+     *
+     * @param frame index of the frame
+     * @param blockName name of the block
+     * @param entName entity name of the block
+     * @param blockAttr attributes of the block
+     */
+    private void addStep(int frame, String blockName, String entName,
+            String blockAttr) {
+        framesList.get(frame).addStep(blockName, entities.intern(entName),
+                blockAttr);
+        if (frame == 0) {
+            owner.mainBlockAdded(blockName, entName, blockAttr);
+        }
+    }
+
+    private void push(Scope s) {
+        if (s.frame >= frameRefs.length) {
+            frameRefs = Arrays.copyOf(frameRefs,
+                    Math.max(s.frame + 1, frameRefs.length * 2));
+        }
+        frameRefs[s.frame]++;
+        stack.push(s);
+        checkFinished();
+    }
+
+    private void pop() {
+        int frame = stack.pop().frame;
+        frameRefs[frame]--;
+        if (frameRefs[frame] == 0 && frame < checked) {
+            finishFrame(frame);
+        }
+        checkFinished();
+    }
+
+    /**
+     * Passes on every frame no array can add blocks to any more. Blocks are
+     * only added to frames of open arrays and, through the subprocess count,
+     * to frames at or above the current count.
+     */
+    private void checkFinished() {
+        int limit = Math.min(totalSubs, framesList.size());
+        for (; checked < limit; checked++) {
+            if (checked >= frameRefs.length || frameRefs[checked] == 0) {
+                finishFrame(checked);
+            }
+        }
+    }
+
+    private void finishFrame(int index) {
+        if (!finished.get(index)) {
+            finished.set(index);
+            owner.frameBuilt(framesList.get(index));
+        }
+    }
+
+    /**
+     * Number of processing steps of a command
+     *
+     * @param c command
+     *
+     * @return step count, zero for unknown command types
+     */
+    private static int stepCount(Command c) {
+        if (c.main) {
+            return 1;
+        }
+        switch (c.type) {
+            case COMMAND:
+            case SUBPROCESS:
+            case CHANGE_ENT:
+                return 1;
+            case PARALLEL:
+                return 2;//branches, then the block
+            case CONDITION_STEPS:
+                return 4;//try, block, yes, no
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Key of the nested array the current step of a command processes
+     *
+     * @param c command
+     *
+     * @return array key, null if the step doesn't process an array
+     */
+    private static String arrayKey(Command c) {
+        if (c.main || c.type.equals(SUBPROCESS) || c.type.equals(PARALLEL)) {
+            return c.step == 0 ? COMMS : null;
+        } else if (c.type.equals(CONDITION_STEPS)) {
+            switch (c.step) {
+                case 0:
+                    return TRY;
+                case 2:
+                    return YES;
+                case 3:
+                    return NO;
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a nested array is processed by a command at all
+     *
+     * @param c command
+     * @param key key of the array
+     *
+     * @return true if the array is needed
+     */
+    private static boolean usesArray(Command c, String key) {
+        if (c.main || c.type.equals(SUBPROCESS) || c.type.equals(PARALLEL)) {
+            return key.equals(COMMS);
+        }
+        return c.type.equals(CONDITION_STEPS) && !key.equals(COMMS);
+    }
+
+    /**
+     * Finds a scalar key the current step of a command still waits for
+     *
+     * @param s scope the command belongs to
+     * @param c command
+     *
+     * @return missing key, null if the step can run
+     */
+    private static String missingKey(Scope s, Command c) {
+        if (c.main || c.type.equals(SUBPROCESS)) {
+            if (c.name == null && (c.main || !s.inPar)) {
+                return NAME;
+            }
+            return c.users == null ? USERS : null;
+        }
+        switch (c.type) {
+            case COMMAND:
+                return c.text == null ? COMMS : null;
+            case CHANGE_ENT:
+                return c.curUsers == null ? CUR_USERS : null;
+            case CONDITION_STEPS:
+                if (c.step != 1) {
+                    return null;
+                }
+                return c.condition == null ? CONDITION
+                        : c.noEmpty == null ? NO : null;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean hasType(Command c) {
+        return c.main || c.type != null;
+    }
+
+    private static String optString(JSONPullParser keyIn) {
+        if (keyIn.peek() == Token.STRING) {
+            keyIn.next();
+            return keyIn.getText();
+        }
+        keyIn.skipValue();
+        return null;
+    }
+
+    private static JSONArray optArray(JSONPullParser keyIn) {
+        if (keyIn.peek() == Token.BEGIN_ARRAY) {
+            return (JSONArray) keyIn.readValue();
+        }
+        keyIn.skipValue();
+        return null;
+    }
+
+    private static JSONException notFound(String key) {
+        return new JSONException("JSONObject[" + JSONObject.quote(key)
+                + "] not found.");
+    }
+
+    private static JSONException notAnElement(int index) {
+        return new JSONException("JSONArray[" + index + "] is not a JSONObject.");
+    }
+
+    private static JSONException notAn(String key, String type) {
+        return new JSONException("JSONObject[" + JSONObject.quote(key)
+                + "] is not a " + type + ".");
+    }
+}
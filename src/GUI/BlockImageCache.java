@@ -0,0 +1,287 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps rendered images of blocks, so that repainting a block that hasn't
+ * changed is a single image copy. Images are keyed by everything a block's
+ * looks depend on: its texts, size, font, hover/selection state and the
+ * display scale. The least recently painted images are dropped once the
+ * cache outgrows its memory budget. Only used on the event dispatch thread.
+ * <p>
+ * Blocks that paint nothing outside of their rectangle, which is most of them,
+ * are kept as opaque images of the rectangle, the cheapest kind to copy.
+ * The rest keep a transparent image of everything they paint.
+ *
+ * @author Christos Darisaplis
+ */
+final class BlockImageCache {
+
+    private static final int BYTES_PER_PIXEL = 4;//ARGB images
+    private static final int MAX_SHARE = 8;//largest image, budget fraction
+
+    private final long budget;//bytes
+    private long used;//bytes held by the cached images
+    private final LinkedHashMap<Key, Entry> images;//in LRU order
+
+    /**
+     * Creates an empty cache
+     *
+     * @param budget memory the images may take up, in bytes
+     */
+    BlockImageCache(long budget) {
+        this.budget = budget;
+        used = 0;
+        images = new LinkedHashMap<>(256, 0.75f, true);
+    }
+
+    /**
+     * Paints a block from its cached image, rendering the image first if
+     * needed. Blocks are painted directly if the painter is rotated or sheared
+     * or if the image would be too large to keep.
+     *
+     * @param block block to paint
+     * @param g2D painter of the component
+     * @param textMetr font rendering details
+     */
+    void paint(ProcessBlock block, Graphics2D g2D, FontMetrics textMetr) {
+        Rectangle bounds = block.getPaintBounds();
+        AffineTransform transform = g2D.getTransform();
+        double scale = transform.getScaleX();
+        long width = (long) Math.ceil(bounds.width * scale);
+        long height = (long) Math.ceil(bounds.height * scale);
+        if (!isCopyable(transform, bounds)
+                || width * height * BYTES_PER_PIXEL > budget / MAX_SHARE) {
+            block.paintSelf(g2D, textMetr);
+            return;
+        }
+
+        Key key = new Key(block, textMetr.getFont(), scale);
+        block.setImageKey(key, this);
+        Entry entry = images.get(key);
+        if (entry == null) {
+            BufferedImage image = render(block, g2D, textMetr, bounds, scale,
+                    (int) width, (int) height);
+            entry = scale == 1 ? crop(image, block.getMainRectangle(), bounds)
+                    : new Entry(image, 0, 0);
+            images.put(key, entry);
+            used += entry.size();
+            evict();
+        }
+
+        if (scale == 1) {
+            g2D.drawImage(entry.image, bounds.x + entry.x, bounds.y + entry.y,
+                    null);
+        } else {//image holds device pixels
+            g2D.drawImage(entry.image, bounds.x, bounds.y, bounds.width,
+                    bounds.height, null);
+        }
+        g2D.setColor(Color.BLACK);//as left by ProcessBlock.paintSelf()
+    }
+
+    /**
+     * Drops a block's image, after the block's texts have changed
+     *
+     * @param key key of the image
+     */
+    void invalidate(Key key) {
+        Entry entry = images.remove(key);
+        if (entry != null) {
+            used -= entry.size();
+        }
+    }
+
+    /**
+     * Drops all images
+     */
+    void clear() {
+        images.clear();
+        used = 0;
+    }
+
+    /**
+     * Renders a block on a transparent image with the painter's settings
+     */
+    private static BufferedImage render(ProcessBlock block, Graphics2D g2D,
+            FontMetrics textMetr, Rectangle bounds, double scale, int width,
+            int height) {
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D imageG = image.createGraphics();
+        imageG.setRenderingHints(g2D.getRenderingHints());
+        imageG.setFont(g2D.getFont());
+        imageG.setStroke(g2D.getStroke());
+        imageG.scale(scale, scale);
+        imageG.translate(-bounds.x, -bounds.y);
+        block.paintSelf(imageG, textMetr);
+        imageG.dispose();
+        return image;
+    }
+
+    /**
+     * Keeps only the block's rectangle, as an opaque image, if nothing has
+     * been painted outside of it
+     *
+     * @param image rendered block
+     * @param mainRect block's rectangle, its border drawn just outside
+     * @param bounds area the image covers
+     *
+     * @return image to keep and where it goes in the area
+     */
+    private static Entry crop(BufferedImage image, Rectangle mainRect,
+            Rectangle bounds) {
+        Rectangle body = new Rectangle(mainRect.x - bounds.x,
+                mainRect.y - bounds.y, mainRect.width + 1, mainRect.height + 1);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (image.getRGB(x, y) != 0 && !body.contains(x, y)) {
+                    return new Entry(image, 0, 0);//text or selection outside
+                }
+            }
+        }
+
+        BufferedImage opaque = new BufferedImage(body.width, body.height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D opaqueG = opaque.createGraphics();
+        opaqueG.drawImage(image, -body.x, -body.y, null);
+        opaqueG.dispose();
+        return new Entry(opaque, body.x, body.y);
+    }
+
+    /**
+     * Checks if an image copy lands on whole device pixels, with no rotation
+     * or shearing, so it looks the same as painting the block
+     */
+    private static boolean isCopyable(AffineTransform transform,
+            Rectangle bounds) {
+        if (transform.getShearX() != 0 || transform.getShearY() != 0
+                || transform.getScaleX() != transform.getScaleY()
+                || transform.getScaleX() <= 0) {
+            return false;
+        }
+        double x = transform.getTranslateX() + bounds.x * transform.getScaleX();
+        double y = transform.getTranslateY() + bounds.y * transform.getScaleY();
+        return x == Math.rint(x) && y == Math.rint(y);
+    }
+
+    /**
+     * Drops the least recently painted images until the budget is met
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> it = images.entrySet().iterator();
+        while (used > budget && it.hasNext()) {
+            used -= it.next().getValue().size();
+            it.remove();
+        }
+    }
+
+    /**
+     * Cached image of a block, placed relative to the block's painted area
+     */
+    private static final class Entry {
+
+        private final BufferedImage image;
+        private final int x, y;//offset in the painted area
+
+        private Entry(BufferedImage image, int x, int y) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+        }
+
+        private long size() {
+            return (long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+        }
+    }
+
+    /**
+     * Everything a block's image depends on. Positions are left out, blocks
+     * with the same contents and size share an image.
+     */
+    static final class Key {
+
+        private final String name, entity, attributes;
+        private final int width, height;//block size
+        private final int state;//hover, drop target and selection
+        private final Font font;
+        private final double scale;//display scale
+
+        private Key(ProcessBlock block, Font font, double scale) {
+            Rectangle mainRect = block.getMainRectangle();
+            name = block.getStep().getName();
+            entity = block.getStep().getEntity().getName();
+            attributes = block.getStep().getAttributes();
+            width = mainRect.width;
+            height = mainRect.height;
+            state = block.getPaintState();
+            this.font = font;
+            this.scale = scale;
+        }
+
+        /**
+         * Checks if two keys are for the same texts
+         *
+         * @param other key to compare with
+         *
+         * @return true if the texts are the same
+         */
+        boolean sameTexts(Key other) {
+            return name.equals(other.name) && entity.equals(other.entity)
+                    && attributes.equals(other.attributes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return width == other.width && height == other.height
+                    && state == other.state && scale == other.scale
+                    && font.equals(other.font) && sameTexts(other);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, entity, attributes, width, height,
+                    state, font, scale);
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Application.CallGraph;
+import Model.Procedure;
+import Model.ProcedureFrame;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Places the frames of a call graph in layers: the main process on top and
+ * every other frame one layer below its closest caller, as found by a breadth
+ * first search. Frames the main process never calls go on a row of their own
+ * at the bottom. Frames keep the order they were first seen in within their
+ * layer.
+ *
+ * Layers are kept up to date instead of being worked out again. A frame's
+ * calls are compared only when the graph hands over another array for them,
+ * see CallGraph.getCalls(), and only the frames whose depth can change with
+ * the calls gained or lost are searched again. Only the rows frames have
+ * moved in or out of are laid out again.
+ *
+ * @author Christos Darisaplis
+ */
+final class CallGraphLayout {
+
+    /*Layout metrics*/
+    static final int NODE_WIDTH = 160;
+    static final int NODE_HEIGHT = 28;
+    private static final int H_GAP = 24;//between nodes of a row
+    private static final int V_GAP = 56;//between rows
+    private static final int MARGIN = 20;
+
+    private static final int UNREACHED = Integer.MAX_VALUE;//depth if not called
+
+    private Procedure model;//model laid out, null if none
+    private Node main;
+    private final Map<ProcedureFrame, Node> nodes;
+    private final ArrayList<List<Node>> layers;//nodes of each depth
+    private final List<Node> unreached;//bottom row
+    private int created;//nodes created so far, see Node.seq
+    private int pass;//number of the last update
+    private int width;//widest row, in nodes
+    private final ArrayList<Integer> dirtyRows;//rows whose nodes have moved
+
+    private static final Comparator<Node> BY_SEQ
+            = Comparator.comparingInt(node -> node.seq);
+
+    CallGraphLayout() {
+        nodes = new IdentityHashMap<>();
+        layers = new ArrayList<>();
+        unreached = new ArrayList<>();
+        dirtyRows = new ArrayList<>();
+    }
+
+    /**
+     * Brings the layout up to date with a graph, laying it out from scratch
+     * if it's the graph of another model
+     *
+     * @param graph graph to lay out
+     */
+    void update(CallGraph graph) {
+        pass++;
+        List<ProcedureFrame> frames = graph.getFrames();
+        if (graph.getModel() != model || frames.isEmpty()
+                || nodes.get(frames.get(0)) != main) {
+            clear();
+            model = graph.getModel();
+        }
+
+        /*Frames added and removed*/
+        for (ProcedureFrame aFrame : frames) {
+            Node node = nodes.get(aFrame);
+            if (node == null) {
+                node = new Node(aFrame, created++);
+                nodes.put(aFrame, node);
+            }
+            node.seen = pass;
+        }
+        if (main == null && !frames.isEmpty()) {
+            main = nodes.get(frames.get(0));
+            setDepth(main, 0);
+        }
+        ArrayList<Node> lostCaller = new ArrayList<>();
+        ArrayList<Node[]> gained = new ArrayList<>();//caller and called
+        if (nodes.size() > frames.size()) {
+            Iterator<Node> it = nodes.values().iterator();
+            while (it.hasNext()) {
+                Node node = it.next();
+                if (node.seen != pass) {
+                    for (Node called : node.calls) {
+                        called.callers.remove(node);
+                        lostCaller.add(called);
+                    }
+                    rowOf(node.row).remove(node);
+                    markRow(node.row);
+                    it.remove();
+                }
+            }
+        }
+
+        /*Calls gained and lost*/
+        for (ProcedureFrame aFrame : frames) {
+            Node node = nodes.get(aFrame);
+            node.cyclic = graph.isCyclic(aFrame);
+            ProcedureFrame[] calls = graph.getCalls(aFrame);
+            if (calls == node.callArray) {
+                continue;
+            }
+            Set<Node> before = Collections.newSetFromMap(new IdentityHashMap<>());
+            Collections.addAll(before, node.calls);
+            Node[] after = new Node[calls.length];
+            for (int i = 0; i < calls.length; i++) {
+                after[i] = nodes.get(calls[i]);
+                if (!before.remove(after[i])) {
+                    after[i].callers.add(node);
+                    gained.add(new Node[]{node, after[i]});
+                }
+            }
+            for (Node called : before) {
+                called.callers.remove(node);
+                lostCaller.add(called);
+            }
+            node.calls = after;
+            node.callArray = calls;
+        }
+
+        updateDepths(lostCaller, gained);
+        trimLayers();
+        for (int row : dirtyRows) {
+            placeRow(row);
+        }
+        dirtyRows.clear();
+    }
+
+    /**
+     * Searches again the depths of the frames that may have lost their
+     * closest caller, and of the frames reached through the calls gained.
+     * Frames that lost a caller are checked in depth order, so the callers
+     * they could still rely on have been checked before them.
+     *
+     * @param lostCaller frames that lost a caller
+     * @param gained calls gained, caller and called
+     */
+    private void updateDepths(List<Node> lostCaller, List<Node[]> gained) {
+        PriorityQueue<Node> byDepth = new PriorityQueue<>(
+                Comparator.comparingInt((Node node) -> node.depth));
+        for (Node node : lostCaller) {
+            if (node.depth != UNREACHED && node != main
+                    && node.seen == pass) {
+                byDepth.add(node);
+            }
+        }
+        ArrayList<Node> orphaned = new ArrayList<>();
+        while (!byDepth.isEmpty()) {
+            Node node = byDepth.poll();
+            if (node.orphaned == pass || hasClosestCaller(node)) {
+                continue;
+            }
+            node.orphaned = pass;
+            node.tentative = UNREACHED;
+            orphaned.add(node);
+            for (Node called : node.calls) {
+                if (called.depth == node.depth + 1 && called.orphaned != pass) {
+                    byDepth.add(called);
+                }
+            }
+        }
+
+        /*Shortest depths through the callers left and the calls gained,
+        settled in depth order*/
+        PriorityQueue<Relaxed> queue = new PriorityQueue<>(
+                Comparator.comparingInt((Relaxed entry) -> entry.depth));
+        for (Node node : orphaned) {
+            for (Node caller : node.callers) {
+                if (caller.orphaned != pass && caller.depth != UNREACHED) {
+                    relax(queue, node, caller.depth + 1);
+                }
+            }
+        }
+        for (Node[] call : gained) {
+            if (call[0].orphaned != pass && call[0].depth != UNREACHED) {
+                relax(queue, call[1], call[0].depth + 1);
+            }
+        }
+        while (!queue.isEmpty()) {
+            Relaxed entry = queue.poll();
+            Node node = entry.node;
+            if (entry.depth != node.tentative) {
+                continue;//a shorter one has been found since
+            }
+            node.orphaned = 0;
+            setDepth(node, entry.depth);
+            for (Node called : node.calls) {
+                relax(queue, called, entry.depth + 1);
+            }
+        }
+        for (Node node : orphaned) {
+            if (node.orphaned == pass) {//no caller left
+                setDepth(node, UNREACHED);
+            }
+        }
+        for (Node node : nodes.values()) {//new frames nobody calls
+            if (node.row == NO_ROW) {
+                setDepth(node, UNREACHED);
+            }
+        }
+    }
+
+    /**
+     * Queues a frame at a depth, if that's shorter than the one it has
+     */
+    private static void relax(PriorityQueue<Relaxed> queue, Node node,
+            int depth) {
+        if (depth < node.tentative) {
+            node.tentative = depth;
+            queue.add(new Relaxed(node, depth));
+        }
+    }
+
+    /**
+     * @return true if a caller that keeps its depth is one layer above
+     */
+    private boolean hasClosestCaller(Node node) {
+        for (Node caller : node.callers) {
+            if (caller.orphaned != pass && caller.depth == node.depth - 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final int NO_ROW = Integer.MIN_VALUE;//node not placed yet
+    private static final int UNREACHED_ROW = -1;
+
+    /**
+     * Moves a frame to the row of a depth, keeping rows in creation order
+     */
+    private void setDepth(Node node, int depth) {
+        int row = depth == UNREACHED ? UNREACHED_ROW : depth;
+        node.depth = depth;
+        node.tentative = depth;
+        if (row == node.row) {
+            return;
+        }
+        if (node.row != NO_ROW) {
+            rowOf(node.row).remove(node);
+            markRow(node.row);
+        }
+        while (row != UNREACHED_ROW && layers.size() <= row) {
+            layers.add(new ArrayList<>());
+        }
+        List<Node> nodeRow = rowOf(row);
+        int pos = Collections.binarySearch(nodeRow, node, BY_SEQ);
+        nodeRow.add(-pos - 1, node);
+        node.row = row;
+        markRow(row);
+    }
+
+    private List<Node> rowOf(int row) {
+        return row == UNREACHED_ROW ? unreached : layers.get(row);
+    }
+
+    private void markRow(int row) {
+        if (!dirtyRows.contains(row)) {
+            dirtyRows.add(row);
+        }
+    }
+
+    /**
+     * Gives the nodes of a row their positions
+     */
+    private void placeRow(int row) {
+        if (row != UNREACHED_ROW && row >= layers.size()) {
+            return;
+        }
+        List<Node> nodeRow = rowOf(row);
+        for (int i = 0; i < nodeRow.size(); i++) {
+            nodeRow.get(i).slot = i;
+        }
+    }
+
+    /**
+     * Drops the empty layers at the bottom and finds the widest row
+     */
+    private void trimLayers() {
+        while (!layers.isEmpty() && layers.get(layers.size() - 1).isEmpty()) {
+            layers.remove(layers.size() - 1);
+        }
+        width = unreached.size();
+        for (List<Node> layer : layers) {
+            width = Math.max(width, layer.size());
+        }
+    }
+
+    /**
+     * Forgets all nodes
+     */
+    private void clear() {
+        nodes.clear();
+        layers.clear();
+        unreached.clear();
+        dirtyRows.clear();
+        main = null;
+        model = null;
+    }
+
+    /*Geometry*/
+
+    /**
+     * @return area of a frame's node
+     */
+    Rectangle boundsOf(Node node) {
+        int row = node.row == UNREACHED_ROW ? layers.size() + 1 : node.row;
+        return new Rectangle(MARGIN + node.slot * (NODE_WIDTH + H_GAP),
+                MARGIN + row * (NODE_HEIGHT + V_GAP), NODE_WIDTH, NODE_HEIGHT);
+    }
+
+    /**
+     * @return size of the whole layout
+     */
+    Rectangle getBounds() {
+        int rows = layers.size() + (unreached.isEmpty() ? 0 : 2);
+        return new Rectangle(0, 0, 2 * MARGIN + width * (NODE_WIDTH + H_GAP),
+                2 * MARGIN + rows * (NODE_HEIGHT + V_GAP));
+    }
+
+    /**
+     * Finds the node under a point from its row and slot
+     *
+     * @param p point in the layout
+     *
+     * @return node under the point, null if none
+     */
+    Node nodeAt(Point p) {
+        int rowPitch = NODE_HEIGHT + V_GAP;
+        int colPitch = NODE_WIDTH + H_GAP;
+        int y = p.y - MARGIN;
+        int x = p.x - MARGIN;
+        if (y < 0 || x < 0 || y % rowPitch >= NODE_HEIGHT
+                || x % colPitch >= NODE_WIDTH) {
+            return null;
+        }
+        int row = y / rowPitch;
+        List<Node> nodeRow = row < layers.size() ? layers.get(row)
+                : row == layers.size() + 1 ? unreached : null;
+        int slot = x / colPitch;
+        return nodeRow != null && slot < nodeRow.size() ? nodeRow.get(slot)
+                : null;
+    }
+
+    /**
+     * @return all nodes, in no particular order
+     */
+    Iterable<Node> getNodes() {
+        return nodes.values();
+    }
+
+    /**
+     * @return nodes whose slot and row overlap an area
+     */
+    List<Node> nodesIn(Rectangle area) {
+        ArrayList<Node> found = new ArrayList<>();
+        int rowPitch = NODE_HEIGHT + V_GAP;
+        int colPitch = NODE_WIDTH + H_GAP;
+        int firstSlot = Math.max(0, (area.x - MARGIN) / colPitch);
+        int lastSlot = (area.x + area.width - MARGIN) / colPitch;
+        int firstRow = Math.max(0, (area.y - MARGIN) / rowPitch);
+        int lastRow = (area.y + area.height - MARGIN) / rowPitch;
+        for (int row = firstRow; row <= lastRow; row++) {
+            List<Node> nodeRow = row < layers.size() ? layers.get(row)
+                    : row == layers.size() + 1 ? unreached
+                            : Collections.emptyList();
+            for (int i = firstSlot; i <= lastSlot && i < nodeRow.size(); i++) {
+                found.add(nodeRow.get(i));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A depth found for a frame, dropped if a shorter one is found later
+     */
+    private static final class Relaxed {
+
+        private final Node node;
+        private final int depth;
+
+        Relaxed(Node node, int depth) {
+            this.node = node;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * A frame of the graph
+     */
+    static final class Node {
+
+        final ProcedureFrame frame;
+        private final int seq;//order the frame was first seen in
+        private Node[] calls;//frames called
+        private ProcedureFrame[] callArray;//array the calls came from
+        private final List<Node> callers;
+        private int depth;//calls from the main process, UNREACHED if none
+        private int row;//row the node is in
+        private int slot;//position in its row
+        private boolean cyclic;
+        private int seen;//last update the frame was in the graph
+        private int orphaned;//last update the node lost its closest caller
+        private int tentative;//depth being searched
+
+        Node(ProcedureFrame frame, int seq) {
+            this.frame = frame;
+            this.seq = seq;
+            calls = new Node[0];
+            callers = new ArrayList<>(1);
+            depth = UNREACHED;
+            tentative = UNREACHED;
+            row = NO_ROW;
+        }
+
+        /**
+         * @return frames called
+         */
+        Node[] getCalls() {
+            return calls;
+        }
+
+        /**
+         * @return true if the frame calls itself, directly or through others
+         */
+        boolean isCyclic() {
+            return cyclic;
+        }
+
+        /**
+         * @return true if the main process doesn't call the frame
+         */
+        boolean isUnreached() {
+            return depth == UNREACHED;
+        }
+
+        /**
+         * @return calls from the main process
+         */
+        int getDepth() {
+            return depth;
+        }
+    }
+}
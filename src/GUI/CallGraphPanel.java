@@ -0,0 +1,208 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Application.CallGraph;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.Window;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.ToolTipManager;
+
+/**
+ * Draws the calls between the frames of the model shown by a workspace panel,
+ * laid out in layers by CallGraphLayout. The main process is blue, frames
+ * that call themselves red and frames the main process never calls grey, on
+ * the bottom row. Double-clicking a frame scrolls the workspace to it.
+ *
+ * @author Christos Darisaplis
+ */
+public class CallGraphPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private final WorkspacePanel workspace;//shows the frames clicked
+    private final CallGraphLayout layout;
+    private CallGraph graph;//graph shown, null if none yet
+
+    private static final Color MAIN_FILL = new Color(200, 220, 250);
+    private static final Color CYCLIC_FILL = new Color(250, 200, 200);
+    private static final Color UNREACHED_FILL = new Color(225, 225, 225);
+    private static final Color CALL_LINE = new Color(120, 120, 120);
+    private static final Color CYCLIC_LINE = new Color(200, 30, 30);
+    private static final Stroke UP_STROKE = new BasicStroke(1f,
+            BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f,
+            new float[]{4f, 4f}, 0f);//calls to a frame above or beside
+
+    /**
+     * Creates the panel, empty until a graph is set
+     *
+     * @param workspace panel to scroll to the frames double-clicked
+     */
+    public CallGraphPanel(WorkspacePanel workspace) {
+        this.workspace = workspace;
+        layout = new CallGraphLayout();
+        setBackground(Color.WHITE);
+        ToolTipManager.sharedInstance().registerComponent(this);
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                CallGraphLayout.Node node = layout.nodeAt(e.getPoint());
+                if (e.getClickCount() == 2 && node != null
+                        && workspace.showStep(node.frame, null)) {
+                    Window window = SwingUtilities.getWindowAncestor(workspace);
+                    if (window != null) {
+                        window.toFront();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Shows a graph, laying out only what has changed since the graph shown
+     * before if it's of the same model
+     *
+     * @param graph graph to show, null to keep the one shown
+     */
+    public void setGraph(CallGraph graph) {
+        if (graph == null || graph == this.graph) {
+            return;
+        }
+        this.graph = graph;
+        layout.update(graph);
+        setPreferredSize(layout.getBounds().getSize());
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Paints the calls and then the frames inside the clip
+     *
+     * @param g graphics tool
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (graph == null) {
+            return;
+        }
+        Graphics2D g2D = (Graphics2D) g.create();
+        g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        Rectangle clip = g2D.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+
+        Stroke plain = g2D.getStroke();
+        for (CallGraphLayout.Node node : layout.getNodes()) {
+            Rectangle from = layout.boundsOf(node);
+            for (CallGraphLayout.Node called : node.getCalls()) {
+                Rectangle to = layout.boundsOf(called);
+                int x1 = from.x + from.width / 2;
+                int y1 = from.y + from.height;
+                int x2 = to.x + to.width / 2;
+                int y2 = to.y;
+                if (!clip.intersects(new Rectangle(Math.min(x1, x2),
+                        Math.min(y1, y2), Math.abs(x2 - x1) + 1,
+                        Math.abs(y2 - y1) + 1))) {
+                    continue;
+                }
+                g2D.setColor(node.isCyclic() && called.isCyclic()
+                        ? CYCLIC_LINE : CALL_LINE);
+                g2D.setStroke(y2 > y1 ? plain : UP_STROKE);
+                g2D.drawLine(x1, y1, x2, y2);
+                g2D.fillOval(x2 - 3, y2 - 3, 6, 6);//called end
+            }
+        }
+        g2D.setStroke(plain);
+
+        FontMetrics metrics = g2D.getFontMetrics();
+        for (CallGraphLayout.Node node : layout.nodesIn(clip)) {
+            Rectangle bounds = layout.boundsOf(node);
+            g2D.setColor(node.getDepth() == 0 ? MAIN_FILL
+                    : node.isCyclic() ? CYCLIC_FILL
+                    : node.isUnreached() ? UNREACHED_FILL : Color.WHITE);
+            g2D.fillRoundRect(bounds.x, bounds.y, bounds.width, bounds.height,
+                    8, 8);
+            g2D.setColor(Color.DARK_GRAY);
+            g2D.drawRoundRect(bounds.x, bounds.y, bounds.width, bounds.height,
+                    8, 8);
+            g2D.setColor(Color.BLACK);
+            g2D.drawString(fit(node.frame.getName(), metrics, bounds.width - 8),
+                    bounds.x + 4, bounds.y + (bounds.height
+                    + metrics.getAscent() - metrics.getDescent()) / 2);
+        }
+        g2D.dispose();
+    }
+
+    /**
+     * Shortens a name to fit a width, ending it with dots if cut
+     */
+    private static String fit(String name, FontMetrics metrics, int width) {
+        if (metrics.stringWidth(name) <= width) {
+            return name;
+        }
+        int end = name.length();
+        while (end > 0 && metrics.stringWidth(name.substring(0, end) + "...")
+                > width) {
+            end--;
+        }
+        return name.substring(0, end) + "...";
+    }
+
+    /**
+     * Shows the name of the frame under the pointer and its problems
+     *
+     * @param e pointer event
+     *
+     * @return text of the tooltip, null if no frame is under the pointer
+     */
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        CallGraphLayout.Node node = layout.nodeAt(e.getPoint());
+        if (node == null) {
+            return null;
+        }
+        String text = node.frame.getName();
+        if (node.isCyclic()) {
+            text += " (calls itself)";
+        }
+        if (node.isUnreached() && node.getDepth() != 0) {
+            text += " (not called from the main process)";
+        }
+        return text;
+    }
+}
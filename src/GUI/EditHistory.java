@@ -0,0 +1,244 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Application.ModelJournal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Undo and redo stacks of model edits. Each entry only holds what an edit has
+ * changed, never a copy of the model, and the stacks together are kept under
+ * a memory budget by forgetting the oldest edits first. Edits are recorded
+ * after they have been made, and every change to the model, undo and redo
+ * included, is passed on to the journal if there is one. All methods are
+ * called on the event dispatch thread.
+ *
+ * @author Christos Darisaplis
+ */
+final class EditHistory {
+
+    private final Deque<Edit> undoStack;//newest edit first
+    private final Deque<Edit> redoStack;//next edit to redo first
+    private final long budget;//bytes
+    private long used;//estimated bytes held by both stacks
+    private final Runnable onChange;//called after the stacks change
+    private ModelJournal journal;//null if the model isn't journaled
+
+    /**
+     * Creates empty stacks
+     *
+     * @param budget most bytes the stacks may hold, roughly
+     * @param onChange called after the stacks change
+     */
+    EditHistory(long budget, Runnable onChange) {
+        undoStack = new ArrayDeque<>();
+        redoStack = new ArrayDeque<>();
+        this.budget = budget;
+        used = 0;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Records an edit that has just been made, merging it with the last one
+     * if possible. Edits that change nothing are ignored, otherwise the edits
+     * that could be redone are dropped.
+     *
+     * @param edit edit made
+     */
+    void record(Edit edit) {
+        if (journal != null && !edit.isEmpty()) {
+            edit.writeTo(journal, false);
+        }
+        Edit last = undoStack.peekFirst();
+        long lastSize = last == null ? 0 : last.getSize();
+        if (redoStack.isEmpty() && last != null && last.merge(edit)) {
+            used -= lastSize;//size has changed
+            undoStack.pollFirst();
+            edit = last;
+        } else if (edit.isEmpty()) {
+            return;
+        }
+
+        for (Edit anEdit : redoStack) {
+            used -= anEdit.getSize();
+        }
+        redoStack.clear();
+        if (!edit.isEmpty()) {//not merged back to where it started
+            undoStack.addFirst(edit);
+            used += edit.getSize();
+            trim();
+        }
+        onChange.run();
+    }
+
+    /**
+     * Undoes the last edit
+     *
+     * @param panel panel showing the model
+     *
+     * @return true if there was an edit to undo
+     */
+    boolean undo(WorkspacePanel panel) {
+        Edit edit = undoStack.pollFirst();
+        if (edit == null) {
+            return false;
+        }
+        edit.undo(panel);
+        if (journal != null) {
+            edit.writeTo(journal, true);
+        }
+        redoStack.addFirst(edit);
+        onChange.run();
+        return true;
+    }
+
+    /**
+     * Redoes the last undone edit
+     *
+     * @param panel panel showing the model
+     *
+     * @return true if there was an edit to redo
+     */
+    boolean redo(WorkspacePanel panel) {
+        Edit edit = redoStack.pollFirst();
+        if (edit == null) {
+            return false;
+        }
+        edit.redo(panel);
+        if (journal != null) {
+            edit.writeTo(journal, false);
+        }
+        undoStack.addFirst(edit);
+        onChange.run();
+        return true;
+    }
+
+    /**
+     * Sets the journal every change to the model is written to
+     *
+     * @param journal model journal, null for none
+     */
+    void setJournal(ModelJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Forgets all edits, after the model has been replaced
+     */
+    void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        used = 0;
+        onChange.run();
+    }
+
+    /**
+     * Drops the oldest edits until the stacks fit in the budget, keeping at
+     * least the last one
+     */
+    private void trim() {
+        while (used > budget && undoStack.size() > 1) {
+            used -= undoStack.pollLast().getSize();
+        }
+    }
+
+    /**
+     * @return name of the edit to undo, null if none
+     */
+    String getUndoName() {
+        Edit edit = undoStack.peekFirst();
+        return edit == null ? null : edit.getName();
+    }
+
+    /**
+     * @return name of the edit to redo, null if none
+     */
+    String getRedoName() {
+        Edit edit = redoStack.peekFirst();
+        return edit == null ? null : edit.getName();
+    }
+
+    /**
+     * @return estimated bytes held by both stacks
+     */
+    long getSize() {
+        return used;
+    }
+
+    /**
+     * A reversible change to the model. Frames and blocks are referred to by
+     * position, views are rebuilt by undo and redo.
+     */
+    interface Edit {
+
+        /**
+         * Reverts the edit
+         *
+         * @param panel panel showing the model
+         */
+        void undo(WorkspacePanel panel);
+
+        /**
+         * Makes the edit again
+         *
+         * @param panel panel showing the model
+         */
+        void redo(WorkspacePanel panel);
+
+        /**
+         * Writes the change to the model made by redo(), or by undo(), to a
+         * journal
+         *
+         * @param journal model journal
+         * @param undone true for the change made by undo()
+         */
+        void writeTo(ModelJournal journal, boolean undone);
+
+        /**
+         * Merges the next edit into this one, if they can be undone together
+         *
+         * @param next edit made right after this one
+         *
+         * @return true if merged
+         */
+        boolean merge(Edit next);
+
+        /**
+         * @return true if the edit changes nothing, after merging
+         */
+        boolean isEmpty();
+
+        /**
+         * @return estimated bytes held by the edit
+         */
+        long getSize();
+
+        /**
+         * @return name of the edit shown to the user
+         */
+        String getName();
+    }
+}
@@ -0,0 +1,89 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+
+/**
+ * Writes a model snapshot to a file on a background thread, so editing can go
+ * on while a large model is being saved
+ *
+ * @author Christos Darisaplis
+ */
+public class ExportWorker extends SwingWorker<Void, Void> {
+
+    private final Export export;//writes the snapshot taken
+    private final File file;//destination
+    private final PicturesqueFrame owner;//notified when the export ends
+
+    /**
+     * Creates the worker, the export starts with execute()
+     *
+     * @param export writes a snapshot taken on the EDT, in its format
+     * @param file file to write
+     * @param owner application frame to notify when the export ends
+     */
+    public ExportWorker(Export export, File file, PicturesqueFrame owner) {
+        this.export = export;
+        this.file = file;
+        this.owner = owner;
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        export.writeTo(file);
+        return null;
+    }
+
+    /**
+     * Reports export errors, runs on the EDT
+     */
+    @Override
+    protected void done() {
+        try {
+            get();
+        } catch (InterruptedException | ExecutionException ex) {//show exceptions
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            JOptionPane.showMessageDialog(owner, cause.getMessage(),
+                    "Export Error", JOptionPane.ERROR_MESSAGE);
+            System.out.println(Arrays.toString(cause.getStackTrace()));
+            System.out.println(cause.getMessage());
+        }
+        owner.exportFinished();
+    }
+
+    /**
+     * Writes a model snapshot to a file
+     */
+    public interface Export {
+
+        void writeTo(File file) throws IOException;
+    }
+}
@@ -0,0 +1,277 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the frames, frame headers and blocks under the pointer without
+ * looking at every one of them. Frames are kept sorted by their top edge, so
+ * the few that can contain a point are found with a binary search, and
+ * blocks are found from their fixed horizontal pitch (see
+ * ProcessFrame.getBlockAt()).
+ *
+ * The index only depends on the frames' vertical positions. It has to be
+ * invalidated when frames are added, removed or moved, block edits don't
+ * affect it.
+ *
+ * @author Christos Darisaplis
+ */
+final class FrameIndex {
+
+    private List<ProcessFrame> frames;//frames of the panel, in paint order
+    private ProcessFrame[] byTop;//frames sorted by top edge, then paint order
+    private int[] tops;//top edge of each frame in byTop
+    private int[] order;//position of each frame in byTop in the frames list
+    private int count;//valid entries, -1 if the index has to be rebuilt
+    private int headerHeight;//height of the painted frame headers
+
+    FrameIndex(List<ProcessFrame> frames) {
+        this.frames = frames;
+        byTop = new ProcessFrame[0];
+        tops = new int[0];
+        order = new int[0];
+        count = -1;
+        headerHeight = 0;
+    }
+
+    /**
+     * Sets the height frame headers have been painted with, headers can't be
+     * found before this is known
+     *
+     * @param headerHeight height of a frame header
+     */
+    void setHeaderHeight(int headerHeight) {
+        this.headerHeight = headerHeight;
+    }
+
+    int getHeaderHeight() {
+        return headerHeight;
+    }
+
+    /**
+     * Indexes another list of frames
+     *
+     * @param frames frames of the panel, in paint order
+     */
+    void setFrames(List<ProcessFrame> frames) {
+        this.frames = frames;
+        count = -1;
+    }
+
+    /**
+     * Forces a rebuild on the next lookup, after frames have moved
+     */
+    void invalidate() {
+        count = -1;
+    }
+
+    /**
+     * Adds the frame that has just been appended to the list of frames
+     *
+     * @param frame new last frame of the list
+     */
+    void frameAdded(ProcessFrame frame) {
+        if (count < 0) {//rebuilt on the next lookup anyway
+            return;
+        }
+        if (count == byTop.length) {//grow
+            int newLength = Math.max(16, count * 2);
+            byTop = Arrays.copyOf(byTop, newLength);
+            tops = Arrays.copyOf(tops, newLength);
+            order = Arrays.copyOf(order, newLength);
+        }
+        int top = frame.getFrameRectangle().y;
+        int pos = upperBound(top);//after equal tops, it's painted last
+        System.arraycopy(byTop, pos, byTop, pos + 1, count - pos);
+        System.arraycopy(tops, pos, tops, pos + 1, count - pos);
+        System.arraycopy(order, pos, order, pos + 1, count - pos);
+        byTop[pos] = frame;
+        tops[pos] = top;
+        order[pos] = frames.size() - 1;
+        count++;
+    }
+
+    /**
+     * Returns the topmost frame containing a point
+     *
+     * @param p point on the panel
+     *
+     * @return frame under the point, null if none
+     */
+    ProcessFrame frameAt(Point p) {
+        ensureBuilt();
+        ProcessFrame found = null;
+        int foundOrder = -1;
+        for (int i = upperBound(p.y) - 1; i >= 0 && tops[i] > p.y - maxHeight(); i--) {
+            if (order[i] > foundOrder && byTop[i].getFrameRectangle().contains(p)) {
+                found = byTop[i];
+                foundOrder = order[i];
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the topmost frame whose header contains a point. Headers are
+     * drawn right above their frames and only known after painting.
+     *
+     * @param p point on the panel
+     *
+     * @return frame whose header is under the point, null if none
+     */
+    ProcessFrame headerAt(Point p) {
+        ensureBuilt();
+        ProcessFrame found = null;
+        int foundOrder = -1;
+        /*Headers end at their frame's top, all have the same height*/
+        for (int i = upperBound(p.y); i < count && tops[i] - p.y <= headerHeight; i++) {
+            Rectangle header = byTop[i].getFrameHeader();
+            if (order[i] > foundOrder && header != null && header.contains(p)) {
+                found = byTop[i];
+                foundOrder = order[i];
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the topmost block containing a point
+     *
+     * @param p point on the panel
+     *
+     * @return block under the point, null if none
+     */
+    ProcessBlock blockAt(Point p) {
+        ensureBuilt();
+        ProcessBlock found = null;
+        int foundOrder = -1;
+        for (int i = upperBound(p.y) - 1; i >= 0 && tops[i] > p.y - maxHeight(); i--) {
+            if (order[i] > foundOrder) {
+                ProcessBlock aBlock = byTop[i].getBlockAt(p);
+                if (aBlock != null) {
+                    found = aBlock;
+                    foundOrder = order[i];
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the topmost block whose header contains a point
+     *
+     * @param p point on the panel
+     *
+     * @return block whose header is under the point, null if none
+     */
+    ProcessBlock blockHeaderAt(Point p) {
+        ProcessBlock aBlock = blockAt(p);
+        return aBlock != null && aBlock.getHeaderRectangle().contains(p)
+                ? aBlock : null;
+    }
+
+    /**
+     * Returns the frames painting on an area, for culling
+     *
+     * @param clip area being painted
+     *
+     * @return frames in the area, in paint order
+     */
+    List<ProcessFrame> framesIn(Rectangle clip) {
+        ensureBuilt();
+        int margin = ProcessFrame.PAINT_MARGIN;
+        int from = upperBound(clip.y - maxHeight() - margin - 1);
+        int to = upperBound(clip.y + clip.height + headerHeight + margin);
+
+        /*Sort the matches back into paint order, keyed by list position*/
+        long[] found = new long[Math.max(0, to - from)];
+        int matches = 0;
+        for (int i = from; i < to; i++) {
+            if (byTop[i].getPaintBounds(headerHeight).intersects(clip)) {
+                found[matches++] = ((long) order[i] << 32) | i;
+            }
+        }
+        Arrays.sort(found, 0, matches);
+
+        List<ProcessFrame> inClip = new ArrayList<>(matches);
+        for (int i = 0; i < matches; i++) {
+            inClip.add(byTop[(int) found[i]]);
+        }
+        return inClip;
+    }
+
+    /**
+     * All frames have the same height, widths change with their blocks
+     */
+    private int maxHeight() {
+        return count > 0 ? byTop[0].getFrameRectangle().height : 0;
+    }
+
+    /**
+     * Returns the position of the first frame whose top is below a y
+     */
+    private int upperBound(int y) {
+        int low = 0, high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tops[mid] <= y) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void ensureBuilt() {
+        if (count >= 0) {
+            return;
+        }
+        int size = frames.size();
+        Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        Arrays.sort(positions, Comparator.comparingInt(
+                (Integer i) -> frames.get(i).getFrameRectangle().y)
+                .thenComparingInt(i -> i));
+
+        byTop = new ProcessFrame[Math.max(16, size)];
+        tops = new int[byTop.length];
+        order = new int[byTop.length];
+        for (int i = 0; i < size; i++) {
+            byTop[i] = frames.get(positions[i]);
+            tops[i] = byTop[i].getFrameRectangle().y;
+            order[i] = positions[i];
+        }
+        count = size;
+    }
+}
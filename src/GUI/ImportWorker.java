@@ -0,0 +1,252 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Application.ModelImporter;
+import Application.ModelJournal;
+import Model.Procedure;
+import Application.ImportListener;
+import Model.ProcedureFrame;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+
+/**
+ * Imports a model on a background thread, handing every finished frame over to
+ * the workspace panel as soon as it's available. The main process of a
+ * compiler-generated document is shown first, its blocks are handed over in
+ * batches while it is built.
+ *
+ * @author Christos Darisaplis
+ */
+public class ImportWorker extends SwingWorker<Procedure, ImportWorker.Chunk> {
+
+    private static final int MAIN_BATCH = 256;//main process blocks per chunk
+
+    private final ModelImporter importer;
+    private final WorkspacePanel panel;//panel showing the model
+    private final PicturesqueFrame owner;//notified when the import ends
+    private final File journal;//edits to replay on the model, null if none
+
+    private volatile int framesBuilt;//only written by the worker thread
+
+    /*Only used by the worker thread*/
+    private String mainName;//main process being built, null if none
+    private final ArrayList<String> mainBlocks;//blocks not handed over yet
+
+    /**
+     * Creates the worker, the import starts with execute()
+     *
+     * @param importer importer reading the model
+     * @param panel panel showing the model
+     * @param owner application frame to notify when the import ends
+     */
+    public ImportWorker(ModelImporter importer, WorkspacePanel panel,
+            PicturesqueFrame owner) {
+        this(importer, panel, owner, null);
+    }
+
+    /**
+     * Creates a worker that recovers a model from its journal, the model is
+     * only shown once the journal's edits have been replayed on it
+     *
+     * @param importer importer reading the journal's snapshot
+     * @param panel panel showing the model
+     * @param owner application frame to notify when the import ends
+     * @param journal journal of the snapshot, null to import the model as is
+     */
+    public ImportWorker(ModelImporter importer, WorkspacePanel panel,
+            PicturesqueFrame owner, File journal) {
+        this.importer = importer;
+        this.panel = panel;
+        this.owner = owner;
+        this.journal = journal;
+        framesBuilt = 0;
+        mainName = null;
+        mainBlocks = new ArrayList<>();
+    }
+
+    /**
+     * Runs the import, publishing frames as they are finished
+     *
+     * @return the imported model
+     */
+    @Override
+    protected Procedure doInBackground() {
+        importer.setImportListener(new ImportListener() {
+            @Override
+            public void frameBuilt(ProcedureFrame frame) {
+                framesBuilt++;
+                if (journal == null) {//replayed edits may still change it
+                    publishMainBlocks();//before the frame may replace them
+                    publish(new Chunk(frame, null, null));
+                }
+            }
+
+            @Override
+            public void mainFrameStarted(String name) {
+                mainName = name;
+                if (journal == null) {//its header is shown right away
+                    publish(new Chunk(null, name, new String[0]));
+                }
+            }
+
+            @Override
+            public void mainBlockAdded(String name, String entity,
+                    String attributes) {
+                if (journal == null) {
+                    mainBlocks.add(name);
+                    mainBlocks.add(entity);
+                    mainBlocks.add(attributes);
+                    if (mainBlocks.size() >= 3 * MAIN_BATCH) {
+                        publishMainBlocks();
+                    }
+                }
+            }
+        });
+        Procedure imported = importer.importModel();
+        if (journal != null) {
+            try {
+                ModelJournal.replay(journal, imported);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Hands the blocks of the main process read since the last batch over
+     */
+    private void publishMainBlocks() {
+        if (!mainBlocks.isEmpty()) {
+            publish(new Chunk(null, mainName,
+                    mainBlocks.toArray(new String[0])));
+            mainBlocks.clear();
+        }
+    }
+
+    /**
+     * Shows finished frames and the main process so far, in the order they
+     * came. Runs on the EDT.
+     *
+     * @param chunks frames finished and main process blocks read since the
+     * last call
+     */
+    @Override
+    protected void process(List<Chunk> chunks) {
+        List<ProcedureFrame> built = new ArrayList<>();
+        for (Chunk aChunk : chunks) {
+            if (aChunk.frame != null) {
+                built.add(aChunk.frame);
+                continue;
+            }
+            if (!built.isEmpty()) {
+                panel.addImportedFrames(built);
+                built = new ArrayList<>();
+            }
+            panel.addImportedMainBlocks(aChunk.mainName, aChunk.mainBlocks);
+        }
+        if (!built.isEmpty()) {
+            panel.addImportedFrames(built);
+        }
+    }
+
+    /**
+     * Shows the imported model, or goes back to the previous one if the import
+     * failed or has been cancelled. Runs on the EDT.
+     */
+    @Override
+    protected void done() {
+        Procedure imported = null;
+        String error = null;//null if cancelled
+        try {
+            imported = get();
+        } catch (InterruptedException | ExecutionException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof UncheckedIOException) {//journal replay
+                cause = cause.getCause();
+            }
+            if (!(cause instanceof CancellationException)) {//show exceptions
+                error = String.valueOf(cause.getMessage());
+                if (journal == null) {//recovery errors are shown below
+                    JOptionPane.showMessageDialog(owner, error,
+                            "Import Error", JOptionPane.ERROR_MESSAGE);
+                }
+                System.out.println(Arrays.toString(cause.getStackTrace()));
+                System.out.println(cause.getMessage());
+            }
+        }
+        panel.endImport(imported);
+        owner.importFinished();
+        if (journal != null && imported == null) {
+            owner.recoveryFailed(error);
+        }
+    }
+
+    /**
+     * Stops the import, the previous model is shown again once the importer
+     * has noticed. The worker itself isn't cancelled so done() only runs after
+     * the importer has let go of all shared state.
+     */
+    public void cancelImport() {
+        importer.cancel();
+    }
+
+    public long getBytesRead() {
+        return importer.getBytesRead();
+    }
+
+    public long getFileSize() {
+        return importer.getFileSize();
+    }
+
+    public int getFramesBuilt() {
+        return framesBuilt;
+    }
+
+    /**
+     * A finished frame, or a batch of blocks of the main process
+     */
+    static final class Chunk {
+
+        final ProcedureFrame frame;//finished frame, null for main blocks
+        final String mainName;//name of the main process
+        final String[] mainBlocks;//name, entity and attributes of each block
+
+        Chunk(ProcedureFrame frame, String mainName, String[] mainBlocks) {
+            this.frame = frame;
+            this.mainName = mainName;
+            this.mainBlocks = mainBlocks;
+        }
+    }
+}
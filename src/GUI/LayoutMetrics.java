@@ -0,0 +1,153 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.geom.AffineTransform;
+
+/**
+ * Screen derived sizes all frames and blocks are laid out with. They only
+ * depend on the display the workspace is on and the zoom level, so they are
+ * computed once and shared until either changes. Instances are immutable and
+ * can be read from any thread.
+ *
+ * @author Christos Darisaplis
+ */
+final class LayoutMetrics {
+
+    /*Screen size assumed when there is no display*/
+    private static final int HEADLESS_WIDTH = 1920;
+    private static final int HEADLESS_HEIGHT = 1080;
+
+    /*Rendering properties, expressed as ratios and percentages*/
+    static final double DEFAULT_RATIO = 0.25;//frame height/screen height
+    private static final double BLOCKRATIO = 0.75;//block width/height ratio
+    private static final double YOFFSET = 0.02;//block margin/screen height
+
+    private static volatile LayoutMetrics current;//null until first needed
+
+    private final int screenWidth, screenHeight;//in user space pixels
+    private final double ratio;//zoom level
+
+    final int frameWidth, frameHeight;//default frame size
+    final int blockWidth, blockHeight;
+    final int blockYOffset;//gap between a frame's top and its blocks
+
+    private LayoutMetrics(int screenWidth, int screenHeight, double ratio) {
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.ratio = ratio;
+
+        frameWidth = screenWidth;
+        frameHeight = (int) (screenHeight * ratio);
+        blockHeight = (int) (screenHeight * (ratio - YOFFSET));
+        blockWidth = (int) (blockHeight * BLOCKRATIO);
+        blockYOffset = (int) (screenHeight * (YOFFSET / 2));
+    }
+
+    /**
+     * Returns the current metrics, querying the display only the first time
+     *
+     * @return current metrics
+     */
+    static LayoutMetrics get() {
+        LayoutMetrics metrics = current;
+        if (metrics == null) {
+            synchronized (LayoutMetrics.class) {
+                if (current == null) {
+                    int[] screen = screenSize(null);
+                    current = new LayoutMetrics(screen[0], screen[1], DEFAULT_RATIO);
+                }
+                metrics = current;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Sets a new zoom level
+     *
+     * @param ratio frame height/screen height
+     *
+     * @return true if the metrics have changed and frames need a new layout
+     */
+    static synchronized boolean setZoom(double ratio) {
+        LayoutMetrics old = get();
+        if (old.ratio == ratio) {
+            return false;
+        }
+        current = new LayoutMetrics(old.screenWidth, old.screenHeight, ratio);
+        return true;
+    }
+
+    /**
+     * Checks the display the workspace is shown on. Should be called whenever
+     * it may have changed: the workspace moved to another device, or the
+     * device's resolution or scaling has changed. The same configuration is
+     * checked again too, its device may have changed under it. Only one
+     * display query per call, frames are laid out again only if the screen
+     * size in user space has changed.
+     *
+     * @param config graphics configuration of the workspace, null if unknown
+     *
+     * @return true if the metrics have changed and frames need a new layout
+     */
+    static synchronized boolean setDisplay(GraphicsConfiguration config) {
+        if (config == null) {
+            return false;
+        }
+        LayoutMetrics old = get();
+        int[] screen = screenSize(config);
+        if (screen[0] == old.screenWidth && screen[1] == old.screenHeight) {
+            return false;
+        }
+        current = new LayoutMetrics(screen[0], screen[1], old.ratio);
+        return true;
+    }
+
+    /**
+     * Queries a configuration's screen size, the default screen's if none is
+     * given, or full HD when running headless so models can still be laid out
+     * and rendered without a display. The size is in user space, the display
+     * mode's pixels divided by the configuration's scaling, so frames keep
+     * their share of the screen at any scaling.
+     */
+    private static int[] screenSize(GraphicsConfiguration config) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new int[]{HEADLESS_WIDTH, HEADLESS_HEIGHT};
+        }
+        if (config == null) {
+            config = GraphicsEnvironment.getLocalGraphicsEnvironment().
+                    getDefaultScreenDevice().getDefaultConfiguration();
+        }
+        DisplayMode mode = config.getDevice().getDisplayMode();
+        AffineTransform scale = config.getDefaultTransform();
+        return new int[]{
+            (int) Math.round(mode.getWidth() / scale.getScaleX()),
+            (int) Math.round(mode.getHeight() / scale.getScaleY())};
+    }
+}
@@ -0,0 +1,369 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Shows the whole workspace scaled down, with the area in view marked on it.
+ * Clicking or dragging moves the view there. The scaled down workspace is
+ * kept in cells of a few pixels, rendered on a background thread from copies
+ * of the frames in them, the same way tiles are. A changed area of the
+ * workspace only makes the cells under it stale, and stale cells are shown
+ * until their new image is ready. Changes are gathered for a short while
+ * before rendering, so a burst of edits renders each cell once. All methods
+ * are called on the event dispatch thread.
+ *
+ * @author Christos Darisaplis
+ */
+public class MinimapPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int CELL_SIZE = 32;//pixels of the minimap
+    private static final int REFRESH_DELAY = 200;//ms after the last change
+    private static final int WIDTH = 160;//preferred width
+    private static final Color PLACEHOLDER = new Color(225, 225, 225);
+    private static final Color VIEW_FILL = new Color(70, 110, 200, 50);
+    private static final Color VIEW_LINE = new Color(70, 110, 200);
+
+    private final WorkspacePanel workspace;
+    private final JViewport viewport;//viewport showing the workspace
+    private final ExecutorService worker;
+    private final Timer refreshTimer;//renders the stale cells
+    private Cell[][] cells;//by row and column, null until first painted
+    private Dimension world;//workspace size the cells are made for
+    private double scale;//minimap pixels per workspace pixel
+
+    /**
+     * Creates the minimap of a workspace and starts following it
+     *
+     * @param workspace workspace shown
+     * @param viewport viewport the workspace is scrolled in
+     */
+    public MinimapPanel(WorkspacePanel workspace, JViewport viewport) {
+        this.workspace = workspace;
+        this.viewport = viewport;
+        worker = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "Minimap renderer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);//EDT comes first
+            return thread;
+        });
+        refreshTimer = new Timer(REFRESH_DELAY, evt -> refresh());
+        refreshTimer.setRepeats(false);
+        setPreferredSize(new Dimension(WIDTH, WIDTH));
+        setBackground(workspace.getBackground());
+
+        MouseAdapter navigator = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                showArea(e.getPoint());
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                showArea(e.getPoint());
+            }
+        };
+        addMouseListener(navigator);
+        addMouseMotionListener(navigator);
+        viewport.addChangeListener(evt -> repaint());//view moved
+        workspace.setMinimap(this);
+    }
+
+    /**
+     * Paints the rendered cells, placeholders for the ones never rendered,
+     * and the area in view
+     *
+     * @param g graphics tool
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        checkGrid();
+        if (cells == null) {
+            return;
+        }
+        Insets insets = getInsets();
+        Graphics2D g2D = (Graphics2D) g.create();
+        g2D.translate(insets.left, insets.top);
+        boolean stale = false;
+        for (Cell[] row : cells) {
+            for (Cell cell : row) {
+                if (cell.image != null) {//stale cells are shown until replaced
+                    g2D.drawImage(cell.image, cell.bounds.x, cell.bounds.y, null);
+                } else {
+                    g2D.setColor(PLACEHOLDER);
+                    g2D.fill(cell.bounds);
+                }
+                stale |= cell.renderedVersion != cell.version;
+            }
+        }
+        if (stale && !refreshTimer.isRunning()) {
+            refreshTimer.start();
+        }
+
+        Rectangle view = toMinimap(workspace.getVisibleRect());
+        g2D.setColor(VIEW_FILL);
+        g2D.fill(view);
+        g2D.setColor(VIEW_LINE);
+        g2D.drawRect(view.x, view.y, Math.max(view.width - 1, 1),
+                Math.max(view.height - 1, 1));
+        g2D.dispose();
+    }
+
+    /**
+     * Makes the cells under a changed area of the workspace stale
+     *
+     * @param changed changed area of the workspace
+     */
+    void invalidate(Rectangle changed) {
+        if (cells == null) {
+            return;
+        }
+        Rectangle area = toMinimap(changed);
+        int firstCol = Math.max(0, area.x / CELL_SIZE);
+        int firstRow = Math.max(0, area.y / CELL_SIZE);
+        int lastCol = Math.min(cells[0].length - 1,
+                (area.x + area.width - 1) / CELL_SIZE);
+        int lastRow = Math.min(cells.length - 1,
+                (area.y + area.height - 1) / CELL_SIZE);
+        if (firstCol > lastCol || firstRow > lastRow) {
+            return;
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                cells[row][col].version++;
+            }
+        }
+        refreshTimer.restart();
+    }
+
+    /**
+     * Makes the cells again if the size of the workspace or of the minimap
+     * has changed, the old ones are dropped
+     */
+    private void checkGrid() {
+        Insets insets = getInsets();
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+        Dimension size = workspace.getSize();
+        if (width <= 0 || height <= 0 || size.width <= 0 || size.height <= 0) {
+            return;
+        }
+        double newScale = Math.min((double) width / size.width,
+                (double) height / size.height);
+        if (cells != null && newScale == scale && size.equals(world)) {
+            return;
+        }
+        if (cells != null) {
+            for (Cell[] row : cells) {
+                for (Cell cell : row) {
+                    cell.dropped = true;
+                }
+            }
+        }
+        world = size;
+        scale = newScale;
+        int pixelWidth = (int) Math.ceil(size.width * scale);
+        int pixelHeight = (int) Math.ceil(size.height * scale);
+        int cols = (pixelWidth + CELL_SIZE - 1) / CELL_SIZE;
+        int rows = (pixelHeight + CELL_SIZE - 1) / CELL_SIZE;
+        cells = new Cell[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int x = col * CELL_SIZE;
+                int y = row * CELL_SIZE;
+                cells[row][col] = new Cell(new Rectangle(x, y,
+                        Math.min(CELL_SIZE, pixelWidth - x),
+                        Math.min(CELL_SIZE, pixelHeight - y)));
+            }
+        }
+    }
+
+    /**
+     * Starts rendering the stale cells that aren't being rendered already,
+     * unless the minimap is hidden
+     */
+    private void refresh() {
+        if (cells == null || !isShowing()) {
+            return;//rendered when next painted
+        }
+        Font font = workspace.getPaintFont();
+        Color background = workspace.getBackground();
+        for (Cell[] row : cells) {
+            for (Cell cell : row) {
+                if (cell.pending || cell.renderedVersion == cell.version) {
+                    continue;
+                }
+                cell.pending = true;
+                int version = cell.version;
+                double cellScale = scale;
+                Rectangle area = toWorkspace(cell.bounds);
+                List<ProcessFrame> copies = workspace.copyFramesIn(area);
+                worker.execute(() -> {
+                    BufferedImage image = null;
+                    if (!cell.dropped) {
+                        try {
+                            image = render(cell.bounds, area, copies, cellScale,
+                                    font, background);
+                        } catch (RuntimeException ex) {//shown as stale
+                            System.out.println(ex.getMessage());
+                        }
+                    }
+                    BufferedImage rendered = image;
+                    SwingUtilities.invokeLater(() -> finished(cell, version,
+                            rendered));
+                });
+            }
+        }
+    }
+
+    /**
+     * Keeps a rendered cell and shows it
+     */
+    private void finished(Cell cell, int version, BufferedImage image) {
+        cell.pending = false;
+        if (image != null && !cell.dropped) {
+            cell.image = image;//newer than the last one, even if stale
+            cell.renderedVersion = version;
+            repaint(cell.bounds.x + getInsets().left,
+                    cell.bounds.y + getInsets().top, cell.bounds.width,
+                    cell.bounds.height);
+        }
+    }
+
+    /**
+     * Renders copies of the frames in a cell the way the workspace paints
+     * them, scaled down. Blocks this small are only filled with the color of
+     * their kind, see ProcessBlock.
+     */
+    private static BufferedImage render(Rectangle bounds, Rectangle area,
+            List<ProcessFrame> frames, double scale, Font font,
+            Color background) {
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2D = image.createGraphics();
+        g2D.setColor(background);
+        g2D.fillRect(0, 0, bounds.width, bounds.height);
+        g2D.translate(-bounds.x, -bounds.y);//cells line up exactly
+        g2D.scale(scale, scale);
+        g2D.clip(area);
+
+        g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        g2D.setFont(font);
+        g2D.setColor(Color.BLACK);
+        FontMetrics textMetrics = g2D.getFontMetrics(font);
+        for (ProcessFrame aFrame : frames) {
+            aFrame.paintSelf(g2D, textMetrics, area, null);
+        }
+        g2D.dispose();
+        return image;
+    }
+
+    /**
+     * Scrolls the workspace so that the point clicked is in the middle of
+     * the view
+     *
+     * @param p point on the minimap
+     */
+    private void showArea(Point p) {
+        if (cells == null) {
+            return;
+        }
+        Insets insets = getInsets();
+        Rectangle view = workspace.getVisibleRect();
+        int x = (int) ((p.x - insets.left) / scale) - view.width / 2;
+        int y = (int) ((p.y - insets.top) / scale) - view.height / 2;
+        x = Math.max(0, Math.min(x, world.width - view.width));
+        y = Math.max(0, Math.min(y, world.height - view.height));
+        viewport.setViewPosition(new Point(x, y));
+    }
+
+    /**
+     * Returns the minimap pixels covering an area of the workspace
+     */
+    private Rectangle toMinimap(Rectangle area) {
+        int x = (int) Math.floor(area.x * scale);
+        int y = (int) Math.floor(area.y * scale);
+        return new Rectangle(x, y,
+                (int) Math.ceil((area.x + area.width) * scale) - x,
+                (int) Math.ceil((area.y + area.height) * scale) - y);
+    }
+
+    /**
+     * Returns the area of the workspace shown by some minimap pixels
+     */
+    private Rectangle toWorkspace(Rectangle pixels) {
+        int x = (int) Math.floor(pixels.x / scale);
+        int y = (int) Math.floor(pixels.y / scale);
+        return new Rectangle(x, y,
+                (int) Math.ceil((pixels.x + pixels.width) / scale) - x,
+                (int) Math.ceil((pixels.y + pixels.height) / scale) - y);
+    }
+
+    /**
+     * A cell of the minimap and its last rendered image
+     */
+    private static final class Cell {
+
+        private final Rectangle bounds;//pixels of the minimap
+        private BufferedImage image;//null until first rendered
+        private int version;//increased whenever the area changes
+        private int renderedVersion;//version the image shows
+        private boolean pending;//being rendered
+        private volatile boolean dropped;//replaced, no need to render
+
+        private Cell(Rectangle bounds) {
+            this.bounds = bounds;
+            image = null;
+            version = 0;
+            renderedVersion = -1;
+            pending = false;
+            dropped = false;
+        }
+    }
+}
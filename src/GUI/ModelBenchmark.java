@@ -0,0 +1,530 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Application.CachedModelExporter;
+import Application.ExportCache;
+import Application.ModelExporter;
+import Application.ModelGenerator;
+import Application.ModelImporter;
+import Model.Procedure;
+import Model.ProcedureFrame;
+import Model.Step;
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.swing.SwingUtilities;
+
+/**
+ * Times the import, export and editing of generated models from the command
+ * line, without a display. Every benchmark is warmed up first and then run a
+ * number of times, and its throughput, latency percentiles and allocation
+ * rate are reported, one line each. Run with the application jar on the
+ * class path:
+ * <pre>
+ * java -cp Picturesque.jar GUI.ModelBenchmark -f 2000 -b 30
+ * </pre>
+ * Allocation is counted over all threads, so parallel imports are counted in
+ * full, and is only reported on JVMs that keep such counts.
+ *
+ * @author Christos Darisaplis
+ */
+public class ModelBenchmark {
+
+    private static final String USAGE = "usage: ModelBenchmark [options] [benchmarks]\n"
+            + "  -f N    frames, default 500\n"
+            + "  -b N    blocks per frame, default 20\n"
+            + "  -d N    nesting depth of subprocesses, default 4\n"
+            + "  -a N    attribute length, default 40\n"
+            + "  -s N    seed, default 1\n"
+            + "  -w N    warmup runs, default 5\n"
+            + "  -i N    measured runs, default 20\n"
+            + "  -o DIR  keep the generated models in a directory\n"
+            + "benchmarks: " + String.join(" ", benchmarkNames());
+
+    private static final int EDIT_OPS = 100;//edits per run, edits are short
+    private static final Rectangle VIEW = new Rectangle(0, 0, 1600, 1000);
+
+    /*Options*/
+    private int frames;
+    private int blocks;
+    private int depth;
+    private int attrLength;
+    private long seed;
+    private int warmup;
+    private int runs;
+    private File outDir;//null for a temporary directory
+    private final Set<String> selected;//benchmarks to run, all if empty
+
+    /*Inputs, made by setUp()*/
+    private File dir;
+    private File compilerFile;
+    private File appFile;
+    private File binaryFile;
+    private File exportFile;
+    private Procedure model;//imported from appFile
+
+    private final ThreadMXBean threads;
+
+    private ModelBenchmark() {
+        frames = 500;
+        blocks = 20;
+        depth = 4;
+        attrLength = 40;
+        seed = 1;
+        warmup = 5;
+        runs = 20;
+        outDir = null;
+        selected = new LinkedHashSet<>();
+        threads = ManagementFactory.getThreadMXBean();
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the benchmarks
+     *
+     * @param args the command line arguments
+     *
+     * @return exit code, 0 if all benchmarks ran, 1 if any failed and 2 for
+     * bad arguments
+     */
+    public static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");//never needs a display
+
+        ModelBenchmark bench = new ModelBenchmark();
+        try {
+            bench.parseArgs(args);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            System.out.println(USAGE);
+            return 2;
+        }
+        try {
+            bench.setUp();
+        } catch (IOException | RuntimeException ex) {
+            System.out.println(Arrays.toString(ex.getStackTrace()));
+            System.out.println(ex.getMessage());
+            return 1;
+        }
+        try {
+            return bench.runAll();
+        } finally {
+            bench.tearDown();
+        }
+    }
+
+    /**
+     * Reads options and the names of the benchmarks to run
+     *
+     * @param args the command line arguments
+     *
+     * @throws IllegalArgumentException bad option
+     */
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-f":
+                    frames = intValue(args, ++i, arg, 1);
+                    break;
+                case "-b":
+                    blocks = intValue(args, ++i, arg, 1);
+                    break;
+                case "-d":
+                    depth = intValue(args, ++i, arg, 1);
+                    break;
+                case "-a":
+                    attrLength = intValue(args, ++i, arg, 0);
+                    break;
+                case "-s":
+                    seed = intValue(args, ++i, arg, Integer.MIN_VALUE);
+                    break;
+                case "-w":
+                    warmup = intValue(args, ++i, arg, 0);
+                    break;
+                case "-i":
+                    runs = intValue(args, ++i, arg, 1);
+                    break;
+                case "-o":
+                    outDir = new File(optionValue(args, ++i, arg));
+                    break;
+                default:
+                    if (arg.startsWith("-")
+                            || !Arrays.asList(benchmarkNames()).contains(arg)) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    selected.add(arg);
+            }
+        }
+    }
+
+    private static String optionValue(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static int intValue(String[] args, int i, String option, int min) {
+        int value;
+        try {
+            value = Integer.parseInt(optionValue(args, i, option));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Bad value for " + option);
+        }
+        if (value < min) {
+            throw new IllegalArgumentException("Bad value for " + option);
+        }
+        return value;
+    }
+
+    /**
+     * Generates the models every benchmark starts from
+     *
+     * @throws IOException file writing exception
+     */
+    private void setUp() throws IOException {
+        if (outDir != null) {
+            Files.createDirectories(outDir.toPath());
+            dir = outDir;
+        } else {
+            dir = Files.createTempDirectory("picturesque-bench").toFile();
+        }
+        compilerFile = new File(dir, "compiler.json");
+        appFile = new File(dir, "app.json");
+        binaryFile = new File(dir, "model.pqm");
+        exportFile = new File(dir, "export.json");
+
+        long start = System.nanoTime();
+        ModelGenerator generator = new ModelGenerator(frames, blocks, depth,
+                attrLength, seed);
+        try (Writer out = writer(compilerFile)) {
+            generator.writeCompilerModel(out);
+        }
+        try (Writer out = writer(appFile)) {
+            generator.writeAppModel(out);
+        }
+        model = new ModelImporter(appFile).importModel();
+        new ModelExporter(model).exportBinaryModel(binaryFile, false);
+
+        int steps = 0;
+        for (ProcedureFrame aFrame : model.getFrames()) {
+            steps += aFrame.getSteps().size();
+        }
+        System.out.println(String.format("%d frames, %d blocks, compiler %d KB,"
+                + " app %d KB, binary %d KB, generated in %d ms", model.size(),
+                steps, compilerFile.length() / 1024, appFile.length() / 1024,
+                binaryFile.length() / 1024,
+                (System.nanoTime() - start) / 1000000));
+    }
+
+    /**
+     * Opens a file for writing with the platform charset, same as the
+     * exporter writes
+     */
+    private static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file)));
+    }
+
+    /**
+     * Deletes the generated models unless they are to be kept
+     */
+    private void tearDown() {
+        File[] files = {compilerFile, appFile, binaryFile, exportFile};
+        for (File aFile : files) {
+            if (aFile != null && (outDir == null || aFile == exportFile)) {
+                aFile.delete();
+            }
+        }
+        if (outDir == null && dir != null) {
+            dir.delete();
+        }
+    }
+
+    private static String[] benchmarkNames() {
+        return new String[]{"import-compiler", "import-compiler-stream",
+            "import-compiler-parallel", "import-app", "import-app-stream",
+            "import-binary", "export-json", "export-compact", "export-cached",
+            "export-binary", "insert-block", "remove-block", "swap-blocks",
+            "slide-frames"};
+    }
+
+    /**
+     * Runs the selected benchmarks and prints one line for each
+     *
+     * @return exit code
+     */
+    private int runAll() {
+        int failed = 0;
+        for (String name : benchmarkNames()) {
+            if (!selected.isEmpty() && !selected.contains(name)) {
+                continue;
+            }
+            try {
+                System.out.println(String.format("%-25s %s", name,
+                        runBenchmark(name)));
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof InvocationTargetException
+                        && ex.getCause() != null ? ex.getCause() : ex;
+                System.out.println(String.format("%-25s FAILED %s: %s", name,
+                        cause.getClass().getSimpleName(), cause.getMessage()));
+                failed++;
+            }
+        }
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Runs a benchmark by name
+     *
+     * @return report of the benchmark
+     *
+     * @throws Exception any failure of the benchmark
+     */
+    private String runBenchmark(String name) throws Exception {
+        ExportCache cache = new ExportCache();
+        switch (name) {
+            case "import-compiler":
+                return measure(() -> new ModelImporter(compilerFile).importModel(),
+                        null, 1);
+            case "import-compiler-stream":
+                return measure(() -> new ModelImporter(compilerFile, true)
+                        .importModel(), null, 1);
+            case "import-compiler-parallel":
+                return measure(() -> {
+                    ModelImporter importer = new ModelImporter(compilerFile);
+                    importer.setParallel(true);
+                    importer.importModel();
+                }, null, 1);
+            case "import-app":
+                return measure(() -> new ModelImporter(appFile).importModel(),
+                        null, 1);
+            case "import-app-stream":
+                return measure(() -> new ModelImporter(appFile, true)
+                        .importModel(), null, 1);
+            case "import-binary":
+                return measure(() -> new ModelImporter(binaryFile).importModel(),
+                        null, 1);
+            case "export-json":
+                return measure(() -> new ModelExporter(model)
+                        .exportModel(exportFile, false), null, 1);
+            case "export-compact":
+                return measure(() -> new ModelExporter(model)
+                        .exportModel(exportFile, true), null, 1);
+            case "export-cached"://nothing changes, every frame is reused
+                return measure(() -> new CachedModelExporter(model, cache, false)
+                        .exportModel(exportFile), null, 1);
+            case "export-binary":
+                return measure(() -> new ModelExporter(model)
+                        .exportBinaryModel(exportFile, false), null, 1);
+            default:
+                return onPanel(name);
+        }
+    }
+
+    /**
+     * Runs an editing benchmark on a workspace panel showing the model, on the
+     * event dispatch thread like the edits themselves
+     */
+    private String onPanel(String name) throws Exception {
+        Procedure edited = new ModelImporter(appFile).importModel();
+        String[] report = new String[1];
+        Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                WorkspacePanel panel = new WorkspacePanel();
+                panel.endImport(edited);//beginImport() needs the main window
+                report[0] = editBenchmark(name, panel);
+            } catch (Exception ex) {
+                failure[0] = ex;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return report[0];
+    }
+
+    /**
+     * Runs an editing benchmark on the frame with the most blocks. Every edit
+     * is undone untimed, so each run starts from the same frame.
+     */
+    private String editBenchmark(String name, WorkspacePanel panel)
+            throws Exception {
+        ProcessFrame target = panel.getFrames().get(0);
+        for (ProcessFrame aFrame : panel.getFrames()) {
+            if (aFrame.getBlocks().size() > target.getBlocks().size()) {
+                target = aFrame;
+            }
+        }
+        ProcessFrame frame = target;
+        int middle = frame.getBlocks().size() / 2;
+        Step step = frame.getBlocks().get(middle).getStep();
+        switch (name) {
+            case "insert-block":
+                return measure(() -> {
+                    frame.insertBlock(middle, new Step(step.getName(),
+                            step.getEntity(), step.getAttributes()));
+                    frame.getBlocks();//laid out like before a paint
+                }, () -> frame.removeBlock(middle), EDIT_OPS);
+            case "remove-block":
+                return measure(() -> {
+                    frame.removeBlock(middle);
+                    frame.getBlocks();
+                }, () -> frame.insertBlock(middle, new Step(step.getName(),
+                        step.getEntity(), step.getAttributes())), EDIT_OPS);
+            case "swap-blocks":
+                return measure(() -> {
+                    int last = frame.getBlocks().size() - 1;
+                    frame.swapBlocks(frame.getBlocks().get(0),
+                            frame.getBlocks().get(last));
+                    frame.getBlocks();
+                }, null, EDIT_OPS);
+            case "slide-frames"://the index is rebuilt by the next paint
+                return measure(() -> {
+                    panel.SlideFrames(1);
+                    panel.copyFramesIn(VIEW);
+                }, null, EDIT_OPS);
+            default:
+                throw new IllegalArgumentException("Unknown benchmark " + name);
+        }
+    }
+
+    /**
+     * Times an operation after warming it up
+     *
+     * @param operation operation timed
+     * @param undo run untimed after each operation, null if none
+     * @param perRun operations per run
+     *
+     * @return throughput, latency percentiles and allocation
+     *
+     * @throws Exception any failure of the operation
+     */
+    private String measure(Operation operation, Operation undo, int perRun)
+            throws Exception {
+        for (int i = 0; i < warmup * perRun; i++) {
+            operation.run();
+            if (undo != null) {
+                undo.run();
+            }
+        }
+        System.gc();
+
+        int count = runs * perRun;
+        long[] times = new long[count];
+        long total = 0, allocated = 0;
+        long[] ids = threads.getAllThreadIds();//pools are up after warmup
+        boolean counting = allocated(ids) >= 0;
+        for (int i = 0; i < count; i++) {
+            long before = allocated(ids);
+            long start = System.nanoTime();
+            operation.run();
+            times[i] = System.nanoTime() - start;
+            allocated += allocated(ids) - before;
+            total += times[i];
+            if (undo != null) {
+                undo.run();
+            }
+        }
+
+        Arrays.sort(times);
+        String report = String.format("%12.1f ops/s  p50 %9s  p99 %9s  max %9s",
+                count / (total / 1e9), time(times[(count - 1) / 2]),
+                time(times[(int) Math.ceil(count * 0.99) - 1]),
+                time(times[count - 1]));
+        if (counting) {
+            report += String.format("  alloc %9s/op %9s/s",
+                    bytes(allocated / count), bytes((long) (allocated
+                    / (total / 1e9))));
+        }
+        return report;
+    }
+
+    /**
+     * Returns the bytes allocated so far by some threads, -1 if the JVM
+     * doesn't count them
+     */
+    private long allocated(long[] ids) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean counter
+                = (com.sun.management.ThreadMXBean) threads;
+        if (!counter.isThreadAllocatedMemorySupported()
+                || !counter.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long sum = 0;
+        for (long bytes : counter.getThreadAllocatedBytes(ids)) {
+            sum += Math.max(bytes, 0);//threads gone meanwhile
+        }
+        return sum;
+    }
+
+    private static String time(long nanos) {
+        if (nanos < 10000) {
+            return nanos + " ns";
+        } else if (nanos < 10000000) {
+            return String.format("%.1f us", nanos / 1e3);
+        }
+        return String.format("%.1f ms", nanos / 1e6);
+    }
+
+    private static String bytes(long count) {
+        if (count < 10240) {
+            return count + " B";
+        } else if (count < 10485760) {
+            return String.format("%.1f KB", count / 1024.0);
+        }
+        return String.format("%.1f MB", count / 1048576.0);
+    }
+
+    /**
+     * Code timed by a benchmark
+     */
+    private interface Operation {
+
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,510 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Application.ModelJournal;
+import GUI.EditHistory.Edit;
+import Model.Step;
+
+/**
+ * The edits that can be undone, see EditHistory. Each one holds the positions
+ * of the frame and block it has changed and the values before and after.
+ *
+ * @author Christos Darisaplis
+ */
+final class ModelEdits {
+
+    private static final long EDIT_BYTES = 48;//an edit without its strings
+    private static final long MERGE_DELAY = 1000;//ms between merged keystrokes
+
+    private ModelEdits() {
+    }
+
+    /**
+     * @param frame position of the frame
+     * @param pos position of the new block
+     * @param step step shown by the new block
+     *
+     * @return edit adding or inserting a block
+     */
+    static Edit insertBlock(int frame, int pos, Step step) {
+        return new BlockChange(frame, pos, step, true);
+    }
+
+    /**
+     * @param frame position of the frame
+     * @param pos position of the block
+     * @param step step shown by the removed block
+     *
+     * @return edit removing a block
+     */
+    static Edit removeBlock(int frame, int pos, Step step) {
+        return new BlockChange(frame, pos, step, false);
+    }
+
+    /**
+     * @param frame position of the frame
+     * @param a position of a swapped block
+     * @param b position of the other swapped block
+     *
+     * @return edit swapping two blocks
+     */
+    static Edit swapBlocks(int frame, int a, int b) {
+        return new BlockMove(frame, a, b, true);
+    }
+
+    /**
+     * @param frame position of the frame
+     * @param from position of the block before the move
+     * @param to position of the block after the move
+     *
+     * @return edit moving a block
+     */
+    static Edit moveBlock(int frame, int from, int to) {
+        return new BlockMove(frame, from, to, false);
+    }
+
+    /**
+     * @param frame position of the frame
+     * @param pos position of the block
+     * @param entity true for the entity, false for the attributes
+     * @param oldText text before the edit
+     * @param newText text after the edit
+     *
+     * @return edit of a block's text, merged with the following keystrokes
+     */
+    static Edit setText(int frame, int pos, boolean entity, String oldText,
+            String newText) {
+        return new TextChange(frame, pos, entity, oldText, newText);
+    }
+
+    /**
+     * @param frames positions of the frames
+     * @param pos positions of the blocks in their frames
+     * @param oldName name of the entity the blocks had
+     * @param newName name of the entity the blocks have been assigned to
+     *
+     * @return edit reassigning the blocks of an entity
+     */
+    static Edit setEntities(int[] frames, int[] pos, String oldName,
+            String newName) {
+        return new EntityReassign(frames, pos, oldName, newName);
+    }
+
+    /**
+     * @param pos position of the new frame
+     * @param name name of the new frame
+     *
+     * @return edit adding a subprocess
+     */
+    static Edit addFrame(int pos, String name) {
+        return new FrameChange(pos, name, true);
+    }
+
+    /**
+     * @param pos position of the frame, which has no blocks
+     * @param name name of the frame
+     *
+     * @return edit removing a subprocess
+     */
+    static Edit removeFrame(int pos, String name) {
+        return new FrameChange(pos, name, false);
+    }
+
+    /**
+     * @param pos position of the frame
+     * @param oldName name before the edit
+     * @param newName name after the edit
+     *
+     * @return edit renaming a frame
+     */
+    static Edit renameFrame(int pos, String oldName, String newName) {
+        return new FrameRename(pos, oldName, newName);
+    }
+
+    /**
+     * Estimates the bytes held by a string
+     */
+    private static long sizeOf(String text) {
+        return 40 + 2L * text.length();
+    }
+
+    /**
+     * Edits that are never merged
+     */
+    private abstract static class SimpleEdit implements Edit {
+
+        @Override
+        public boolean merge(Edit next) {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public long getSize() {
+            return EDIT_BYTES;
+        }
+    }
+
+    /**
+     * A block added, inserted or removed
+     */
+    private static final class BlockChange extends SimpleEdit {
+
+        private final int frame, pos;
+        private final Step step;//kept while the edit can be undone
+        private final boolean insert;
+        private final long size;//fixed, the step may be edited afterwards
+
+        BlockChange(int frame, int pos, Step step, boolean insert) {
+            this.frame = frame;
+            this.pos = pos;
+            this.step = step;
+            this.insert = insert;
+            size = EDIT_BYTES + sizeOf(step.getName())
+                    + sizeOf(step.getEntity().getName())
+                    + sizeOf(step.getAttributes());
+        }
+
+        @Override
+        public void undo(WorkspacePanel panel) {
+            apply(panel, !insert);
+        }
+
+        @Override
+        public void redo(WorkspacePanel panel) {
+            apply(panel, insert);
+        }
+
+        private void apply(WorkspacePanel panel, boolean inserting) {
+            if (inserting) {
+                panel.insertBlockAt(frame, pos, step);
+            } else {
+                panel.removeBlockAt(frame, pos);
+            }
+        }
+
+        @Override
+        public void writeTo(ModelJournal journal, boolean undone) {
+            if (insert != undone) {
+                journal.insertStep(frame, pos, step);
+            } else {
+                journal.removeStep(frame, pos);
+            }
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String getName() {
+            return insert ? "Add Block" : "Remove Block";
+        }
+    }
+
+    /**
+     * Blocks swapped, or a block moved, within a frame
+     */
+    private static final class BlockMove extends SimpleEdit {
+
+        private final int frame, from, to;
+        private final boolean swap;
+
+        BlockMove(int frame, int from, int to, boolean swap) {
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+            this.swap = swap;
+        }
+
+        @Override
+        public void undo(WorkspacePanel panel) {
+            if (swap) {
+                panel.swapBlocksAt(frame, from, to);
+            } else {
+                panel.moveBlockAt(frame, to, from);
+            }
+        }
+
+        @Override
+        public void redo(WorkspacePanel panel) {
+            if (swap) {
+                panel.swapBlocksAt(frame, from, to);
+            } else {
+                panel.moveBlockAt(frame, from, to);
+            }
+        }
+
+        @Override
+        public void writeTo(ModelJournal journal, boolean undone) {
+            if (swap) {
+                journal.swapSteps(frame, from, to);
+            } else if (undone) {
+                journal.moveStep(frame, to, from);
+            } else {
+                journal.moveStep(frame, from, to);
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return from == to;
+        }
+
+        @Override
+        public String getName() {
+            return swap ? "Swap Blocks" : "Move Block";
+        }
+    }
+
+    /**
+     * A block's entity or attributes edited, keystrokes typed without a pause
+     * are merged into one edit
+     */
+    private static final class TextChange implements Edit {
+
+        private final int frame, pos;
+        private final boolean entity;
+        private final String oldText;
+        private String newText;
+        private long time;//ms of the last keystroke
+
+        TextChange(int frame, int pos, boolean entity, String oldText,
+                String newText) {
+            this.frame = frame;
+            this.pos = pos;
+            this.entity = entity;
+            this.oldText = oldText;
+            this.newText = newText;
+            time = System.currentTimeMillis();
+        }
+
+        @Override
+        public void undo(WorkspacePanel panel) {
+            panel.setBlockText(frame, pos, entity, oldText);
+        }
+
+        @Override
+        public void redo(WorkspacePanel panel) {
+            panel.setBlockText(frame, pos, entity, newText);
+        }
+
+        @Override
+        public void writeTo(ModelJournal journal, boolean undone) {
+            String text = undone ? oldText : newText;
+            if (entity) {
+                journal.setEntity(frame, pos, text);
+            } else {
+                journal.setAttributes(frame, pos, text);
+            }
+        }
+
+        @Override
+        public boolean merge(Edit next) {
+            if (!(next instanceof TextChange)) {
+                return false;
+            }
+            TextChange typed = (TextChange) next;
+            if (typed.frame != frame || typed.pos != pos
+                    || typed.entity != entity || typed.time - time > MERGE_DELAY) {
+                return false;
+            }
+            newText = typed.newText;
+            time = typed.time;
+            return true;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return oldText.equals(newText);
+        }
+
+        @Override
+        public long getSize() {
+            return EDIT_BYTES + sizeOf(oldText) + sizeOf(newText);
+        }
+
+        @Override
+        public String getName() {
+            return entity ? "Edit Entity" : "Edit Attributes";
+        }
+    }
+
+    /**
+     * All blocks of an entity assigned to another one
+     */
+    private static final class EntityReassign extends SimpleEdit {
+
+        private final int[] frames, pos;
+        private final String oldName, newName;
+
+        EntityReassign(int[] frames, int[] pos, String oldName,
+                String newName) {
+            this.frames = frames;
+            this.pos = pos;
+            this.oldName = oldName;
+            this.newName = newName;
+        }
+
+        @Override
+        public void undo(WorkspacePanel panel) {
+            panel.setEntitiesAt(frames, pos, oldName);
+        }
+
+        @Override
+        public void redo(WorkspacePanel panel) {
+            panel.setEntitiesAt(frames, pos, newName);
+        }
+
+        @Override
+        public void writeTo(ModelJournal journal, boolean undone) {
+            String name = undone ? oldName : newName;
+            for (int i = 0; i < pos.length; i++) {
+                journal.setEntity(frames[i], pos[i], name);
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return pos.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return EDIT_BYTES + 8L * pos.length + sizeOf(oldName)
+                    + sizeOf(newName);
+        }
+
+        @Override
+        public String getName() {
+            return "Reassign Entity";
+        }
+    }
+
+    /**
+     * A subprocess added or removed, subprocesses are only removed when they
+     * have no blocks
+     */
+    private static final class FrameChange extends SimpleEdit {
+
+        private final int pos;
+        private final String name;
+        private final boolean add;
+
+        FrameChange(int pos, String name, boolean add) {
+            this.pos = pos;
+            this.name = name;
+            this.add = add;
+        }
+
+        @Override
+        public void undo(WorkspacePanel panel) {
+            apply(panel, !add);
+        }
+
+        @Override
+        public void redo(WorkspacePanel panel) {
+            apply(panel, add);
+        }
+
+        private void apply(WorkspacePanel panel, boolean adding) {
+            if (adding) {
+                panel.insertFrame(pos, name);
+            } else {
+                panel.removeFrameAt(pos);
+            }
+        }
+
+        @Override
+        public void writeTo(ModelJournal journal, boolean undone) {
+            if (add != undone) {
+                journal.insertFrame(pos, name);
+            } else {
+                journal.removeFrame(pos);
+            }
+        }
+
+        @Override
+        public long getSize() {
+            return EDIT_BYTES + sizeOf(name);
+        }
+
+        @Override
+        public String getName() {
+            return add ? "Add Subprocess" : "Remove Subprocess";
+        }
+    }
+
+    /**
+     * A frame renamed
+     */
+    private static final class FrameRename extends SimpleEdit {
+
+        private final int pos;
+        private final String oldName, newName;
+
+        FrameRename(int pos, String oldName, String newName) {
+            this.pos = pos;
+            this.oldName = oldName;
+            this.newName = newName;
+        }
+
+        @Override
+        public void undo(WorkspacePanel panel) {
+            panel.renameFrame(pos, oldName);
+        }
+
+        @Override
+        public void redo(WorkspacePanel panel) {
+            panel.renameFrame(pos, newName);
+        }
+
+        @Override
+        public void writeTo(ModelJournal journal, boolean undone) {
+            journal.renameFrame(pos, undone ? oldName : newName);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return oldName.equals(newName);
+        }
+
+        @Override
+        public long getSize() {
+            return EDIT_BYTES + sizeOf(oldName) + sizeOf(newName);
+        }
+
+        @Override
+        public String getName() {
+            return "Rename Subprocess";
+        }
+    }
+}
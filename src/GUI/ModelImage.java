@@ -0,0 +1,107 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Model.Procedure;
+import Model.ProcedureFrame;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws a model on an image the same way the workspace panel draws it on
+ * screen. Works without a display.
+ *
+ * @author Christos Darisaplis
+ */
+public class ModelImage {
+
+    private static final int MARGIN = 20;//empty border around the model
+    private static final int FONT_SIZE = 16;//workspace panel starting font
+    private static final long MAX_PIXELS = 64L * 1024 * 1024;//larger gets scaled
+
+    private ModelImage() {
+    }
+
+    /**
+     * Renders a model. Very large models are scaled down so the image stays
+     * under MAX_PIXELS.
+     *
+     * @param model model to draw
+     *
+     * @return image of the model
+     */
+    public static BufferedImage render(Procedure model) {
+        /*Lay out the frames*/
+        List<ProcessFrame> frames = new ArrayList<>(model.size());
+        for (ProcedureFrame aFrame : model.getFrames()) {
+            frames.add(new ProcessFrame(aFrame));
+        }
+
+        /*Model bounds, frame headers are drawn above their frames*/
+        Rectangle bounds = new Rectangle(0, 0, 1, 1);
+        for (ProcessFrame aFrame : frames) {
+            bounds.add(aFrame.getFrameRectangle());
+            for (ProcessBlock aBlock : aFrame.getBlocks()) {
+                bounds.add(aBlock.getMainRectangle());
+            }
+        }
+        bounds.grow(MARGIN, MARGIN);
+
+        double scale = Math.min(1, Math.sqrt(MAX_PIXELS
+                / ((double) bounds.width * bounds.height)));
+        BufferedImage image = new BufferedImage(
+                Math.max(1, (int) (bounds.width * scale)),
+                Math.max(1, (int) (bounds.height * scale)),
+                BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D g2D = image.createGraphics();
+        g2D.setColor(Color.WHITE);
+        g2D.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2D.scale(scale, scale);
+        g2D.translate(-bounds.x, -bounds.y);
+
+        /*set font parameters*/
+        g2D.setRenderingHint(
+                RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        Font font = new Font("TimesRoman", Font.BOLD, FONT_SIZE);
+        g2D.setFont(font);
+        FontMetrics textMetrics = g2D.getFontMetrics(font);
+
+        for (ProcessFrame aFrame : frames) {//draw all process frames
+            aFrame.paintSelf(g2D, textMetrics);
+        }
+
+        g2D.dispose();//finalize
+        return image;
+    }
+}
@@ -24,15 +24,45 @@
  */
 package GUI;
 
+import Application.CachedModelExporter;
+import Application.CallGraph;
+import Application.ExportCache;
 import Application.ModelExporter;
 import Application.ModelImporter;
+import Application.ModelJournal;
+import Application.SearchIndex;
+import Model.Entity;
+import Model.Step;
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import org.json.JSONException;
 
@@ -44,6 +74,43 @@ import org.json.JSONException;
 public class PicturesqueFrame extends javax.swing.JFrame {
 
     private JFileChooser chooser;
+    private FileNameExtensionFilter modelFilter;//every importable file
+    private FileNameExtensionFilter jsonFilter;
+    private FileNameExtensionFilter binaryFilter;
+
+    private ImportWorker importWorker;//running import, null if none
+    private JProgressBar importProgress;//import status on the toolbar
+    private JButton cancelImport;
+    private Timer progressTimer;//polls the running import
+    private JLabel paintStats;//painted/culled counters, null if not shown
+
+    private ExportWorker exportWorker;//running export, null if none
+    private ExportCache exportCache;//JSON of frames unchanged since exported
+    private JCheckBoxMenuItem compactExport;//export without indentation
+    private JMenuItem binaryExport;
+    private JCheckBoxMenuItem compressExport;//deflate binary exports
+    private JMenuItem undoItem;
+    private JMenuItem redoItem;
+    private JMenuItem reassignItem;//reassigns the blocks of an entity
+    private boolean modelActions;//model can be edited, no import running
+
+    private JTextField searchField;//search bar on the toolbar
+    private JLabel searchStatus;//position of the hit shown
+    private SearchIndex searchIndex;//index of the model, null until built
+    private SearchWorker searchWorker;//index being built, null if none
+    private List<SearchIndex.Hit> hits;//hits of the current query
+    private int hitPos;//hit shown
+
+    private MinimapPanel minimap;//overview next to the model
+    private JFrame callGraphWindow;//call graph view, null until first shown
+    private CallGraphPanel callGraphPanel;
+
+    private static final int PROGRESS_DELAY = 100;//ms between progress updates
+    private static final int MAX_HITS = 1000;//hits kept per query
+    private static final String JSON_EXT = "json";
+    private static final String BINARY_EXT = "pqm";//binary model extension
+    private static final String PAINT_STATS_PROP = "picturesque.paintStats";
+    private static final String PARALLEL_PROP = "picturesque.parallelImport";
 
     /**
      * Creates the application frame
@@ -59,12 +126,63 @@ public class PicturesqueFrame extends javax.swing.JFrame {
         jButton4.setMnemonic(KeyEvent.VK_ENTER);//rename process shortcut
 
         chooser = new JFileChooser();//set up file chooser
-        FileNameExtensionFilter filter = new FileNameExtensionFilter(
-                "JSON File", "json");
-        chooser.setFileFilter(filter);
+        modelFilter = new FileNameExtensionFilter("Model File", JSON_EXT,
+                BINARY_EXT);
+        jsonFilter = new FileNameExtensionFilter("JSON File", JSON_EXT);
+        binaryFilter = new FileNameExtensionFilter("Binary Model", BINARY_EXT);
+        chooser.setFileFilter(jsonFilter);
+        exportCache = new ExportCache();
+
+        setImportProgress();
+        setExportItems();
+        setUndoItems();
+        setReassignItem();
+        setSearchBar();
+        setMinimap();
+        setViewMenu();
+        setPaintStats();
 
         this.pack();//pack and show
         this.setVisible(true);
+        recoverModel();
+    }
+
+    /**
+     * Imports the model left by the last run, when journaling, along with the
+     * edits made to it since its snapshot
+     */
+    private void recoverModel() {
+        File snapshot = workspacePanel2.getRecoverySnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            startImport(new ModelImporter(snapshot, true),
+                    ModelJournal.journalOf(snapshot));
+        } catch (FileNotFoundException | JSONException ex) {//show exceptions
+            System.out.println(Arrays.toString(ex.getStackTrace()));
+            System.out.println(ex.getMessage());
+            recoveryFailed(String.valueOf(ex.getMessage()));
+        }
+    }
+
+    /**
+     * Tells the user the model left by the last run hasn't been recovered and
+     * where its files have been kept, journaling the model shown from now on
+     *
+     * @param error why the recovery failed, null if it has been cancelled
+     */
+    protected void recoveryFailed(String error) {
+        File kept = workspacePanel2.abandonRecovery();
+        String message = error != null
+                ? "The model of the last run couldn't be recovered:\n" + error
+                : "Recovery of the model of the last run has been cancelled.";
+        message += kept != null
+                ? "\nIts snapshot and journal have been kept as "
+                + kept.getName() + " in " + kept.getParent() + "."
+                : "\nIts files couldn't be set aside, journaling is off.";
+        JOptionPane.showMessageDialog(this, message, "Recovery Error",
+                JOptionPane.ERROR_MESSAGE);
     }
 
     /**
@@ -78,6 +196,440 @@ public class PicturesqueFrame extends javax.swing.JFrame {
         jButton2.setEnabled(state);
     }
 
+    /**
+     * Adds the export options and the binary export item to the file menu,
+     * right after "Export JSON file"
+     */
+    private void setExportItems() {
+        compactExport = new JCheckBoxMenuItem("Compact JSON export");
+        binaryExport = new JMenuItem("Export binary model");
+        binaryExport.addActionListener(evt -> startExport(binaryFilter,
+                BINARY_EXT, true, compressExport.isSelected()));
+        compressExport = new JCheckBoxMenuItem("Compress binary export", true);
+
+        int index = jMenu1.getPopupMenu().getComponentIndex(jMenuItem2);
+        jMenu1.add(compactExport, index + 1);
+        jMenu1.add(binaryExport, index + 2);
+        jMenu1.add(compressExport, index + 3);
+    }
+
+    /**
+     * Adds the undo and redo items to the top of the edit menu
+     */
+    private void setUndoItems() {
+        int shortcut = getMenuShortcutMask();
+        undoItem = new JMenuItem();
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+        undoItem.addActionListener(evt -> workspacePanel2.undo());
+        redoItem = new JMenuItem();
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut));
+        redoItem.addActionListener(evt -> workspacePanel2.redo());
+
+        jMenu2.add(undoItem, 0);
+        jMenu2.add(redoItem, 1);
+        jMenu2.insertSeparator(2);
+        modelActions = true;
+        updateUndoItems();
+        workspacePanel2.addPropertyChangeListener(WorkspacePanel.HISTORY,
+                evt -> updateUndoItems());
+    }
+
+    /**
+     * Returns the modifier of menu shortcuts, in the *_DOWN_MASK form.
+     * getMenuShortcutKeyMaskEx() is only there on Java 10 and newer, older
+     * versions get the modifier it returns, command on a Mac and control
+     * everywhere else.
+     *
+     * @return modifier mask
+     */
+    private static int getMenuShortcutMask() {
+        try {
+            return (Integer) Toolkit.class.getMethod("getMenuShortcutKeyMaskEx")
+                    .invoke(Toolkit.getDefaultToolkit());
+        } catch (ReflectiveOperationException ex) {
+            return System.getProperty("os.name", "").startsWith("Mac")
+                    ? InputEvent.META_DOWN_MASK : InputEvent.CTRL_DOWN_MASK;
+        }
+    }
+
+    /**
+     * Adds the entity reassignment item below the undo and redo items
+     */
+    private void setReassignItem() {
+        reassignItem = new JMenuItem("Reassign Entity...");
+        reassignItem.addActionListener(evt -> reassignEntity());
+        jMenu2.add(reassignItem, 3);
+    }
+
+    /**
+     * Asks for an entity and a new name and assigns all the entity's blocks to
+     * the entity with that name
+     */
+    private void reassignEntity() {
+        String[] names = workspacePanel2.getModel().getEntities().getEntities()
+                .stream().map(Entity::getName).sorted().toArray(String[]::new);
+        if (names.length == 0) {
+            JOptionPane.showMessageDialog(this, "The model has no entities.",
+                    "Reassign Entity", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        String selected = WorkspacePanel.selBlock != null
+                ? WorkspacePanel.selBlock.getEntName() : names[0];
+        String from = (String) JOptionPane.showInputDialog(this,
+                "Entity to reassign:", "Reassign Entity",
+                JOptionPane.QUESTION_MESSAGE, null, names, selected);
+        if (from == null) {
+            return;
+        }
+        String to = (String) JOptionPane.showInputDialog(this,
+                "Assign its blocks to:", "Reassign Entity",
+                JOptionPane.QUESTION_MESSAGE, null, null, from);
+        if (to == null || to.isEmpty() || to.equals(from)) {
+            return;
+        }
+        workspacePanel2.reassignEntity(from, to);
+    }
+
+    /**
+     * Docks the minimap on the right of the model's scroll pane
+     */
+    private void setMinimap() {
+        minimap = new MinimapPanel(workspacePanel2, jScrollPane4.getViewport());
+        minimap.setBorder(BorderFactory.createTitledBorder(null, "Overview",
+                TitledBorder.DEFAULT_JUSTIFICATION,
+                TitledBorder.DEFAULT_POSITION, new Font("Dialog", Font.BOLD,
+                        14)));
+        JPanel modelPane = new JPanel(new BorderLayout());
+        jSplitPane1.setLeftComponent(modelPane);
+        modelPane.add(jScrollPane4, BorderLayout.CENTER);
+        modelPane.add(minimap, BorderLayout.EAST);
+    }
+
+    /**
+     * Adds the view menu, before the help menu, with the minimap and call
+     * graph items
+     */
+    private void setViewMenu() {
+        JMenu viewMenu = new JMenu("View");
+        JCheckBoxMenuItem minimapItem = new JCheckBoxMenuItem("Overview", true);
+        minimapItem.addActionListener(evt -> {
+            minimap.setVisible(minimapItem.isSelected());
+            minimap.getParent().revalidate();
+        });
+        viewMenu.add(minimapItem);
+        JMenuItem callGraphItem = new JMenuItem("Call Graph...");
+        callGraphItem.addActionListener(evt -> showCallGraph());
+        viewMenu.add(callGraphItem);
+        jMenuBar1.add(viewMenu, jMenuBar1.getComponentIndex(jMenu3));
+        workspacePanel2.addPropertyChangeListener(WorkspacePanel.CALL_GRAPH,
+                evt -> {
+                    if (callGraphWindow != null && callGraphWindow.isVisible()) {
+                        callGraphPanel.setGraph((CallGraph) evt.getNewValue());
+                    }
+                });
+    }
+
+    /**
+     * Shows the window with the calls between the frames of the model, kept
+     * up to date with the model while it's open
+     */
+    private void showCallGraph() {
+        if (callGraphWindow == null) {
+            callGraphPanel = new CallGraphPanel(workspacePanel2);
+            JScrollPane scroll = new JScrollPane(callGraphPanel);
+            scroll.getVerticalScrollBar().setUnitIncrement(16);
+            scroll.getHorizontalScrollBar().setUnitIncrement(16);
+            callGraphWindow = new JFrame("Call Graph");
+            callGraphWindow.add(scroll);
+            callGraphWindow.setSize(800, 600);
+            callGraphWindow.setLocationRelativeTo(this);
+        }
+        callGraphPanel.setGraph(workspacePanel2.getCallGraph());
+        callGraphWindow.setVisible(true);
+        callGraphWindow.toFront();
+    }
+
+    /**
+     * Adds the search bar to the toolbar. Hits are shown as the query is
+     * typed, enter moves to the next hit and shift+enter to the previous one.
+     */
+    private void setSearchBar() {
+        searchField = new JTextField(20);
+        searchField.setMaximumSize(new Dimension(240,
+                searchField.getPreferredSize().height));
+        searchField.setToolTipText("Search frame titles and blocks");
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                runSearch();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                runSearch();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        searchField.addActionListener(evt -> showHit(
+                (evt.getModifiers() & ActionEvent.SHIFT_MASK) != 0
+                ? hitPos - 1 : hitPos + 1));
+        searchStatus = new JLabel();
+        hits = Collections.emptyList();
+
+        jToolBar1.add(new JLabel(" Search: "));
+        jToolBar1.add(searchField);
+        jToolBar1.add(searchStatus);
+        startSearchIndex();
+    }
+
+    /**
+     * Searches the model for the text of the search bar and shows the first
+     * hit
+     */
+    private void runSearch() {
+        String query = searchField.getText();
+        if (query.trim().isEmpty()) {
+            hits = Collections.emptyList();
+            searchStatus.setText("");
+            return;
+        }
+        if (searchIndex == null
+                || searchIndex.getModel() != workspacePanel2.getModel()) {
+            searchStatus.setText(" indexing... ");
+            startSearchIndex();//searches again once built
+            return;
+        }
+        hits = searchIndex.search(query, MAX_HITS);
+        showHit(0);
+    }
+
+    /**
+     * Shows a hit of the current query in the workspace
+     *
+     * @param pos position of the hit, wraps around
+     */
+    private void showHit(int pos) {
+        if (hits.isEmpty()) {
+            searchStatus.setText(searchField.getText().trim().isEmpty() ? ""
+                    : " no hits ");
+            return;
+        }
+        hitPos = Math.floorMod(pos, hits.size());
+        SearchIndex.Hit hit = hits.get(hitPos);
+        workspacePanel2.showStep(hit.getFrame(), hit.getStep());
+        searchStatus.setText(String.format(" %d of %d%s ", hitPos + 1,
+                hits.size(), hits.size() == MAX_HITS ? "+" : ""));
+    }
+
+    /**
+     * Starts indexing the model shown in the background, unless it's already
+     * indexed or being indexed
+     */
+    private void startSearchIndex() {
+        if (searchWorker != null || (searchIndex != null
+                && searchIndex.getModel() == workspacePanel2.getModel())) {
+            return;
+        }
+        searchWorker = new SearchWorker(
+                new SearchIndex(workspacePanel2.getModel()), this);
+        searchWorker.execute();
+    }
+
+    /**
+     * Called by the search worker once the index has been built
+     *
+     * @param index index built, null if indexing failed
+     */
+    protected void searchIndexBuilt(SearchIndex index) {
+        searchWorker = null;
+        if (index == null) {
+            return;
+        }
+        searchIndex = index;
+        if (index.getModel() != workspacePanel2.getModel()) {
+            startSearchIndex();//another model has been imported meanwhile
+        } else if (!searchField.getText().trim().isEmpty()) {
+            runSearch();//query typed while indexing
+        }
+    }
+
+    /**
+     * Names the edits the undo and redo items would revert or make again
+     */
+    private void updateUndoItems() {
+        String undoName = workspacePanel2.getUndoName();
+        String redoName = workspacePanel2.getRedoName();
+        undoItem.setText(undoName == null ? "Undo" : "Undo " + undoName);
+        undoItem.setEnabled(modelActions && undoName != null);
+        redoItem.setText(redoName == null ? "Redo" : "Redo " + redoName);
+        redoItem.setEnabled(modelActions && redoName != null);
+    }
+
+    /**
+     * Adds the workspace's painted/culled counters to the toolbar, only when
+     * the application is started with -Dpicturesque.paintStats=true
+     */
+    private void setPaintStats() {
+        if (!Boolean.getBoolean(PAINT_STATS_PROP)) {
+            return;
+        }
+        paintStats = new JLabel();
+        jToolBar1.add(paintStats);
+        workspacePanel2.addPropertyChangeListener(WorkspacePanel.PAINT_STATS,
+                evt -> {
+                    int[] stats = (int[]) evt.getNewValue();
+                    paintStats.setText(String.format(" painted %d, culled %d ",
+                            stats[0], stats[1]));
+                });
+    }
+
+    /**
+     * Adds the import progress bar and cancel button to the toolbar, both
+     * hidden until an import starts
+     */
+    private void setImportProgress() {
+        importProgress = new JProgressBar(0, 100);
+        importProgress.setStringPainted(true);
+        importProgress.setVisible(false);
+
+        cancelImport = new JButton("cancel import");
+        cancelImport.setFocusable(false);
+        cancelImport.setVisible(false);
+        cancelImport.addActionListener(evt -> {
+            if (importWorker != null) {
+                importWorker.cancelImport();
+                cancelImport.setEnabled(false);
+            }
+        });
+
+        jToolBar1.add(importProgress);
+        jToolBar1.add(cancelImport);
+
+        progressTimer = new Timer(PROGRESS_DELAY, evt -> updateImportProgress());
+    }
+
+    /**
+     * Shows how much of the running import is done
+     */
+    private void updateImportProgress() {
+        if (importWorker == null) {
+            return;
+        }
+        long read = importWorker.getBytesRead();
+        long total = Math.max(importWorker.getFileSize(), 1);
+        importProgress.setValue((int) (read * 100 / total));
+        importProgress.setString(String.format("%.1f of %.1f MB, %d frames",
+                read / 1048576.0, total / 1048576.0, importWorker.getFramesBuilt()));
+    }
+
+    /**
+     * Enables or disables all actions that modify the model
+     *
+     * @param state true to enable, false to disable
+     */
+    private void setModelActions(boolean state) {
+        jMenuItem1.setEnabled(state);
+        jMenuItem2.setEnabled(state && exportWorker == null);
+        binaryExport.setEnabled(state && exportWorker == null);
+        jMenuItem3.setEnabled(state);
+        jButton1.setEnabled(state);
+        jButton3.setEnabled(state);
+        jButton4.setEnabled(state);
+        jComboBox1.setEnabled(state);//frames are built at the current zoom
+        reassignItem.setEnabled(state);
+        searchField.setEnabled(state);
+        modelActions = state;
+        updateUndoItems();
+    }
+
+    /**
+     * Starts importing a model in the background
+     *
+     * @param importer importer reading the model
+     * @param journal edits to replay on the model, null if none
+     */
+    private void startImport(ModelImporter importer, File journal) {
+        importer.setParallel(Boolean.getBoolean(PARALLEL_PROP));
+        setModelActions(false);
+        workspacePanel2.beginImport();
+
+        importWorker = new ImportWorker(importer, workspacePanel2, this,
+                journal);
+        importProgress.setValue(0);
+        importProgress.setVisible(true);
+        cancelImport.setEnabled(true);
+        cancelImport.setVisible(true);
+        jToolBar1.revalidate();
+        updateImportProgress();
+        progressTimer.start();
+
+        importWorker.execute();
+    }
+
+    /**
+     * Called by the import worker once the import has ended in any way
+     */
+    protected void importFinished() {
+        progressTimer.stop();
+        importWorker = null;
+        importProgress.setVisible(false);
+        cancelImport.setVisible(false);
+        jToolBar1.revalidate();
+        setModelActions(true);
+        startSearchIndex();//the model shown may have changed
+    }
+
+    /**
+     * Called by the export worker once the export has ended in any way
+     */
+    protected void exportFinished() {
+        exportWorker = null;
+        jMenuItem2.setEnabled(importWorker == null);
+        binaryExport.setEnabled(importWorker == null);
+    }
+
+    /**
+     * Asks for a file and writes the model to it in the background
+     *
+     * @param filter file chooser filter for the format
+     * @param extension extension added to the file if missing
+     * @param binary true for the binary model format, false for JSON
+     * @param compact true for JSON without indentation, or a compressed
+     * binary model
+     */
+    private void startExport(FileNameExtensionFilter filter, String extension,
+            boolean binary, boolean compact) {
+        chooser.setFileFilter(filter);
+        int returnVal = chooser.showSaveDialog(this);//open save dialog
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            File file = chooser.getSelectedFile();
+            /*Check if extension has to be added*/
+            if (!file.getPath().endsWith("." + extension)) {//add extension if needed
+                file = new File(file.toString() + "." + extension);
+            }
+
+            /*Snapshot the model here, write it in the background, errors are
+            reported by the worker. JSON exports only copy the frames edited
+            since the last one.*/
+            ExportWorker.Export export;
+            if (binary) {
+                ModelExporter exporter
+                        = new ModelExporter(workspacePanel2.getModel());
+                export = target -> exporter.exportBinaryModel(target, compact);
+            } else {
+                export = new CachedModelExporter(workspacePanel2.getModel(),
+                        exportCache, compact)::exportModel;
+            }
+            exportWorker = new ExportWorker(export, file, this);
+            jMenuItem2.setEnabled(false);
+            binaryExport.setEnabled(false);
+            exportWorker.execute();
+        }
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -412,6 +964,8 @@ public class PicturesqueFrame extends javax.swing.JFrame {
                 + workspacePanel2.getTotalSubs());
         if (name != null) {
             workspacePanel2.addFrame(name);
+            workspacePanel2.recordEdit(ModelEdits.addFrame(
+                    workspacePanel2.getFrames().size() - 1, name));
         }
     }//GEN-LAST:event_jButton1ActionPerformed
 
@@ -421,9 +975,19 @@ public class PicturesqueFrame extends javax.swing.JFrame {
      * @param evt attributes text box caret changed
      */
     private void jEditorPane1CaretUpdate(javax.swing.event.CaretEvent evt) {//GEN-FIRST:event_jEditorPane1CaretUpdate
-        if (jEditorPane1.isEnabled() && WorkspacePanel.selBlock != null) {
-            WorkspacePanel.selBlock.attrString = jEditorPane1.getText();
-            workspacePanel2.repaint();
+        if (jEditorPane1.isEnabled() && WorkspacePanel.selBlock != null
+                && !workspacePanel2.isFillingEditPane()) {
+            ProcessBlock block = WorkspacePanel.selBlock;
+            Step step = block.getStep();
+            String text = jEditorPane1.getText();
+            String old = step.getAttributes();
+            if (!text.equals(old)) {//caret moves only
+                step.setAttributes(text);
+                workspacePanel2.recordEdit(ModelEdits.setText(
+                        block.getFrame().getIndex(), block.getIndex(), false,
+                        old, text));
+                workspacePanel2.repaintBlock(WorkspacePanel.selBlock);
+            }
         }
     }//GEN-LAST:event_jEditorPane1CaretUpdate
 
@@ -434,29 +998,32 @@ public class PicturesqueFrame extends javax.swing.JFrame {
      */
     private void jButton2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton2ActionPerformed
         if (WorkspacePanel.selBlock != null) {
-            WorkspacePanel.selBlock.getFrame().removeBlock(
-                    WorkspacePanel.selBlock.getIndex());
+            ProcessFrame frame = WorkspacePanel.selBlock.getFrame();
+            int index = WorkspacePanel.selBlock.getIndex();
+            workspacePanel2.repaintFrame(frame);//before the last block goes
+            frame.removeBlock(index);
+            workspacePanel2.recordEdit(ModelEdits.removeBlock(frame.getIndex(),
+                    index, WorkspacePanel.selBlock.getStep()));
             
             workspacePanel2.setEditPane(false);
             WorkspacePanel.selBlock = null;
-            workspacePanel2.repaint();
         }
     }//GEN-LAST:event_jButton2ActionPerformed
 
     /**
-     * Imports model from JSON file.
+     * Imports model from JSON or binary model file.
      *
      * @param evt "Open JSON file" menu option clicked
      */
     private void jMenuItem1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItem1ActionPerformed
+        chooser.setFileFilter(modelFilter);//JSON or binary models
         int returnVal = chooser.showOpenDialog(this);//open open dialog
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             try {
-                ModelImporter importer = new ModelImporter(chooser.getSelectedFile());
-                workspacePanel2.setFramesList(importer.importModel());
-                workspacePanel2.setEditPane(false);
-                WorkspacePanel.selBlock = null;
-                WorkspacePanel.selFrame = null;
+                /*Stream the file on a worker thread, frames show up as they
+                are built*/
+                startImport(new ModelImporter(chooser.getSelectedFile(), true),
+                        null);
             } catch (FileNotFoundException | JSONException ex) {//show exceptions
                 JOptionPane.showMessageDialog(this, "Import Error",
                     ex.getMessage(), JOptionPane.ERROR_MESSAGE);
@@ -472,25 +1039,7 @@ public class PicturesqueFrame extends javax.swing.JFrame {
      * @param evt "Export JSON file" menu option clicked
      */
     private void jMenuItem2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItem2ActionPerformed
-        int returnVal = chooser.showSaveDialog(this);//open save dialog
-        if (returnVal == JFileChooser.APPROVE_OPTION) {
-            try {
-                File file = chooser.getSelectedFile();
-                /*Check if extension has to be added*/
-                if (!file.getPath().endsWith(".json")) {//add extension if needed
-                    file = new File(file.toString() + ".json");
-                }
-                
-                ModelExporter exporter = new ModelExporter(workspacePanel2.getFrames());
-                exporter.exportModel(file);
-            } catch (IOException | JSONException ex) {//show exceptions
-                JOptionPane.showMessageDialog(this, "Export Error",
-                    ex.getMessage(), JOptionPane.ERROR_MESSAGE);
-                System.out.println(Arrays.toString(ex.getStackTrace()));
-                System.out.println(ex.getMessage());
-            }
-        }
-
+        startExport(jsonFilter, JSON_EXT, false, compactExport.isSelected());
     }//GEN-LAST:event_jMenuItem2ActionPerformed
 
     /**
@@ -534,10 +1083,11 @@ public class PicturesqueFrame extends javax.swing.JFrame {
                     + " blocks!",
                     "Subprocess Not Empty", JOptionPane.WARNING_MESSAGE);
         } else {//remove frame
-            workspacePanel2.getFrames().remove(selFrame.getIndex());
-            workspacePanel2.SlideFrames(selFrame.getIndex());
+            int index = selFrame.getIndex();
+            workspacePanel2.removeFrame(selFrame);
+            workspacePanel2.recordEdit(ModelEdits.removeFrame(index,
+                    selFrame.getName()));
             WorkspacePanel.selFrame = null;
-            workspacePanel2.repaint();
         }
     }//GEN-LAST:event_jButton3ActionPerformed
 
@@ -556,10 +1106,13 @@ public class PicturesqueFrame extends javax.swing.JFrame {
             String name = (String) JOptionPane.showInputDialog(this,
                     "Enter the new name of this subprocess:",
                     "Rename Subprocess",
-                    JOptionPane.PLAIN_MESSAGE, null, null, selFrame.name);
+                    JOptionPane.PLAIN_MESSAGE, null, null, selFrame.getName());
             if (name != null) {
-                selFrame.name = name;
-                workspacePanel2.repaint();
+                String old = selFrame.getName();
+                selFrame.setName(name);
+                workspacePanel2.recordEdit(ModelEdits.renameFrame(
+                        selFrame.getIndex(), old, name));
+                workspacePanel2.repaintHeader(selFrame, true);
             }
         }
     }//GEN-LAST:event_jButton4ActionPerformed
@@ -570,9 +1123,19 @@ public class PicturesqueFrame extends javax.swing.JFrame {
      * @param evt entity text box caret changed
      */
     private void jEditorPane2CaretUpdate(javax.swing.event.CaretEvent evt) {//GEN-FIRST:event_jEditorPane2CaretUpdate
-        if (jEditorPane1.isEnabled() && WorkspacePanel.selBlock != null) {
-            WorkspacePanel.selBlock.entName = jEditorPane2.getText();
-            workspacePanel2.repaint();
+        if (jEditorPane1.isEnabled() && WorkspacePanel.selBlock != null
+                && !workspacePanel2.isFillingEditPane()) {
+            ProcessBlock block = WorkspacePanel.selBlock;
+            Step step = block.getStep();
+            String text = jEditorPane2.getText();
+            String old = step.getEntity().getName();
+            if (!text.equals(old)) {//caret moves only
+                step.setEntity(new Entity(text));
+                workspacePanel2.recordEdit(ModelEdits.setText(
+                        block.getFrame().getIndex(), block.getIndex(), true,
+                        old, text));
+                workspacePanel2.repaintBlock(WorkspacePanel.selBlock);
+            }
         }
     }//GEN-LAST:event_jEditorPane2CaretUpdate
 
@@ -24,18 +24,18 @@
  */
 package GUI;
 
+import Model.Step;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
-import java.awt.GraphicsDevice;
-import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.Stroke;
 
 /**
- * Stores a single process block's display data and draws it
+ * Displays a single step of a procedure frame as a process block and draws it
  *
  * @author Christos Darisaplis
  */
@@ -45,8 +45,6 @@ public class ProcessBlock {
     /*Rendering properties, expressed as ratios and percentages*/
     private static final int XOFFSET = 25;
     private static final double BLOCKGAP = 0.33;//horizontal gap between blocks
-    private static final double BLOCKRATIO = 0.75;//width/height ratio
-    private static final double YOFFSET = 0.02;
     
     /*Height percentage of each rectangle, adding up to 1*/
     private static final double HEADRATIO = 0.1;
@@ -54,9 +52,22 @@ public class ProcessBlock {
     private static final double ENTRATIO = 0.2;
     private static final double ATTRRATIO = 0.5;
 
-    protected String blockName;
-    protected String attrString;
-    protected String entName;
+    /*Level of detail, by the block's width on screen in pixels. Narrower
+    blocks only show their name, and below that just a box of their color*/
+    private static final int DETAIL_WIDTH
+            = Integer.getInteger("picturesque.detailWidth", 120);
+    private static final int NAME_WIDTH
+            = Integer.getInteger("picturesque.nameWidth", 60);
+
+    /*Zoomed out block colors, see getTypeColor()*/
+    private static final Color TRANSACTION_COLOR = new Color(166, 206, 227);
+    private static final Color DOCUMENT_COLOR = new Color(178, 223, 138);
+    private static final Color SUBPROCESS_COLOR = new Color(202, 178, 214);
+    private static final Color PARALLEL_COLOR = new Color(253, 191, 111);
+    private static final Color ASSESSMENT_COLOR = new Color(251, 154, 153);
+    private static final Color OTHER_COLOR = new Color(217, 217, 217);
+
+    private final Step step;//step shown by the block
     private final ProcessFrame parentFrame;//frame the block belongs to
     private int index;//index of the block in its frame's list
 
@@ -67,20 +78,64 @@ public class ProcessBlock {
     protected boolean isSelected;//block is selected
     private boolean dropTarg;//block is drop target
     private boolean onHead;//mouse on Header
+    private BlockImageCache.Key imageKey;//key of the last cached image
+    private final TextLines nameLines, entLines, attrLines;//line breaks
 
-    public ProcessBlock(int index, int yPos, String name, String entName,
-            String attrString, ProcessFrame parent) {
-        this.blockName = name;
-        this.attrString = attrString;
-        this.entName = entName;
+    /**
+     * Creates a block, its rectangles are set when its frame is laid out
+     *
+     * @param index index of the block in its frame's list
+     * @param step step shown by the block
+     * @param parent frame the block belongs to
+     */
+    public ProcessBlock(int index, Step step, ProcessFrame parent) {
+        this.step = step;
         this.index = index;
         this.parentFrame = parent;
         
         isSelected = false;
         dropTarg = false;
         onHead = false;
+        nameLines = new TextLines();
+        entLines = new TextLines();
+        attrLines = new TextLines();
+    }
 
-        setRectangles(yPos);
+    /**
+     * Copies a block's looks for painting on another thread, later changes to
+     * the block don't affect the copy. Rectangles are shared, they are
+     * replaced and never changed in place.
+     *
+     * @param toCopy block to copy
+     * @param parent copy of the block's frame
+     */
+    private ProcessBlock(ProcessBlock toCopy, ProcessFrame parent) {
+        step = toCopy.step;
+        index = toCopy.index;
+        parentFrame = parent;
+        mainRect = toCopy.mainRect;
+        headRect = toCopy.headRect;
+        nameRect = toCopy.nameRect;
+        entRect = toCopy.entRect;
+        attrRect = toCopy.attrRect;
+
+        isSelected = toCopy.isSelected;
+        dropTarg = toCopy.dropTarg;
+        onHead = toCopy.onHead;
+        nameLines = toCopy.nameLines;//line breaks are shared
+        entLines = toCopy.entLines;
+        attrLines = toCopy.attrLines;
+    }
+
+    /**
+     * Copies the block for painting on another thread
+     *
+     * @param parent copy of the block's frame
+     *
+     * @return copy of the block
+     */
+    ProcessBlock copyForPaint(ProcessFrame parent) {
+        return new ProcessBlock(this, parent);
     }
 
     /**
@@ -91,15 +146,12 @@ public class ProcessBlock {
     protected final void setRectangles(int yPos) {
         int width, height;
 
-        /*size depends on screen size, modified by rendering ratios*/
-        GraphicsDevice gd = GraphicsEnvironment.getLocalGraphicsEnvironment().
-                getDefaultScreenDevice();
-
-        double screenPercentage = ProcessFrame.screenRatio - YOFFSET;
-        height = (int) (gd.getDisplayMode().getHeight() * screenPercentage);
-        width = (int) (height * BLOCKRATIO);
+        /*size depends on screen size and zoom, see LayoutMetrics*/
+        LayoutMetrics metrics = LayoutMetrics.get();
+        height = metrics.blockHeight;
+        width = metrics.blockWidth;
         Point position = new Point(XOFFSET + (int) (index * (width + width * BLOCKGAP)),
-                yPos + (int) (gd.getDisplayMode().getHeight() * (YOFFSET / 2)));
+                yPos + metrics.blockYOffset);
 
         /*Calculate rectangles*/
         mainRect = new Rectangle(position.x, position.y, width, height);
@@ -112,6 +164,19 @@ public class ProcessBlock {
                 + NAMERATIO + HEADRATIO)), width, (int) (height * ATTRRATIO));
     }
 
+    /**
+     * Returns the index of the block that would start at or left of an x
+     * position, blocks sit at a fixed horizontal pitch
+     *
+     * @param x x position on the panel
+     *
+     * @return block index, may be out of the frame's range
+     */
+    static int getColumn(int x) {
+        int width = LayoutMetrics.get().blockWidth;
+        return (int) Math.floor((x - XOFFSET) / (width + width * BLOCKGAP));
+    }
+
     /**
      * Paints the block on a JComponent (ProcessFrame in this case)
      *
@@ -119,7 +184,12 @@ public class ProcessBlock {
      * @param textMetr font rendering details
      */
     public void paintSelf(Graphics2D g2D, FontMetrics textMetr) {
-        g2D.setColor(Color.WHITE);
+        /*Less detail when the block is small on screen, see DETAIL_WIDTH*/
+        double onScreen = mainRect.width * g2D.getTransform().getScaleX();
+        boolean detailed = onScreen >= DETAIL_WIDTH;
+        boolean named = onScreen >= NAME_WIDTH;
+
+        g2D.setColor(detailed ? Color.WHITE : getTypeColor(step.getName()));
         g2D.fill(mainRect);
         
         /*Change header color if mouse hovers on it or the block is a drop target*/
@@ -133,9 +203,11 @@ public class ProcessBlock {
         /*Draw all the rectangles*/
         g2D.setColor(Color.BLACK);
         g2D.draw(mainRect);
-        g2D.draw(nameRect);
-        g2D.draw(entRect);
-        g2D.draw(attrRect);
+        if (detailed) {
+            g2D.draw(nameRect);
+            g2D.draw(entRect);
+            g2D.draw(attrRect);
+        }
 
         /*Draw a colorful border if the block is selected*/
         if (isSelected) {
@@ -150,70 +222,104 @@ public class ProcessBlock {
             g2D.setStroke(prev);
             g2D.setColor(Color.BLACK);
         }
-        
+        if (!named) {//just a colored box
+            return;
+        }
 
-        /*Draw all strings*/
-        splitDrawString(g2D, textMetr, blockName, (int) (mainRect.height * HEADRATIO));
-        splitDrawString(g2D, textMetr, entName, (int) (mainRect.height * (HEADRATIO + NAMERATIO)));
-        splitDrawString(g2D, textMetr, attrString, (int) (mainRect.height * (HEADRATIO + NAMERATIO + ENTRATIO)));
+        /*Draw all strings, lines that don't fit in the block are left out*/
+        Shape prevClip = g2D.getClip();
+        g2D.clipRect(mainRect.x, mainRect.y, mainRect.width + 1,
+                mainRect.height + 1);
+        drawLines(g2D, textMetr, nameLines, step.getName(), (int) (mainRect.height * HEADRATIO));
+        if (detailed) {
+            drawLines(g2D, textMetr, entLines, step.getEntity().getName(), (int) (mainRect.height * (HEADRATIO + NAMERATIO)));
+            drawLines(g2D, textMetr, attrLines, step.getAttributes(), (int) (mainRect.height * (HEADRATIO + NAMERATIO + ENTRATIO)));
+        }
+        g2D.setClip(prevClip);
     }
 
     /**
-     * Splits strings based on block width and draws them
+     * Returns the color blocks are filled with when zoomed out, by the kind of
+     * step the block's name shows
+     *
+     * @param name block name
+     *
+     * @return fill color
+     */
+    static Color getTypeColor(String name) {
+        if (name.endsWith(" Transaction")) {
+            return TRANSACTION_COLOR;
+        } else if (name.endsWith(" Document")) {
+            return DOCUMENT_COLOR;
+        }
+        switch (name) {
+            case "Run Subprocess":
+                return SUBPROCESS_COLOR;
+            case "Parallel Procedures":
+                return PARALLEL_COLOR;
+            case "Formal Assestment":
+                return ASSESSMENT_COLOR;
+            default:
+                return OTHER_COLOR;
+        }
+    }
+
+    /**
+     * Draws a string split in lines based on block width, the lines are only
+     * computed again when the string, the font or the block's size change
      *
      * @param g2D painter of the component
      * @param textMetr font rendering details
-     * @param toWrite string to process
-     * @param startY y position of the block's top left corner
+     * @param cached lines of the string drawn last
+     * @param toWrite string to draw
+     * @param startY y position of the text, relative to the block's top
      */
-    private void splitDrawString(Graphics2D g2D, FontMetrics textMetr, String toWrite,
-            int startY) {
+    private void drawLines(Graphics2D g2D, FontMetrics textMetr,
+            TextLines cached, String toWrite, int startY) {
         int textHeight = textMetr.getHeight();
+        int maxLines = Math.max(0, (mainRect.height - startY
+                - textMetr.getDescent()) / textHeight);
 
-        int charSum = 0, lines = 1, j = 0, i;
-        for (i = 0; i < toWrite.length(); i++) {//iterate string
-            char curChar = toWrite.charAt(i);
-            charSum += textMetr.charWidth(curChar);
-            /*Split here*/
-            if (charSum >= mainRect.width - 5 - textMetr.charWidth(curChar) ||
-                    curChar == '\n') {
-                g2D.drawString(toWrite.substring(j, i), mainRect.x + 5,
-                        mainRect.y + startY + lines * textHeight);
-                charSum = 0;
-                j = i;
-                lines++;
-            }
+        String[] lines = cached.getLines(toWrite, textMetr, mainRect.width,
+                maxLines);
+        for (int i = 0; i < lines.length; i++) {
+            g2D.drawString(lines[i], mainRect.x + 5,
+                    mainRect.y + startY + (i + 1) * textHeight);
         }
-        /*Draw last segment (or the whole string if it fits in one line)*/
-        g2D.drawString(toWrite.substring(j, i), mainRect.x + 5,
-                mainRect.y + startY + lines * textHeight);
     }
 
-    /*Getters and setters below*/
+    /*Getters and setters below, the frame is laid out first if it's dirty*/
     
     public Rectangle getMainRectangle() {
+        parentFrame.ensureLayout();
         return mainRect;
     }
 
     public Rectangle getHeaderRectangle() {
+        parentFrame.ensureLayout();
         return headRect;
     }
     
     public String getName(){
-        return this.blockName;
+        return step.getName();
     }
     
     public String getEntName(){
-        return this.entName;
+        return step.getEntity().getName();
     }
     
     public String getAttrString(){
-        return this.attrString;
+        return step.getAttributes();
+    }
+
+    public Step getStep() {
+        return this.step;
     }
 
 
 
     protected int getIndex() {
+        parentFrame.ensureLayout();
         return this.index;
     }
 
@@ -222,12 +328,59 @@ public class ProcessBlock {
     }
 
 
-    protected void isDropTarg(boolean dropTarg) {
+    /**
+     * Returns the area the block paints on, its text included
+     *
+     * @return painted area
+     */
+    protected Rectangle getPaintBounds() {
+        parentFrame.ensureLayout();
+        Rectangle bounds = new Rectangle(mainRect);
+        bounds.grow(ProcessFrame.PAINT_MARGIN, ProcessFrame.PAINT_MARGIN);
+        return bounds;
+    }
+
+    /**
+     * Remembers the key of the block's cached image, dropping the previous
+     * image if the block's texts have changed since
+     *
+     * @param key key of the image being painted
+     * @param cache cache holding the images
+     */
+    void setImageKey(BlockImageCache.Key key, BlockImageCache cache) {
+        if (imageKey != null && !imageKey.sameTexts(key)) {
+            cache.invalidate(imageKey);
+        }
+        imageKey = key;
+    }
+
+    /**
+     * Returns the hover, drop target and selection state as bits
+     *
+     * @return state affecting the block's looks
+     */
+    int getPaintState() {
+        return (onHead ? 1 : 0) | (dropTarg ? 2 : 0) | (isSelected ? 4 : 0);
+    }
+
+    /*State setters return true if the state has changed*/
+
+    protected boolean isDropTarg(boolean dropTarg) {
+        boolean changed = this.dropTarg != dropTarg;
         this.dropTarg = dropTarg;
+        return changed;
     }
     
-    protected void setOnHead(boolean onHead){
+    protected boolean setOnHead(boolean onHead){
+        boolean changed = this.onHead != onHead;
         this.onHead = onHead;
+        return changed;
+    }
+
+    protected boolean setSelected(boolean selected){
+        boolean changed = this.isSelected != selected;
+        this.isSelected = selected;
+        return changed;
     }
     
     protected ProcessFrame getFrame(){
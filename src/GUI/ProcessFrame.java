@@ -24,21 +24,23 @@
  */
 package GUI;
 
+import Model.ProcedureFrame;
+import Model.Step;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
-import java.awt.GraphicsDevice;
-import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 
 /**
- * Represents the frame of an entire process/subprocess
+ * Displays a procedure frame, the frame of an entire process/subprocess
  *
  * @author Christos Darisaplis
  */
@@ -47,16 +49,15 @@ public class ProcessFrame {
     /*Rendering properties, expressed as ratios and percentages*/
     private static final int XOFFSET = 15;
     private static final double BLOCKGAP = 0.33;
-    
-    protected static double screenRatio = 0.25;//GETS MODIFIED TO SET ZOOM LEVEL
+    static final int PAINT_MARGIN = 5;//room for borders around painted items
 
     private Rectangle frameRectangle, headerRectangle;//rendering rectangles
     private Point position;//top left corner of the main rectangle
     private Dimension size;//size of the main rectangle
 
+    private final ProcedureFrame frame;//frame shown, holds title and index
     private final ArrayList<ProcessBlock> blocks;//blocks in the frame
-    protected String name;//title of the frame
-    private int index;//index of the frame in the main panel's list
+    private int layoutFrom;//first block to lay out, see ensureLayout()
 
     private Rectangle dragPrev;//displays drag operation
     
@@ -66,16 +67,69 @@ public class ProcessFrame {
     protected boolean selected;//frame is selected
             
 
-    public ProcessFrame(String name, int index) {
+    public ProcessFrame(ProcedureFrame frame) {
         blocks = new ArrayList<>();
-        this.index = index;
-        this.name = name;
+        this.frame = frame;
         dragOp = false;
         validSwitch = false;
         onHead= false;
         selected = false;
 
         setFrameRectangles();
+        List<Step> steps = frame.getSteps();
+        blocks.ensureCapacity(steps.size());
+        for (Step aStep : steps) {//show the frame's steps
+            blocks.add(new ProcessBlock(blocks.size(), aStep, this));
+        }
+        layoutFrom = 0;//laid out once, when first painted or hit-tested
+    }
+
+    /**
+     * Copies a frame's looks for painting an area on another thread, later
+     * changes to the frame don't affect the copy. Only the blocks painted in
+     * the area, and the last one, are copied, the rest are left null.
+     *
+     * @param toCopy frame to copy
+     * @param clip area to paint
+     */
+    private ProcessFrame(ProcessFrame toCopy, Rectangle clip) {
+        toCopy.ensureLayout();
+        layoutFrom = Integer.MAX_VALUE;
+        frame = toCopy.frame;
+        frameRectangle = new Rectangle(toCopy.frameRectangle);
+        headerRectangle = toCopy.headerRectangle == null ? null
+                : new Rectangle(toCopy.headerRectangle);
+        position = new Point(toCopy.position);
+        size = new Dimension(toCopy.size);
+        dragPrev = toCopy.dragPrev == null ? null : new Rectangle(toCopy.dragPrev);
+        dragOp = toCopy.dragOp;
+        validSwitch = toCopy.validSwitch;
+        onHead = toCopy.onHead;
+        selected = toCopy.selected;
+
+        /*Same columns as paintSelf(), widened for the arrows*/
+        int count = toCopy.blocks.size();
+        int first = Math.max(0, ProcessBlock.getColumn(clip.x - PAINT_MARGIN) - 1);
+        int last = Math.min(count - 1, ProcessBlock.getColumn(clip.x
+                + clip.width + PAINT_MARGIN) + 2);
+        blocks = new ArrayList<>(Collections.nCopies(count, (ProcessBlock) null));
+        for (int i = first; i <= last; i++) {
+            blocks.set(i, toCopy.blocks.get(i).copyForPaint(this));
+        }
+        if (count > 0 && blocks.get(count - 1) == null) {//see getPaintBounds()
+            blocks.set(count - 1, toCopy.blocks.get(count - 1).copyForPaint(this));
+        }
+    }
+
+    /**
+     * Copies the frame for painting an area on another thread
+     *
+     * @param clip area to paint
+     *
+     * @return copy of the frame
+     */
+    ProcessFrame copyForPaint(Rectangle clip) {
+        return new ProcessFrame(this, clip);
     }
 
     /**
@@ -83,29 +137,53 @@ public class ProcessFrame {
      */
     protected final void setFrameRectangles() {
 
-        /*size depends on screen size, modified by rendering ratios*/
-        GraphicsDevice gd = GraphicsEnvironment.getLocalGraphicsEnvironment().
-                getDefaultScreenDevice();
-        int width = gd.getDisplayMode().getWidth();
-        int height = (int) (gd.getDisplayMode().getHeight() * screenRatio);
+        /*size depends on screen size and zoom, see LayoutMetrics*/
+        LayoutMetrics metrics = LayoutMetrics.get();
+        int width = metrics.frameWidth;
+        int height = metrics.frameHeight;
 
-        position = new Point(XOFFSET, index * (height + height / 8) + height / 8);
+        position = new Point(XOFFSET, frame.getIndex() * (height + height / 8)
+                + height / 8);
         size = new Dimension(width, height);
         frameRectangle = new Rectangle(position, size);
     }
 
     /**
-     * Sets new zoom level for the frame AND all of its contents
-     *
-     * @param newPerc new zoom percentage
+     * Lays out the frame AND all of its contents again, after the zoom level,
+     * the display or the frame's index has changed. The blocks are laid out
+     * when they are next needed.
      */
-    protected void resize(double newPerc) {
-        ProcessFrame.screenRatio = newPerc;
+    protected void relayout() {
         setFrameRectangles();//recalculate all rendering details
-        for (ProcessBlock aBlock : blocks) {
-            aBlock.setRectangles(frameRectangle.y);//recalculate all contents
-            checkWidth();//resize the frame if needed
+        invalidateLayout(0);
+    }
+
+    /**
+     * Marks the blocks from a position onwards as out of place
+     *
+     * @param from first block to lay out again
+     */
+    private void invalidateLayout(int from) {
+        layoutFrom = Math.min(layoutFrom, from);
+    }
+
+    /**
+     * Lays out the blocks marked by invalidateLayout(), and widens the frame
+     * to fit them, in a single pass. Called before the frame or its blocks are
+     * painted or hit-tested, so any number of edits cost one layout.
+     */
+    void ensureLayout() {
+        if (layoutFrom >= blocks.size()) {
+            return;
+        }
+        int from = layoutFrom;
+        layoutFrom = Integer.MAX_VALUE;//block getters call back in here
+        for (int i = from; i < blocks.size(); i++) {
+            ProcessBlock aBlock = blocks.get(i);
+            aBlock.setIndex(i);
+            aBlock.setRectangles(frameRectangle.y);
         }
+        checkWidth();//resize the frame if needed
     }
 
     /**
@@ -115,17 +193,32 @@ public class ProcessFrame {
      * @param textMetrics text font rendering details
      */
     public void paintSelf(Graphics2D g2D, FontMetrics textMetrics) {
-        int textHeight = textMetrics.getHeight();
-        int textWidth = textMetrics.stringWidth(name);
+        paintSelf(g2D, textMetrics, null, null);
+    }
 
-        headerRectangle = new Rectangle(position.x, position.y - textHeight - 4,
-                textWidth + 10, textHeight + 4);
+    /**
+     * Paints itself on a JComponent, skipping the blocks that fall outside of
+     * the area being painted
+     *
+     * @param g2D painter of the component
+     * @param textMetrics text font rendering details
+     * @param clip area being painted, null to paint all blocks
+     * @param cache images of blocks to paint from, null to paint directly
+     * 
+     * @return number of blocks painted
+     */
+    int paintSelf(Graphics2D g2D, FontMetrics textMetrics, Rectangle clip,
+            BlockImageCache cache) {
+        ensureLayout();
+        String name = frame.getName();
+        int textHeight = textMetrics.getHeight();
+        setHeaderRectangle(textMetrics);
 
         g2D.setColor(Color.WHITE);
         g2D.fill(frameRectangle);
         g2D.setColor(Color.BLACK);
 
-        if (index == 0) {//main process
+        if (frame.getIndex() == 0) {//main process
             g2D.draw(frameRectangle);
             g2D.setColor(Color.WHITE);
             g2D.fill(headerRectangle);
@@ -159,30 +252,28 @@ public class ProcessFrame {
         g2D.drawString(name, headerRectangle.x + 5, headerRectangle.y
                 + textHeight);
 
+        /*Only blocks in the clip's columns, see ProcessBlock.getColumn()*/
+        int first = 0, last = blocks.size() - 1;
+        if (clip != null) {
+            first = Math.max(first, ProcessBlock.getColumn(clip.x - PAINT_MARGIN));
+            last = Math.min(last, ProcessBlock.getColumn(clip.x + clip.width
+                    + PAINT_MARGIN) + 1);
+        }
+
         /*Draw blocks and arrows between blocks*/
-        for (int i = 0; i < blocks.size(); i++) {
-            blocks.get(i).paintSelf(g2D, textMetrics);//draw block
+        for (int i = first; i <= last; i++) {
+            if (cache != null) {//draw block
+                cache.paint(blocks.get(i), g2D, textMetrics);
+            } else {
+                blocks.get(i).paintSelf(g2D, textMetrics);
+            }
             if (i > 0) {//first block doesn't need arrows
-                ProcessBlock previous = blocks.get(i - 1);
-                Rectangle prevRec = previous.getMainRectangle();
-                int lineWidth = (int) (ProcessFrame.BLOCKGAP * prevRec.width);
-
-                int startX = prevRec.x + prevRec.width;
-                int endX = prevRec.x + prevRec.width + lineWidth;
-
-                g2D.drawLine(startX, prevRec.y + prevRec.height / 2, endX,
-                        prevRec.y + prevRec.height / 2);
-
-                int touchX = endX;
-                int touchY = prevRec.height / 2 + prevRec.y;
-                int arrOffset = prevRec.height / 10;
-                int xpoints[] = {touchX - arrOffset, touchX, touchX - arrOffset};
-                int ypoints[] = {touchY - arrOffset, touchY, touchY + arrOffset};
-                int npoints = 3;
-
-                g2D.fillPolygon(xpoints, ypoints, npoints);
+                paintArrow(g2D, i);
             }
         }
+        if (first <= last && last + 1 < blocks.size()) {//arrow leaving the clip
+            paintArrow(g2D, last + 1);
+        }
         if (dragOp) {//render drag indication
             Stroke prev = g2D.getStroke();
             Stroke dashed = new BasicStroke(4, BasicStroke.CAP_BUTT,
@@ -198,6 +289,59 @@ public class ProcessFrame {
             g2D.draw(dragPrev);
             g2D.setStroke(prev);
         }
+        return Math.max(0, last - first + 1);
+    }
+
+    /**
+     * Draws the arrow leading to a block from the previous one
+     *
+     * @param g2D painter of the component
+     * @param i index of the block, at least 1
+     */
+    private void paintArrow(Graphics2D g2D, int i) {
+        ProcessBlock previous = blocks.get(i - 1);
+        Rectangle prevRec = previous.getMainRectangle();
+        int lineWidth = (int) (ProcessFrame.BLOCKGAP * prevRec.width);
+
+        int startX = prevRec.x + prevRec.width;
+        int endX = prevRec.x + prevRec.width + lineWidth;
+
+        g2D.drawLine(startX, prevRec.y + prevRec.height / 2, endX,
+                prevRec.y + prevRec.height / 2);
+
+        int touchX = endX;
+        int touchY = prevRec.height / 2 + prevRec.y;
+        int arrOffset = prevRec.height / 10;
+        int xpoints[] = {touchX - arrOffset, touchX, touchX - arrOffset};
+        int ypoints[] = {touchY - arrOffset, touchY, touchY + arrOffset};
+        int npoints = 3;
+
+        g2D.fillPolygon(xpoints, ypoints, npoints);
+    }
+
+    /**
+     * Returns the area the frame paints on, including its header, all of its
+     * blocks and any drag indication
+     *
+     * @param headerHeight height of the frame headers
+     *
+     * @return painted area
+     */
+    protected Rectangle getPaintBounds(int headerHeight) {
+        ensureLayout();
+        Rectangle bounds = new Rectangle(frameRectangle);
+        bounds.add(new Point(frameRectangle.x, frameRectangle.y - headerHeight));
+        if (headerRectangle != null) {
+            bounds.add(headerRectangle);
+        }
+        if (!blocks.isEmpty()) {
+            bounds.add(blocks.get(blocks.size() - 1).getMainRectangle());
+        }
+        if (dragOp && dragPrev != null) {
+            bounds.add(dragPrev);
+        }
+        bounds.grow(PAINT_MARGIN, PAINT_MARGIN);
+        return bounds;
     }
 
     /**
@@ -213,12 +357,8 @@ public class ProcessFrame {
             int aIndex = blocks.indexOf(a);
             int bIndex = blocks.indexOf(b);
             Collections.swap(blocks, aIndex, bIndex);
-
-            a.setIndex(bIndex);//change a parameters
-            a.setRectangles(position.y);
-
-            b.setIndex(aIndex);//change b parameters
-            b.setRectangles(position.y);
+            frame.swapSteps(aIndex, bIndex);
+            invalidateLayout(Math.min(aIndex, bIndex));
             return true;
         } else {
             return false;
@@ -232,34 +372,111 @@ public class ProcessFrame {
      * @param index position of the block in the list of blocks
      */
     protected void removeBlock(int index) {
-        int temp;
-        blocks.remove(index);
-        for (int i = index; i < blocks.size(); i++) {
-            temp = blocks.get(i).getIndex();
-            blocks.get(i).setIndex(temp - 1);//update indexes
-            blocks.get(i).setRectangles(frameRectangle.y);//update all blocks
-        }
+        editBlocks(Collections.singletonList(BlockEdit.remove(index)));
     }
     
     /**
-     * Inserts a new block between two other ones
+     * Inserts a step between two other ones
      *
      * @param pos position of the new block
-     * @param blockName name of the new block
-     * @param blockAttr attributes of the new block
-     * @param entName entity of the new block
+     * @param step step shown by the new block
      */
-    protected void insertBlock(int pos, String blockName, String entName, 
-            String blockAttr){
-        ProcessBlock blockToInsert = new ProcessBlock(pos, frameRectangle.y, 
-                blockName, entName, blockAttr, this);
-        blocks.add(pos, blockToInsert);
-        
-        for (int i = pos + 1; i < blocks.size(); i++) {
-            blocks.get(i).setIndex(i);//update indexes
-            blocks.get(i).setRectangles(frameRectangle.y);//update all blocks
+    protected void insertBlock(int pos, Step step){
+        editBlocks(Collections.singletonList(BlockEdit.insert(pos, step)));
+    }
+
+    /**
+     * Moves a block to another position, keeping its state
+     *
+     * @param from position of the block
+     * @param to position of the block after the move
+     */
+    protected void moveBlock(int from, int to) {
+        editBlocks(Collections.singletonList(BlockEdit.move(from, to)));
+    }
+
+    /**
+     * Applies a batch of edits to the blocks, in order, and to the frame's
+     * steps along with them. The batch is checked first, so either all of the
+     * edits are applied or none of them is, and the blocks are laid out once
+     * afterwards.
+     *
+     * @param edits edits to apply
+     *
+     * @throws IndexOutOfBoundsException if an edit's position is out of range
+     */
+    protected void editBlocks(List<BlockEdit> edits) {
+        int size = blocks.size();
+        for (BlockEdit anEdit : edits) {//check positions against the size then
+            if (anEdit.from >= size || (anEdit.to > size
+                    - (anEdit.from < 0 ? 0 : 1))) {
+                throw new IndexOutOfBoundsException("Edit out of range: from "
+                        + anEdit.from + " to " + anEdit.to + ", size " + size);
+            }
+            size += (anEdit.to >= 0 ? 1 : 0) - (anEdit.from >= 0 ? 1 : 0);
+        }
+
+        int first = Integer.MAX_VALUE;//first block out of place
+        for (BlockEdit anEdit : edits) {
+            Step step = anEdit.step;
+            ProcessBlock block = null;
+            if (anEdit.from >= 0) {
+                block = blocks.remove(anEdit.from);
+                step = frame.removeStep(anEdit.from);
+                first = Math.min(first, anEdit.from);
+            }
+            if (anEdit.to >= 0) {
+                if (block == null) {
+                    block = new ProcessBlock(anEdit.to, step, this);
+                }
+                blocks.add(anEdit.to, block);
+                frame.insertStep(anEdit.to, step);
+                first = Math.min(first, anEdit.to);
+            }
         }
-        checkWidth();
+        invalidateLayout(first);
+    }
+
+    /**
+     * Lays out the header to fit the frame's name, as painting does
+     *
+     * @param textMetrics text font rendering details
+     */
+    void setHeaderRectangle(FontMetrics textMetrics) {
+        int headerHeight = getHeaderHeight(textMetrics);
+        headerRectangle = new Rectangle(position.x, position.y - headerHeight,
+                textMetrics.stringWidth(frame.getName()) + 10, headerHeight);
+    }
+
+    /**
+     * Returns the height of the frame headers, drawn right above the frames
+     *
+     * @param textMetrics text font rendering details
+     *
+     * @return header height
+     */
+    static int getHeaderHeight(FontMetrics textMetrics) {
+        return textMetrics.getHeight() + 4;
+    }
+
+    /**
+     * Finds the block containing a point in constant time
+     *
+     * @param p point on the panel
+     *
+     * @return block under the point, null if none
+     */
+    protected ProcessBlock getBlockAt(Point p) {
+        ensureLayout();
+        /*Rounding may put the block one column off*/
+        int column = ProcessBlock.getColumn(p.x);
+        int last = Math.min(column + 1, blocks.size() - 1);
+        for (int i = Math.max(column - 1, 0); i <= last; i++) {
+            if (blocks.get(i).getMainRectangle().contains(p)) {
+                return blocks.get(i);
+            }
+        }
+        return null;
     }
 
     protected Rectangle getFrameHeader(){
@@ -267,6 +484,7 @@ public class ProcessFrame {
     }
     
     public Rectangle getFrameRectangle() {
+        ensureLayout();
         return frameRectangle;
     }
 
@@ -280,51 +498,129 @@ public class ProcessFrame {
      * @return result of the add operation
      */
     public ProcessBlock addBlock(String blockName, String entName, String blockAttr) {
-        ProcessBlock blockToAdd = new ProcessBlock(blocks.size(),
-                frameRectangle.y, blockName, entName, blockAttr, this);
+        Step step = frame.addStep(blockName, entName, blockAttr);
+        ProcessBlock blockToAdd = new ProcessBlock(blocks.size(), step, this);
         blocks.add(blockToAdd);
-        checkWidth();
+        invalidateLayout(blocks.size() - 1);
 
         return blockToAdd;
     }
     
     /**
-     * Checks if the width of the frame needs to be increased
+     * Checks if the width of the frame needs to be increased, and widens it by
+     * two blocks at a time until the last block fits
      */
     private void checkWidth(){
-        ProcessBlock lastBlock = blocks.get(blocks.size() - 1);
-        if (!frameRectangle.contains(lastBlock.getMainRectangle())){
-            frameRectangle.width += 2*lastBlock.getMainRectangle().width;
+        Rectangle lastRect = blocks.get(blocks.size() - 1).getMainRectangle();
+        int missing = lastRect.x + lastRect.width
+                - (frameRectangle.x + frameRectangle.width);
+        if (missing > 0){
+            int step = 2*lastRect.width;
+            frameRectangle.width += (missing + step - 1) / step * step;
         }
         
     }
 
     public ArrayList<ProcessBlock> getBlocks() {
+        ensureLayout();
         return this.blocks;
     }
 
+    protected Rectangle getDragPrev() {
+        return this.dragPrev;
+    }
+
     protected void setDragPrev(Rectangle dragPrev) {
         this.dragPrev = dragPrev;
     }
     
-    protected void setOnHead(boolean onHead){
+    /*State setters return true if the state has changed*/
+
+    protected boolean setOnHead(boolean onHead){
+        boolean changed = this.onHead != onHead;
         this.onHead = onHead;
+        return changed;
     }
 
-    protected void isSelected(boolean selected){
+    protected boolean isSelected(boolean selected){
+        boolean changed = this.selected != selected;
         this.selected = selected;
+        return changed;
     }
     
     protected int getIndex(){
-        return this.index;
+        return frame.getIndex();
     }
     
     protected void setIndex(int index){
-        this.index = index;
+        frame.setIndex(index);
     }
     
     public String getName(){
-        return this.name;
+        return frame.getName();
+    }
+
+    protected void setName(String name){
+        frame.setName(name);
+    }
+
+    public ProcedureFrame getProcedureFrame(){
+        return this.frame;
+    }
+
+    /**
+     * One change to the blocks of a frame, see editBlocks()
+     */
+    protected static final class BlockEdit {
+
+        private final int from;//block to take out, -1 if none
+        private final int to;//position to put a block at, -1 if none
+        private final Step step;//step of a new block
+
+        private BlockEdit(int from, int to, Step step) {
+            this.from = from;
+            this.to = to;
+            this.step = step;
+        }
+
+        /**
+         * @param pos position of the new block
+         * @param step step shown by the new block
+         *
+         * @return edit inserting a block
+         */
+        public static BlockEdit insert(int pos, Step step) {
+            if (pos < 0) {
+                throw new IndexOutOfBoundsException("Position: " + pos);
+            }
+            return new BlockEdit(-1, pos, Objects.requireNonNull(step));
+        }
+
+        /**
+         * @param pos position of the block
+         *
+         * @return edit removing a block
+         */
+        public static BlockEdit remove(int pos) {
+            if (pos < 0) {
+                throw new IndexOutOfBoundsException("Position: " + pos);
+            }
+            return new BlockEdit(pos, -1, null);
+        }
+
+        /**
+         * @param from position of the block
+         * @param to position of the block after the move
+         *
+         * @return edit moving a block
+         */
+        public static BlockEdit move(int from, int to) {
+            if (from < 0 || to < 0) {
+                throw new IndexOutOfBoundsException("Positions: " + from
+                        + ", " + to);
+            }
+            return new BlockEdit(from, to, null);
+        }
     }
 
 }
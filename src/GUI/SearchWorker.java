@@ -0,0 +1,74 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Application.SearchIndex;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+
+/**
+ * Builds the search index of a model on a background thread, from a snapshot
+ * taken on the EDT
+ *
+ * @author Christos Darisaplis
+ */
+public class SearchWorker extends SwingWorker<SearchIndex, Void> {
+
+    private final SearchIndex index;//holds the snapshot to index
+    private final PicturesqueFrame owner;//notified when the index is built
+
+    /**
+     * Creates the worker, indexing starts with execute()
+     *
+     * @param index index created on the EDT
+     * @param owner application frame to notify when the index is built
+     */
+    public SearchWorker(SearchIndex index, PicturesqueFrame owner) {
+        this.index = index;
+        this.owner = owner;
+    }
+
+    @Override
+    protected SearchIndex doInBackground() {
+        return index.build();
+    }
+
+    /**
+     * Hands the index over to the application frame, runs on the EDT
+     */
+    @Override
+    protected void done() {
+        SearchIndex built = null;
+        try {
+            built = get();
+        } catch (InterruptedException | ExecutionException ex) {//show exceptions
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            System.out.println(Arrays.toString(cause.getStackTrace()));
+            System.out.println(cause.getMessage());
+        }
+        owner.searchIndexBuilt(built);
+    }
+}
@@ -0,0 +1,197 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Line breaks of a text drawn in a block, kept until the text, the font or the
+ * room for it changes. Only the lines that fit are broken, so a long text costs
+ * no more than a short one once it fills its room. Character widths are
+ * measured once per font and shared by all blocks. Lines may be asked for
+ * from several rendering threads at once.
+ *
+ * @author Christos Darisaplis
+ */
+final class TextLines {
+
+    private static final int LATIN_CHARS = 256;//chars with a width table
+    private static final Map<FontKey, Advances> ADVANCES
+            = new ConcurrentHashMap<>();
+
+    private volatile Broken current;//lines drawn last, null if none yet
+
+    TextLines() {
+        current = null;
+    }
+
+    /**
+     * Returns the lines of a text, breaking it again only if anything has
+     * changed since the last call
+     *
+     * @param toWrite text to break
+     * @param textMetr font rendering details
+     * @param width width of the block
+     * @param maxLines lines that fit, the rest of the text is left out
+     *
+     * @return lines to draw
+     */
+    String[] getLines(String toWrite, FontMetrics textMetr, int width,
+            int maxLines) {
+        FontKey key = new FontKey(textMetr);
+        Broken broken = current;
+        if (broken == null || toWrite != broken.text && !toWrite.equals(broken.text)
+                || !key.equals(broken.font) || width != broken.width
+                || maxLines != broken.maxLines) {
+            broken = new Broken(toWrite, key, width, maxLines,
+                    breakLines(toWrite, advances(key, textMetr), width, maxLines));
+            current = broken;
+        }
+        return broken.lines;
+    }
+
+    /**
+     * Splits a string based on block width, a line ends when its width would
+     * come close to the block's, or at a line break
+     */
+    private static String[] breakLines(String toWrite, Advances advances,
+            int width, int maxLines) {
+        List<String> split = new ArrayList<>();
+        int charSum = 0, j = 0, i;
+        for (i = 0; i < toWrite.length() && split.size() < maxLines; i++) {
+            char curChar = toWrite.charAt(i);
+            int charWidth = advances.charWidth(curChar);
+            charSum += charWidth;
+            /*Split here*/
+            if (charSum >= width - 5 - charWidth || curChar == '\n') {
+                split.add(toWrite.substring(j, i));
+                charSum = 0;
+                j = i;
+            }
+        }
+        /*Last segment (or the whole string if it fits in one line)*/
+        if (split.size() < maxLines) {
+            split.add(toWrite.substring(j, i));
+        }
+        return split.toArray(new String[split.size()]);
+    }
+
+    /**
+     * Returns the shared character widths of a font
+     */
+    private static Advances advances(FontKey key, FontMetrics textMetr) {
+        Advances advances = ADVANCES.get(key);
+        if (advances == null) {
+            advances = ADVANCES.computeIfAbsent(key, k -> new Advances(textMetr));
+        }
+        return advances;
+    }
+
+    /**
+     * Lines of a text and what they have been broken for
+     */
+    private static final class Broken {
+
+        private final String text;
+        private final FontKey font;
+        private final int width, maxLines;
+        private final String[] lines;
+
+        private Broken(String text, FontKey font, int width, int maxLines,
+                String[] lines) {
+            this.text = text;
+            this.font = font;
+            this.width = width;
+            this.maxLines = maxLines;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Character widths of a font, measured when first needed. Writes from
+     * several threads store the same values, so no locking is needed.
+     */
+    private static final class Advances {
+
+        private final FontMetrics textMetr;
+        private final int[] latin;//widths of the first chars, -1 if unknown
+        private final Map<Character, Integer> others;
+
+        private Advances(FontMetrics textMetr) {
+            this.textMetr = textMetr;
+            latin = new int[LATIN_CHARS];
+            Arrays.fill(latin, -1);
+            others = new ConcurrentHashMap<>();
+        }
+
+        private int charWidth(char c) {
+            if (c < LATIN_CHARS) {
+                int width = latin[c];
+                if (width < 0) {
+                    width = textMetr.charWidth(c);
+                    latin[c] = width;
+                }
+                return width;
+            }
+            return others.computeIfAbsent(c, textMetr::charWidth);
+        }
+    }
+
+    /**
+     * Font and rendering settings, which character widths depend on
+     */
+    private static final class FontKey {
+
+        private final Font font;
+        private final FontRenderContext context;
+
+        private FontKey(FontMetrics textMetr) {
+            font = textMetr.getFont();
+            context = textMetr.getFontRenderContext();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FontKey)) {
+                return false;
+            }
+            FontKey other = (FontKey) obj;
+            return font.equals(other.font) && context.equals(other.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(font, context);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+
+/**
+ * Renders the workspace in fixed size tiles on background threads, so the
+ * event dispatch thread only copies finished tiles on screen. Tiles are
+ * rendered from copies of the frames in them, taken on the event dispatch
+ * thread, and tiles next to the visible area are rendered ahead of time.
+ * A changed area only makes the tiles under it stale, and a stale tile is
+ * shown until its new image is ready. Tiles that have never been rendered
+ * are shown as a plain placeholder. All methods are called on the event
+ * dispatch thread.
+ *
+ * @author Christos Darisaplis
+ */
+final class TileRenderer {
+
+    static final int TILE_SIZE = 256;//pixels
+    private static final int PREFETCH = 1;//tiles rendered around the view
+    private static final int KEEP = 3;//tiles kept around the view
+    private static final Color PLACEHOLDER = new Color(225, 225, 225);
+
+    private final WorkspacePanel panel;
+    private final ExecutorService workers;
+    private final Map<Long, Tile> tiles;//by tile row and column
+
+    /**
+     * Creates the renderer and its worker threads
+     *
+     * @param panel panel the tiles are shown on
+     * @param threads number of worker threads
+     */
+    TileRenderer(WorkspacePanel panel, int threads) {
+        this.panel = panel;
+        workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread worker = new Thread(task, "Tile renderer");
+            worker.setDaemon(true);
+            worker.setPriority(Thread.NORM_PRIORITY - 1);//EDT comes first
+            return worker;
+        });
+        tiles = new HashMap<>();
+    }
+
+    /**
+     * Copies the tiles in an area on screen, and starts rendering the stale
+     * ones along with the ones next to the visible area
+     *
+     * @param g2D painter of the panel
+     * @param clip area being painted
+     * @param visible visible area of the panel
+     * @param index frames of the panel
+     * @param font font of the panel
+     * @param background background color of the panel
+     *
+     * @return number of tiles copied and of placeholders painted
+     */
+    int[] paint(Graphics2D g2D, Rectangle clip, Rectangle visible,
+            FrameIndex index, Font font, Color background) {
+        Job job = new Job(index, font, background,
+                g2D.getTransform().getScaleX());
+        int copied = 0, placeholders = 0;
+        for (Tile tile : tilesIn(clip)) {
+            if (tile.image != null) {//stale tiles are shown until replaced
+                g2D.drawImage(tile.image, tile.bounds.x, tile.bounds.y,
+                        TILE_SIZE, TILE_SIZE, null);
+                copied++;
+            } else {
+                g2D.setColor(PLACEHOLDER);
+                g2D.fill(tile.bounds);
+                placeholders++;
+            }
+            schedule(tile, job);
+        }
+
+        /*Render ahead around the visible area, forget tiles far from it*/
+        Rectangle ahead = new Rectangle(visible);
+        ahead.grow(PREFETCH * TILE_SIZE, PREFETCH * TILE_SIZE);
+        for (Tile tile : tilesIn(ahead)) {
+            schedule(tile, job);
+        }
+        Rectangle kept = new Rectangle(visible);
+        kept.grow(KEEP * TILE_SIZE, KEEP * TILE_SIZE);
+        Iterator<Tile> it = tiles.values().iterator();
+        while (it.hasNext()) {
+            Tile tile = it.next();
+            if (!tile.bounds.intersects(kept)) {
+                tile.dropped = true;
+                it.remove();
+            }
+        }
+        return new int[]{copied, placeholders};
+    }
+
+    /**
+     * Makes the tiles under a changed area stale
+     *
+     * @param changed changed area of the panel
+     */
+    void invalidate(Rectangle changed) {
+        for (Tile tile : tiles.values()) {
+            if (tile.bounds.intersects(changed)) {
+                tile.version++;
+            }
+        }
+    }
+
+    /**
+     * Returns the tiles covering an area, creating the missing ones
+     */
+    private List<Tile> tilesIn(Rectangle area) {
+        List<Tile> covering = new ArrayList<>();
+        int firstCol = Math.max(0, Math.floorDiv(area.x, TILE_SIZE));
+        int firstRow = Math.max(0, Math.floorDiv(area.y, TILE_SIZE));
+        int lastCol = Math.floorDiv(area.x + area.width - 1, TILE_SIZE);
+        int lastRow = Math.floorDiv(area.y + area.height - 1, TILE_SIZE);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                long key = ((long) row << 32) | col;
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    tile = new Tile(new Rectangle(col * TILE_SIZE,
+                            row * TILE_SIZE, TILE_SIZE, TILE_SIZE));
+                    tiles.put(key, tile);
+                }
+                covering.add(tile);
+            }
+        }
+        return covering;
+    }
+
+    /**
+     * Starts rendering a tile if it's stale and not being rendered already
+     */
+    private void schedule(Tile tile, Job job) {
+        if (tile.pending || tile.renderedVersion == tile.version
+                && tile.scale == job.scale) {
+            return;
+        }
+        tile.pending = true;
+        int version = tile.version;
+
+        List<ProcessFrame> copies = new ArrayList<>();
+        for (ProcessFrame aFrame : job.index.framesIn(tile.bounds)) {
+            copies.add(aFrame.copyForPaint(tile.bounds));
+        }
+        workers.execute(() -> {
+            BufferedImage image = null;
+            if (!tile.dropped) {
+                try {
+                    image = render(tile.bounds, copies, job);
+                } catch (RuntimeException ex) {//shown as stale, tried again
+                    System.out.println(ex.getMessage());
+                }
+            }
+            BufferedImage rendered = image;
+            SwingUtilities.invokeLater(() -> finished(tile, version, job.scale,
+                    rendered));
+        });
+    }
+
+    /**
+     * Keeps a rendered tile and shows it
+     */
+    private void finished(Tile tile, int version, double scale,
+            BufferedImage image) {
+        tile.pending = false;
+        if (image != null && !tile.dropped) {
+            tile.image = image;//newer than the last one, even if stale
+            tile.renderedVersion = version;
+            tile.scale = scale;
+            panel.repaintTile(tile.bounds);
+        }
+    }
+
+    /**
+     * Renders copies of the frames in a tile, the same way the panel paints
+     * them, in device pixels
+     */
+    private static BufferedImage render(Rectangle bounds,
+            List<ProcessFrame> frames, Job job) {
+        int size = (int) Math.ceil(TILE_SIZE * job.scale);
+        BufferedImage image = new BufferedImage(size, size,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2D = image.createGraphics();
+        g2D.setColor(job.background);
+        g2D.fillRect(0, 0, size, size);
+        g2D.scale(job.scale, job.scale);
+        g2D.translate(-bounds.x, -bounds.y);
+        g2D.clip(bounds);
+
+        g2D.setRenderingHint(
+                RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2D.setFont(job.font);
+        g2D.setColor(Color.BLACK);
+        FontMetrics textMetrics = g2D.getFontMetrics(job.font);
+        for (ProcessFrame aFrame : frames) {
+            aFrame.paintSelf(g2D, textMetrics, bounds, null);
+        }
+        g2D.dispose();
+        return image;
+    }
+
+    /**
+     * Settings tiles are rendered with, taken when painting
+     */
+    private static final class Job {
+
+        private final FrameIndex index;
+        private final Font font;
+        private final Color background;
+        private final double scale;//display scale
+
+        private Job(FrameIndex index, Font font, Color background,
+                double scale) {
+            this.index = index;
+            this.font = font;
+            this.background = background;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * A tile and its last rendered image
+     */
+    private static final class Tile {
+
+        private final Rectangle bounds;//area of the panel
+        private BufferedImage image;//null until first rendered
+        private int version;//increased whenever the area changes
+        private int renderedVersion;//version the image shows
+        private double scale;//display scale the image is rendered for
+        private boolean pending;//being rendered
+        private volatile boolean dropped;//forgotten, no need to render
+
+        private Tile(Rectangle bounds) {
+            this.bounds = bounds;
+            image = null;
+            version = 0;
+            renderedVersion = -1;
+            scale = 0;
+            pending = false;
+            dropped = false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package GUI;
+
+import Application.ModelValidator;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+
+/**
+ * Validates the changes of a model on a background thread, from a snapshot
+ * taken on the EDT
+ *
+ * @author Christos Darisaplis
+ */
+public class ValidationWorker extends SwingWorker<ModelValidator.Result, Void> {
+
+    private final ModelValidator validator;
+    private final ModelValidator.Changes changes;//snapshot to validate
+    private final WorkspacePanel panel;//shows the problems found
+
+    /**
+     * Creates the worker, validation starts with execute()
+     *
+     * @param validator validator of the model
+     * @param changes snapshot taken on the EDT
+     * @param panel panel to show the problems found
+     */
+    public ValidationWorker(ModelValidator validator,
+            ModelValidator.Changes changes, WorkspacePanel panel) {
+        this.validator = validator;
+        this.changes = changes;
+        this.panel = panel;
+    }
+
+    @Override
+    protected ModelValidator.Result doInBackground() {
+        return validator.validate(changes);
+    }
+
+    /**
+     * Hands the problems found over to the panel, runs on the EDT
+     */
+    @Override
+    protected void done() {
+        ModelValidator.Result result = null;
+        try {
+            result = get();
+        } catch (InterruptedException | ExecutionException ex) {//show exceptions
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            System.out.println(Arrays.toString(cause.getStackTrace()));
+            System.out.println(cause.getMessage());
+        }
+        panel.validationFinished(validator, result);
+    }
+}
@@ -24,6 +24,14 @@
  */
 package GUI;
 
+import Application.CallGraph;
+import Application.ModelJournal;
+import Application.ModelValidator;
+import Model.Entity;
+import Model.Procedure;
+import Model.ProcedureFrame;
+import Model.Step;
+import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Font;
@@ -34,10 +42,24 @@ import static java.awt.MouseInfo.getPointerInfo;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.HierarchyBoundsAdapter;
+import java.awt.event.HierarchyEvent;
 import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.JEditorPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.ToolTipManager;
 import javax.swing.TransferHandler;
 import javax.swing.event.MouseInputAdapter;
 
@@ -50,12 +72,53 @@ public class WorkspacePanel extends JPanel {
 
     private Dimension size;//convenience variable, size of the panel
     private boolean dragOperation;//drag operation happening
-    private ArrayList<ProcessFrame> frames;//list of all frames
+    private Procedure model;//model shown
+    private ArrayList<ProcessFrame> frames;//views of all of the model's frames
+    private FrameIndex frameIndex;//finds frames and blocks under the pointer
+    private BlockImageCache blockCache;//rendered blocks, null if disabled
+    private TileRenderer tileRenderer;//null unless rendering in tiles
+    private MinimapPanel minimap;//null unless an overview is shown
+    private EditHistory history;//edits that can be undone
+    private ModelJournal journal;//null unless journaling the model
+    private File recoverySnapshot;//model left by the last run, null if none
+    private boolean fillingEditPane;//edit pane texts are being replaced
+    private ModelValidator validator;//checks the model shown
+    private ModelValidator.Result problems;//last validation, null if none
+    private ValidationWorker validationWorker;//running validation, null if none
+    private Timer validationTimer;//validates once edits have settled
+    private Timer displayTimer;//catches resolution and scaling changes
+
+    private boolean importing;//model is being imported, no editing allowed
+    private Procedure prevModel;//model before the import
+    private ArrayList<ProcessFrame> prevFrames;
+    private ProcessFrame mainPreview;//main process shown while it's imported
+    private int prevSubs;//subprocess count before the import
 
     protected static ProcessBlock selBlock;//selected block
     protected static ProcessFrame selFrame;//selected frame
+    private ProcessBlock hoverBlock;//block whose header is under the pointer
+    private ProcessFrame hoverFrame;//frame whose header is under the pointer
+
+    private int paintedItems;//frames and blocks drawn by the last paint
+    private int culledItems;//frames and blocks skipped by the last paint
 
     protected static final double DEFRATIO = 0.25;//default model ratio
+    protected static final String PAINT_STATS = "paintStats";//paint counters
+    protected static final String HISTORY = "history";//undo/redo changed
+    protected static final String CALL_GRAPH = "callGraph";//graph revalidated
+    private static final String BLOCK_CACHE_PROP = "picturesque.blockCacheMB";
+    private static final int BLOCK_CACHE_MB = 0;//default budget, 0 disables it
+    private static final String TILES_PROP = "picturesque.tiles";
+    private static final String UNDO_PROP = "picturesque.undoMB";
+    private static final int UNDO_MB = 8;//default undo/redo budget
+    private static final String JOURNAL_PROP = "picturesque.journalDir";
+    private static final int VALIDATION_DELAY = 250;//ms after the last edit
+    private static final int DISPLAY_CHECK_DELAY = 2000;//ms between checks
+    private static final Color FRAME_MARKER = new Color(230, 140, 0);
+    private static final Color BLOCK_MARKER = new Color(200, 30, 30);
+    private static final Cursor MOVE_CURSOR
+            = Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR);
+    private static final Cursor DEFAULT_CURSOR = Cursor.getDefaultCursor();
 
     private static int fontSize = 16;//starting font size
     private static int totalSubs = 1;//main process
@@ -65,14 +128,104 @@ public class WorkspacePanel extends JPanel {
 
         size = new Dimension(2000, 2000);
         dragOperation = false;
+        importing = false;
+        model = new Procedure();
         frames = new ArrayList<>();
         selBlock = null;
         selFrame = null;
 
         setTransferHandler(new TransferHandler("text"));//dnd support
-        frames.add(new ProcessFrame("Main Process", 0));
+        ProcedureFrame mainFrame = new ProcedureFrame("Main Process", 0);
+        model.addFrame(mainFrame);
+        frames.add(new ProcessFrame(mainFrame));
+        frameIndex = new FrameIndex(frames);
+        int cacheSize = Integer.getInteger(BLOCK_CACHE_PROP, BLOCK_CACHE_MB);
+        blockCache = cacheSize > 0
+                ? new BlockImageCache(cacheSize * 1024L * 1024L) : null;
+        if (Boolean.getBoolean(TILES_PROP)) {//render in the background
+            tileRenderer = new TileRenderer(this, Math.max(1,
+                    Runtime.getRuntime().availableProcessors() - 1));
+        }
+        validator = new ModelValidator(model);
+        validationTimer = new Timer(VALIDATION_DELAY, evt -> startValidation());
+        validationTimer.setRepeats(false);
+        displayTimer = new Timer(DISPLAY_CHECK_DELAY, evt -> checkDisplay());
+        history = new EditHistory(Integer.getInteger(UNDO_PROP, UNDO_MB)
+                * 1024L * 1024L, () -> {
+                    firePropertyChange(HISTORY, null, history);
+                    validationTimer.restart();//every edit is recorded
+                });
+        setJournal();
+        hoverBlock = null;
+        hoverFrame = null;
         setPreferredSize(size);
         setMouseListener();
+        setDisplayListener();
+        ToolTipManager.sharedInstance().registerComponent(this);//problems
+        validationTimer.start();
+    }
+
+    /**
+     * Starts journaling the model, only when the application is started with
+     * -Dpicturesque.journalDir=&lt;directory&gt;. If the directory holds a model
+     * to recover, journaling starts once it has been imported.
+     */
+    private void setJournal() {
+        String dir = System.getProperty(JOURNAL_PROP);
+        if (dir == null) {
+            return;
+        }
+        try {
+            journal = new ModelJournal(new File(dir));
+        } catch (IOException ex) {//go on without a journal
+            System.out.println(Arrays.toString(ex.getStackTrace()));
+            System.out.println(ex.getMessage());
+            return;
+        }
+        history.setJournal(journal);
+        recoverySnapshot = ModelJournal.findSnapshot(new File(dir));
+        if (recoverySnapshot == null) {
+            journal.reset(model);
+        }
+    }
+
+    /**
+     * Returns the snapshot of the model left by the last run, to be imported
+     * along with its journal
+     *
+     * @return snapshot, null if not journaling or there's nothing to recover
+     */
+    protected File getRecoverySnapshot() {
+        return recoverySnapshot;
+    }
+
+    /**
+     * Gives up on the model left by the last run, after its recovery has
+     * failed or been cancelled. Its snapshot and journal are set aside so the
+     * next generation doesn't delete them, and the model shown is journaled
+     * from now on. If they can't be set aside, journaling stays off for this
+     * run.
+     *
+     * @return new name of the snapshot, null if journaling is off
+     */
+    protected File abandonRecovery() {
+        if (journal == null || recoverySnapshot == null) {
+            return null;
+        }
+        File snapshot = recoverySnapshot;
+        recoverySnapshot = null;
+        try {
+            File kept = journal.setAside(snapshot);
+            journal.reset(model);
+            return kept;
+        } catch (IOException ex) {//keep the files, go on without a journal
+            System.out.println(Arrays.toString(ex.getStackTrace()));
+            System.out.println(ex.getMessage());
+            history.setJournal(null);
+            journal.close();
+            journal = null;
+            return null;
+        }
     }
 
     /**
@@ -83,17 +236,16 @@ public class WorkspacePanel extends JPanel {
      * @return result of add operation to the list
      */
     protected boolean addFrame(String name) {
-        ProcessFrame toAdd = new ProcessFrame(name, frames.size());
+        ProcedureFrame newFrame = new ProcedureFrame(name, frames.size());
+        model.addFrame(newFrame);
+        ProcessFrame toAdd = new ProcessFrame(newFrame);
         boolean res = frames.add(toAdd);
+        frameIndex.frameAdded(toAdd);
 
         totalSubs++;
-        if (selFrame != null) {//deselect prev frame 
-            selFrame.isSelected(false);
-        }
-        
-        selFrame = toAdd;
-        selFrame.isSelected(true);
-        repaint();
+        selectFrame(toAdd);//deselects prev frame
+        repaintFrame(toAdd);
+        repaintHeader(toAdd, true);
 
         return res;
     }
@@ -113,19 +265,217 @@ public class WorkspacePanel extends JPanel {
         g2D.setRenderingHint(
                 RenderingHints.KEY_TEXT_ANTIALIASING,
                 RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        Font font = new Font("TimesRoman", Font.BOLD, fontSize);
+        Font font = getPaintFont();
         g2D.setFont(font);
 
         // get metrics from the graphics
         FontMetrics textMetrics = g2D.getFontMetrics(font);
+        frameIndex.setHeaderHeight(ProcessFrame.getHeaderHeight(textMetrics));
 
 
-        /*draw all process frames*/
-        for (ProcessFrame aFrame : frames) {
-            aFrame.paintSelf(g2D, textMetrics);
+        /*draw only the process frames and blocks inside the clip*/
+        Rectangle clip = g2D.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        List<ProcessFrame> visible = frameIndex.framesIn(clip);
+        if (tileRenderer != null) {//only copy rendered tiles
+            for (ProcessFrame aFrame : visible) {//headers are hit-tested here
+                aFrame.setHeaderRectangle(textMetrics);
+            }
+            int[] tiles = tileRenderer.paint(g2D, clip, getVisibleRect(),
+                    frameIndex, font, getBackground());
+            paintProblems(g2D, visible, clip);
+            g2D.dispose();
+            setPaintStats(tiles[0], tiles[1]);
+            return;
+        }
+        int painted = visible.size();
+        int culled = frames.size() - visible.size();
+        for (ProcessFrame aFrame : visible) {
+            int blocks = aFrame.paintSelf(g2D, textMetrics, clip,
+                    blockCache);
+            painted += blocks;
+            culled += aFrame.getBlocks().size() - blocks;
         }
+        paintProblems(g2D, visible, clip);
 
         g2D.dispose();//finalize
+        setPaintStats(painted, culled);
+    }
+
+    /**
+     * Marks the frames and blocks with problems found by the last validation,
+     * on top of everything else. Frames changed since are left unmarked until
+     * they are validated again.
+     *
+     * @param g2D painter of the panel
+     * @param visible frames inside the clip
+     * @param clip area painted
+     */
+    private void paintProblems(Graphics2D g2D, List<ProcessFrame> visible,
+            Rectangle clip) {
+        if (problems == null) {
+            return;
+        }
+        for (ProcessFrame aFrame : visible) {
+            ProcedureFrame procFrame = aFrame.getProcedureFrame();
+            ModelValidator.FrameProblems found = problems.getProblems(procFrame);
+            if (found == null || !found.isCurrent(procFrame)) {
+                continue;
+            }
+            Rectangle header = aFrame.getFrameHeader();
+            if (found.getFrameProblem() != null && header != null) {
+                paintMarker(g2D, markerIn(header), FRAME_MARKER, clip);
+            }
+            List<ProcessBlock> blocks = aFrame.getBlocks();
+            int count = Math.min(found.getBlockCount(), blocks.size());
+            for (int i = 0; i < count; i++) {
+                if (found.getBlockProblem(i) != null) {
+                    paintMarker(g2D, markerIn(blocks.get(i).getMainRectangle()),
+                            BLOCK_MARKER, clip);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return area of the problem marker of a block or header
+     */
+    private static Rectangle markerIn(Rectangle area) {
+        int size = Math.min(Math.max(fontSize, 8), area.height - 4);
+        return new Rectangle(area.x + area.width - size - 2, area.y + 2, size,
+                size);
+    }
+
+    /**
+     * Paints a problem marker, a circle with an exclamation mark
+     */
+    private static void paintMarker(Graphics2D g2D, Rectangle marker,
+            Color color, Rectangle clip) {
+        if (!marker.intersects(clip)) {
+            return;
+        }
+        g2D.setColor(color);
+        g2D.fillOval(marker.x, marker.y, marker.width, marker.height);
+        g2D.setColor(Color.WHITE);
+        FontMetrics metrics = g2D.getFontMetrics();
+        g2D.drawString("!", marker.x + (marker.width - metrics.stringWidth("!")) / 2,
+                marker.y + (marker.height + metrics.getAscent()
+                - metrics.getDescent()) / 2);
+    }
+
+    /**
+     * Shows the problems of the block or frame header under the pointer
+     *
+     * @param e pointer event
+     *
+     * @return problems found by the last validation, null if none
+     */
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        if (problems == null || importing) {
+            return null;
+        }
+        ProcessBlock aBlock = frameIndex.blockAt(e.getPoint());
+        if (aBlock != null) {
+            ProcedureFrame procFrame = aBlock.getFrame().getProcedureFrame();
+            ModelValidator.FrameProblems found = problems.getProblems(procFrame);
+            return found != null && found.isCurrent(procFrame)
+                    ? found.getBlockProblem(aBlock.getIndex()) : null;
+        }
+        ProcessFrame aFrame = frameIndex.headerAt(e.getPoint());
+        if (aFrame != null) {
+            ProcedureFrame procFrame = aFrame.getProcedureFrame();
+            ModelValidator.FrameProblems found = problems.getProblems(procFrame);
+            return found != null && found.isCurrent(procFrame)
+                    ? found.getFrameProblem() : null;
+        }
+        return null;
+    }
+
+    /**
+     * Validates the model's changes since the last validation in the
+     * background. A validation asked for while another one is running waits
+     * for the next tick of the timer.
+     */
+    private void startValidation() {
+        if (importing) {
+            return;//validated once the import ends
+        }
+        if (validationWorker != null) {
+            validationTimer.restart();
+            return;
+        }
+        if (validator.getModel() != model) {
+            validator = new ModelValidator(model);
+            problems = null;
+            repaint();
+        }
+        validationWorker = new ValidationWorker(validator, validator.snapshot(),
+                this);
+        validationWorker.execute();
+    }
+
+    /**
+     * Called by the validation worker once the validation has ended
+     *
+     * @param checked validator that ran
+     * @param result problems found, null if the validation failed
+     */
+    void validationFinished(ModelValidator checked, ModelValidator.Result result) {
+        validationWorker = null;
+        if (checked != validator) {
+            return;//model replaced meanwhile
+        }
+        if (result == null) {//start over with a full validation
+            validator = new ModelValidator(model);
+            validationTimer.restart();
+            return;
+        }
+        problems = result;
+        firePropertyChange(CALL_GRAPH, null, result.getCallGraph());
+        Set<ProcedureFrame> updated = result.getUpdated();
+        if (updated.isEmpty()) {
+            return;
+        }
+        for (ProcessFrame aFrame : frames) {
+            if (updated.contains(aFrame.getProcedureFrame())) {
+                repaintFrame(aFrame);
+            }
+        }
+    }
+
+    /**
+     * Gets the call graph of the model as of the last validation
+     *
+     * @return call graph, null if the model hasn't been validated yet
+     */
+    protected CallGraph getCallGraph() {
+        return problems != null ? problems.getCallGraph() : null;
+    }
+
+    /**
+     * Keeps the counters of the last paint and lets listeners know about them
+     *
+     * @param painted frames and blocks drawn
+     * @param culled frames and blocks skipped
+     */
+    private void setPaintStats(int painted, int culled) {
+        paintedItems = painted;
+        culledItems = culled;
+        firePropertyChange(PAINT_STATS, null, getPaintStats());
+    }
+
+    /**
+     * Returns the counters of the last paint. Blocks are only counted in frames
+     * that were drawn, a culled frame counts as a single item. When rendering
+     * in tiles, these are the tiles copied and the placeholders painted.
+     *
+     * @return painted and culled items
+     */
+    protected int[] getPaintStats() {
+        return new int[]{paintedItems, culledItems};
     }
 
     /**
@@ -134,21 +484,21 @@ public class WorkspacePanel extends JPanel {
      * @param dropData incoming data in String form
      */
     public void setText(String dropData) {
+        if (importing) {
+            return;
+        }
         Point pointerDropLocation = calculateRelPointerPos();
 
-        for (ProcessFrame aFrame : frames) {
-            if (aFrame.getFrameRectangle().contains(pointerDropLocation)) {
-                if (selBlock != null) {
-                    selBlock.isSelected = false;
-                }
-                selBlock = aFrame.addBlock(dropData, "Sample Entity",
-                        "The quick brown fox jumped over the lazy doggo.");
-                selBlock.isSelected = true;
-                setEditPane(true);
-            }
+        ProcessFrame aFrame = frameIndex.frameAt(pointerDropLocation);
+        if (aFrame != null) {
+            ProcessBlock added = aFrame.addBlock(dropData, "Sample Entity",
+                    "The quick brown fox jumped over the lazy doggo.");
+            history.record(ModelEdits.insertBlock(aFrame.getIndex(),
+                    added.getIndex(), added.getStep()));
+            selectBlock(added);
+            setEditPane(true);
+            repaintFrame(aFrame);//arrow to the new block
         }
-
-        repaint();
     }
 
     /**
@@ -180,6 +530,7 @@ public class WorkspacePanel extends JPanel {
             private Dimension offset;//offset between the block header/pointer pos
             private ProcessBlock dragBlock;//block that is being dragged
             private ProcessFrame dragFrame;//frame that the dragBlock belongs to
+            private ProcessBlock dropTarget;//block the dragBlock would swap with
 
             /**
              * Changes cursor when it enters block or frame header
@@ -188,29 +539,35 @@ public class WorkspacePanel extends JPanel {
              */
             @Override
             public void mouseMoved(MouseEvent e) {
+                if (importing) {
+                    return;
+                }
                 Point pointer = e.getPoint();
-                setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
                 
-                for (ProcessFrame aFrame : frames) {
-                    /*Check frame headers*/
-                    if (aFrame.getFrameHeader() != null
-                            && aFrame.getFrameHeader().contains(pointer)) {
-                        aFrame.setOnHead(true);
-                    } else {
-                        aFrame.setOnHead(false);
+                /*Check frame headers, only changed headers are repainted*/
+                ProcessFrame headFrame = frameIndex.headerAt(pointer);
+                if (headFrame != hoverFrame) {
+                    if (hoverFrame != null && hoverFrame.setOnHead(false)) {
+                        repaintHeader(hoverFrame, false);
                     }
-                    
-                    for (ProcessBlock aBlock : aFrame.getBlocks()) {
-                        /*Check block headers*/
-                        if (aBlock.getHeaderRectangle().contains(pointer)) {
-                            setCursor(new Cursor(Cursor.MOVE_CURSOR));
-                            aBlock.setOnHead(true);
-                        } else {
-                            aBlock.setOnHead(false);
-                        }
+                    if (headFrame != null && headFrame.setOnHead(true)) {
+                        repaintHeader(headFrame, false);
                     }
+                    hoverFrame = headFrame;
+                }
+
+                /*Check block headers*/
+                ProcessBlock headBlock = frameIndex.blockHeaderAt(pointer);
+                if (headBlock != hoverBlock) {
+                    if (hoverBlock != null && hoverBlock.setOnHead(false)) {
+                        repaintBlock(hoverBlock);
+                    }
+                    if (headBlock != null && headBlock.setOnHead(true)) {
+                        repaintBlock(headBlock);
+                    }
+                    hoverBlock = headBlock;
+                    setCursor(headBlock != null ? MOVE_CURSOR : DEFAULT_CURSOR);
                 }
-                repaint();
             }
 
             /**
@@ -220,23 +577,23 @@ public class WorkspacePanel extends JPanel {
              */
             @Override
             public void mousePressed(MouseEvent e) {
+                if (importing) {
+                    return;
+                }
                 Point pointer = e.getPoint();
                 if (!dragOperation) {
-                    /*Scan if a drag operation can be initiated,
+                    /*Check if a drag operation can be initiated,
                      store the block being dragged if it can*/
-                    for (ProcessFrame aFrame : frames) {
-                        for (ProcessBlock aBlock : aFrame.getBlocks()) {
-                            if (aBlock.getHeaderRectangle().contains(pointer)) {
-                                dragOperation = true;
-                                dragBlock = aBlock;
-                                dragFrame = aFrame;
-                                dragFrame.dragOp = true;
-                                dragFrame.validSwitch = true;
-                                dragFrame = aFrame;
-                                offset = new Dimension(pointer.x - dragBlock.getHeaderRectangle().x,
-                                        pointer.y - dragBlock.getHeaderRectangle().y);
-                            }
-                        }
+                    ProcessBlock aBlock = frameIndex.blockHeaderAt(pointer);
+                    if (aBlock != null) {
+                        dragOperation = true;
+                        dragBlock = aBlock;
+                        dragFrame = aBlock.getFrame();
+                        dragFrame.dragOp = true;
+                        dragFrame.validSwitch = true;
+                        dropTarget = null;
+                        offset = new Dimension(pointer.x - dragBlock.getHeaderRectangle().x,
+                                pointer.y - dragBlock.getHeaderRectangle().y);
                     }
                 }
             }
@@ -252,22 +609,25 @@ public class WorkspacePanel extends JPanel {
                 if (dragOperation) {
                     Rectangle dragRect = dragBlock.getMainRectangle();
                     Point pointerX = new Point(e.getX(), dragRect.y);//only drag at x axis
-                    dragFrame.setDragPrev(new Rectangle(e.getX() - offset.width,
-                            dragRect.y, dragRect.width, dragRect.height));
-                    dragFrame.validSwitch = false;
+                    Rectangle dragPrev = new Rectangle(e.getX() - offset.width,
+                            dragRect.y, dragRect.width, dragRect.height);
+                    repaintDragPrev(dragFrame.getDragPrev());//old position
+                    dragFrame.setDragPrev(dragPrev);
+                    repaintDragPrev(dragPrev);
                     
-                    /*Check all blocks to determine if the current drag position
-                    is swap or insert*/
-                    for (ProcessBlock aBlock : dragFrame.getBlocks()) {
-                        if (aBlock.getMainRectangle().contains(pointerX)) {
-                            aBlock.isDropTarg(true);//switch
-                            dragFrame.validSwitch = true;
-                        } else {//insert
-                            aBlock.isDropTarg(false);
+                    /*Find the block under the pointer to determine if the
+                    current drag position is swap or insert*/
+                    ProcessBlock target = dragFrame.getBlockAt(pointerX);
+                    if (target != dropTarget) {
+                        if (dropTarget != null && dropTarget.isDropTarg(false)) {
+                            repaintBlock(dropTarget);
+                        }
+                        if (target != null && target.isDropTarg(true)) {//switch
+                            repaintBlock(target);
                         }
+                        dropTarget = target;
                     }
-                    repaint();
-
+                    dragFrame.validSwitch = target != null;
                 }
             }
 
@@ -281,32 +641,47 @@ public class WorkspacePanel extends JPanel {
                 if (dragOperation) {
                     Point pointer = new Point(e.getX(), dragBlock.getMainRectangle().y);
                     boolean dropped = false;
+                    repaintFrame(dragFrame);//blocks and the drag indication
                     
                     /*Check for swap or insert operation between blocks*/
                     for (ProcessBlock aBlock : dragFrame.getBlocks()) {
                         if (!dropped && aBlock.getMainRectangle().contains(pointer)) {
                             aBlock.isDropTarg(false);
+                            int a = aBlock.getIndex();
+                            int b = dragBlock.getIndex();
                             dragFrame.swapBlocks(aBlock, dragBlock);//swap
+                            history.record(ModelEdits.swapBlocks(
+                                    dragFrame.getIndex(), a, b));
                             dropped = true;
                             break;
                         } else if (!dropped && pointer.x < aBlock.getMainRectangle().x) {
-                            /*To insert, remove first and then insert block*/
-                            dragFrame.removeBlock(dragBlock.getIndex());
-                            dragFrame.insertBlock(aBlock.getIndex(), dragBlock.blockName,
-                                    dragBlock.entName, dragBlock.attrString);
+                            /*Move before aBlock, counted without dragBlock*/
+                            int from = dragBlock.getIndex();
+                            int to = aBlock.getIndex();
+                            to = from < to ? to - 1 : to;
+                            dragFrame.moveBlock(from, to);
+                            history.record(ModelEdits.moveBlock(
+                                    dragFrame.getIndex(), from, to));
                             dropped = true;
                             break;
                         } 
                     }
                     /*Set all drag variables to false.*/
+                    if (dropTarget != null) {
+                        dropTarget.isDropTarg(false);
+                        dropTarget = null;
+                    }
                     dragOperation = false;
                     dragFrame.dragOp = false;
                     dragFrame.validSwitch = false;
                     dragBlock.setOnHead(false);
+                    if (hoverBlock != null && hoverBlock.setOnHead(false)) {
+                        repaintBlock(hoverBlock);
+                    }
+                    hoverBlock = null;//pointer has to move over a header again
                     dragBlock = null;
                     dragFrame = null;
-                    repaint();
-                    setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+                    setCursor(DEFAULT_CURSOR);
                 }
 
             }
@@ -319,33 +694,22 @@ public class WorkspacePanel extends JPanel {
              */
             @Override
             public void mouseClicked(MouseEvent e) {
+                if (importing) {
+                    return;
+                }
                 Point pointer = e.getPoint();
                 
                 /*Check if the click happens in frame header or anywhere inside
                 a block*/
-                for (ProcessFrame aFrame : frames) {
-                    for (ProcessBlock aBlock : aFrame.getBlocks()) {
-                        /*Select block*/
-                        if (aBlock.getMainRectangle().contains(pointer)) {
-                            if (selBlock != null) {//prev selection removed
-                                selBlock.isSelected = false;
-                            }
-                            selBlock = aBlock;
-                            selBlock.isSelected = true;
-                            setEditPane(true);
-                        }
-                    }
-                    /*Select frame*/
-                    if (aFrame.getFrameHeader().contains(pointer)) {
-                        if (selFrame != null) {//previous selection removed
-                            selFrame.isSelected(false);
-                        }
-                        selFrame = aFrame;
-                        selFrame.isSelected(true);
-                    }
+                ProcessBlock aBlock = frameIndex.blockAt(pointer);
+                if (aBlock != null) {//select block
+                    selectBlock(aBlock);
+                    setEditPane(true);
+                }
+                ProcessFrame aFrame = frameIndex.headerAt(pointer);
+                if (aFrame != null) {//select frame
+                    selectFrame(aFrame);
                 }
-
-                repaint();
             }
 
         };
@@ -364,14 +728,246 @@ public class WorkspacePanel extends JPanel {
         JEditorPane entPane = PicturesqueFrame.jEditorPane2;
         JEditorPane attrPane = PicturesqueFrame.jEditorPane1;
         
-        if (state) {
-            PicturesqueFrame.setBlockEditPanel(true);
-            entPane.setText(selBlock.entName);
-            attrPane.setText(selBlock.attrString);
+        fillingEditPane = true;//not typed, see isFillingEditPane()
+        try {
+            if (state) {
+                PicturesqueFrame.setBlockEditPanel(true);
+                entPane.setText(selBlock.getEntName());
+                attrPane.setText(selBlock.getAttrString());
+            } else {
+                PicturesqueFrame.setBlockEditPanel(false);
+                entPane.setText("");
+                attrPane.setText("");
+            }
+        } finally {
+            fillingEditPane = false;
+        }
+    }
+
+    /**
+     * Tells the edit pane's listeners that its texts are being replaced by the
+     * panel, replacing a text moves the caret more than once
+     *
+     * @return true while setEditPane() runs
+     */
+    protected boolean isFillingEditPane() {
+        return fillingEditPane;
+    }
+
+    /**
+     * Selects a block, deselecting the previous one. Only blocks whose
+     * selection has changed are repainted.
+     *
+     * @param aBlock block to select
+     */
+    private void selectBlock(ProcessBlock aBlock) {
+        if (selBlock != null && selBlock != aBlock && selBlock.setSelected(false)) {
+            repaintBlock(selBlock);
+        }
+        selBlock = aBlock;
+        if (aBlock.setSelected(true)) {
+            repaintBlock(aBlock);
+        }
+    }
+
+    /**
+     * Scrolls to a block and selects it, or to a frame's header if no block
+     * is given
+     *
+     * @param frame frame to show
+     * @param step step of the block to show, null for the frame's header
+     *
+     * @return true if the frame is shown by the panel
+     */
+    protected boolean showStep(ProcedureFrame frame, Step step) {
+        if (importing) {
+            return false;
+        }
+        for (ProcessFrame aFrame : frames) {
+            if (aFrame.getProcedureFrame() != frame) {
+                continue;
+            }
+            if (step != null) {
+                int pos = frame.getSteps().indexOf(step);
+                if (pos >= 0) {
+                    ProcessBlock aBlock = aFrame.getBlocks().get(pos);
+                    selectBlock(aBlock);
+                    setEditPane(true);
+                    scrollRectToVisible(aBlock.getMainRectangle());
+                    return true;
+                }
+            }
+            selectFrame(aFrame);
+            Rectangle header = aFrame.getFrameHeader();
+            scrollRectToVisible(header != null ? header
+                    : aFrame.getFrameRectangle());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Selects a frame, deselecting the previous one. Only headers whose
+     * selection has changed are repainted.
+     *
+     * @param aFrame frame to select
+     */
+    private void selectFrame(ProcessFrame aFrame) {
+        if (selFrame != null && selFrame != aFrame && selFrame.isSelected(false)) {
+            repaintHeader(selFrame, false);
+        }
+        selFrame = aFrame;
+        if (aFrame.isSelected(true)) {
+            repaintHeader(aFrame, false);
+        }
+    }
+
+    /**
+     * Repaints an area, making the tiles under it stale when rendering in
+     * tiles. All of the panel's repaint methods end up here.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        if (tileRenderer != null || minimap != null) {
+            Rectangle changed = new Rectangle(x, y, width, height);
+            if (SwingUtilities.isEventDispatchThread()) {
+                markStale(changed);
+            } else {//tiles are only touched on the event dispatch thread
+                SwingUtilities.invokeLater(() -> markStale(changed));
+            }
+        }
+        super.repaint(tm, x, y, width, height);
+    }
+
+    /**
+     * Makes the rendered tiles and minimap cells under a changed area stale
+     */
+    private void markStale(Rectangle changed) {
+        if (tileRenderer != null) {
+            tileRenderer.invalidate(changed);
+        }
+        if (minimap != null) {
+            minimap.invalidate(changed);
+        }
+    }
+
+    /**
+     * Sets the minimap the panel's changes are passed on to
+     *
+     * @param minimap minimap of the panel
+     */
+    void setMinimap(MinimapPanel minimap) {
+        this.minimap = minimap;
+    }
+
+    /**
+     * Copies the frames in an area for painting it on another thread
+     *
+     * @param area area of the panel
+     *
+     * @return copies of the frames
+     */
+    List<ProcessFrame> copyFramesIn(Rectangle area) {
+        List<ProcessFrame> copies = new ArrayList<>();
+        for (ProcessFrame aFrame : frameIndex.framesIn(area)) {
+            copies.add(aFrame.copyForPaint(area));
+        }
+        return copies;
+    }
+
+    /**
+     * Returns the font frames and blocks are painted with
+     *
+     * @return font of the current size
+     */
+    Font getPaintFont() {
+        return new Font("TimesRoman", Font.BOLD, fontSize);
+    }
+
+    /**
+     * Shows a tile that has been rendered, without making it stale
+     *
+     * @param tile area of the tile
+     */
+    void repaintTile(Rectangle tile) {
+        super.repaint(0, tile.x, tile.y, tile.width, tile.height);
+    }
+
+    /**
+     * Repaints the area of a block, after its state or text has changed
+     *
+     * @param aBlock block to repaint
+     */
+    protected void repaintBlock(ProcessBlock aBlock) {
+        repaint(aBlock.getPaintBounds());
+    }
+
+    /**
+     * Repaints the header of a frame, after its state or name has changed.
+     * Headers are as wide as their name, so after a rename, or before the
+     * header has been painted, the rest of its row is repainted as well.
+     *
+     * @param aFrame frame whose header is repainted
+     * @param renamed true if the frame's name has changed
+     */
+    protected void repaintHeader(ProcessFrame aFrame, boolean renamed) {
+        Rectangle header = aFrame.getFrameHeader();
+        if (renamed || header == null) {
+            Rectangle frameRect = aFrame.getFrameRectangle();
+            int headerHeight = frameIndex.getHeaderHeight();
+            header = new Rectangle(frameRect.x, frameRect.y - headerHeight,
+                    Math.max(frameRect.width, getWidth() - frameRect.x),
+                    headerHeight);
         } else {
-            PicturesqueFrame.setBlockEditPanel(false);
-            entPane.setText("");
-            attrPane.setText("");
+            header = new Rectangle(header);
+        }
+        header.grow(ProcessFrame.PAINT_MARGIN, ProcessFrame.PAINT_MARGIN);
+        repaint(header);
+    }
+
+    /**
+     * Repaints a frame with all of its blocks, after blocks have been added,
+     * removed or moved
+     *
+     * @param aFrame frame to repaint
+     */
+    protected void repaintFrame(ProcessFrame aFrame) {
+        repaint(aFrame.getPaintBounds(frameIndex.getHeaderHeight()));
+    }
+
+    /**
+     * Repaints the area of a drag indication
+     *
+     * @param dragPrev drag indication, may be null
+     */
+    private void repaintDragPrev(Rectangle dragPrev) {
+        if (dragPrev != null) {
+            Rectangle bounds = new Rectangle(dragPrev);
+            bounds.grow(ProcessFrame.PAINT_MARGIN, ProcessFrame.PAINT_MARGIN);
+            repaint(bounds);
+        }
+    }
+
+    /**
+     * Frees the images of rendered blocks
+     */
+    private void clearBlockCache() {
+        if (blockCache != null) {
+            blockCache.clear();
+        }
+    }
+
+    /**
+     * Forgets the headers under the pointer, after their frames have gone
+     */
+    private void clearHover() {
+        if (hoverBlock != null) {
+            hoverBlock.setOnHead(false);
+            hoverBlock = null;
+        }
+        if (hoverFrame != null) {
+            hoverFrame.setOnHead(false);
+            hoverFrame = null;
         }
     }
 
@@ -383,12 +979,9 @@ public class WorkspacePanel extends JPanel {
     protected void SlideFrames(int start) {
         for (int i = start; i < frames.size(); i++) {
             frames.get(i).setIndex(i);//update index
-            frames.get(i).setFrameRectangles();//update rectangles
-            /*Slide all blocks as well*/
-            for (ProcessBlock aBlock : frames.get(i).getBlocks()) {
-                aBlock.setRectangles(frames.get(i).getFrameRectangle().y);
-            }
+            frames.get(i).relayout();//blocks slide when next needed
         }
+        frameIndex.invalidate();
     }
 
     /**
@@ -398,12 +991,68 @@ public class WorkspacePanel extends JPanel {
      */
     protected void resizeContents(double percResize) {
         double newRatio = percResize * DEFRATIO;
-        for (ProcessFrame aFrame : frames) {
-            aFrame.resize(newRatio);
+        if (LayoutMetrics.setZoom(newRatio)) {
+            relayoutFrames();
         }
         repaint();
     }
 
+    /**
+     * Checks the display when the panel may have moved to another screen.
+     * Changes of resolution or scaling fire no events, they are caught by a
+     * timer while the panel is shown. Paints never query the display.
+     */
+    private void setDisplayListener() {
+        addPropertyChangeListener("graphicsConfiguration",
+                evt -> checkDisplay());
+        addHierarchyBoundsListener(new HierarchyBoundsAdapter() {
+            @Override
+            public void ancestorMoved(HierarchyEvent evt) {//window moved
+                checkDisplay();
+            }
+        });
+    }
+
+    /**
+     * Lays out all frames again if the panel has moved to another screen or
+     * the screen's resolution or scaling has changed. Costs one display query
+     * if nothing has changed.
+     */
+    private void checkDisplay() {
+        if (LayoutMetrics.setDisplay(getGraphicsConfiguration())) {
+            relayoutFrames();
+            repaint();//rendered tiles are out of date
+        }
+    }
+
+    /**
+     * Lays out all frames and blocks with the current layout metrics
+     */
+    private void relayoutFrames() {
+        for (ProcessFrame aFrame : frames) {
+            aFrame.relayout();
+        }
+        if (prevFrames != null) {//model shown again if the import fails
+            for (ProcessFrame aFrame : prevFrames) {
+                aFrame.relayout();
+            }
+        }
+        frameIndex.invalidate();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        checkDisplay();
+        displayTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        displayTimer.stop();
+        super.removeNotify();
+    }
+
     /**
      * Changes font size
      *
@@ -414,13 +1063,386 @@ public class WorkspacePanel extends JPanel {
         repaint();
     }
 
-    protected void setFramesList(ArrayList<ProcessFrame> newList) {
-        this.frames = newList;
+    /**
+     * Removes a frame and slides the ones below it up
+     *
+     * @param toRemove frame to remove
+     */
+    protected void removeFrame(ProcessFrame toRemove) {
+        int pos = frames.indexOf(toRemove);
+        model.removeFrame(pos);//views and model frames share positions
+        frames.remove(pos);
+        SlideFrames(pos);
+        repaint();
+    }
+
+    /**
+     * Starts showing a model that is being imported. The current model is kept
+     * aside until the import finishes and the panel can't be edited meanwhile.
+     */
+    protected void beginImport() {
+        if (selBlock != null) {//clear selections
+            selBlock.isSelected = false;
+            selBlock = null;
+        }
+        if (selFrame != null) {
+            selFrame.isSelected(false);
+            selFrame = null;
+        }
+        setEditPane(false);
+
+        importing = true;
+        prevModel = model;
+        prevFrames = frames;
+        prevSubs = totalSubs;
+        frames = new ArrayList<>();
+        frameIndex.setFrames(frames);
+        clearHover();
+        repaint();
+    }
+
+    /**
+     * Shows finished frames of the model being imported
+     *
+     * @param built frames in the order they have been finished
+     */
+    protected void addImportedFrames(List<ProcedureFrame> built) {
+        if (!importing) {//handed over after the import has ended
+            return;
+        }
+        for (ProcedureFrame aFrame : built) {
+            if (aFrame.getIndex() == 0 && mainPreview != null) {
+                /*The main process is finished, it replaces its preview*/
+                frames.set(frames.indexOf(mainPreview), new ProcessFrame(aFrame));
+                mainPreview = null;
+                frameIndex.invalidate();
+                continue;
+            }
+            /*Keep frames ordered by index, they may be finished in any order*/
+            int pos = frames.size();
+            while (pos > 0 && frames.get(pos - 1).getIndex() > aFrame.getIndex()) {
+                pos--;
+            }
+            ProcessFrame view = new ProcessFrame(aFrame);
+            frames.add(pos, view);
+            if (pos == frames.size() - 1) {
+                frameIndex.frameAdded(view);
+            } else {
+                frameIndex.invalidate();
+            }
+        }
+        repaint();
+    }
+
+    /**
+     * Shows blocks of the main process being imported before it's finished, on
+     * a preview of the frame that the main process replaces once it has been
+     * finished. The preview is the first frame, all others come after it.
+     *
+     * @param name name of the main process
+     * @param blocks name, entity and attributes of each new block
+     */
+    protected void addImportedMainBlocks(String name, String[] blocks) {
+        if (!importing) {//handed over after the import has ended
+            return;
+        }
+        if (mainPreview == null) {
+            mainPreview = new ProcessFrame(new ProcedureFrame(name, 0));
+            frames.add(0, mainPreview);
+            frameIndex.invalidate();
+        }
+        for (int i = 0; i + 2 < blocks.length; i += 3) {
+            mainPreview.addBlock(blocks[i], blocks[i + 1], blocks[i + 2]);
+        }
+        repaint();
+    }
+
+    /**
+     * Ends an import, showing the imported model or going back to the previous
+     * one
+     *
+     * @param imported imported model, null if the import failed or has been
+     * cancelled
+     */
+    protected void endImport(Procedure imported) {
+        if (imported != null) {
+            /*Reuse the views built while importing, in the model's order*/
+            Map<ProcedureFrame, ProcessFrame> views = new IdentityHashMap<>();
+            for (ProcessFrame aFrame : frames) {
+                views.put(aFrame.getProcedureFrame(), aFrame);
+            }
+            model = imported;
+            frames = new ArrayList<>(imported.size());
+            for (ProcedureFrame aFrame : imported.getFrames()) {
+                ProcessFrame view = views.get(aFrame);
+                frames.add(view != null ? view : new ProcessFrame(aFrame));
+            }
+            totalSubs = prevSubs + imported.size();
+            history.clear();//edits of the previous model
+            if (journal != null) {
+                journal.reset(model);
+            }
+            recoverySnapshot = null;//recovered, if this was the recovery
+        } else {
+            model = prevModel;
+            frames = prevFrames;
+            totalSubs = prevSubs;
+        }
+        prevModel = null;
+        prevFrames = null;
+        mainPreview = null;
+        frameIndex.setFrames(frames);
+        clearBlockCache();//images of the model not shown anymore
+        importing = false;
         repaint();
     }
 
+    /**
+     * Records an edit made to the model, so it can be undone
+     *
+     * @param edit edit made, see ModelEdits
+     */
+    void recordEdit(EditHistory.Edit edit) {
+        history.record(edit);
+    }
+
+    /**
+     * Undoes the last edit to the model
+     *
+     * @return true if there was an edit to undo
+     */
+    protected boolean undo() {
+        return !importing && history.undo(this);
+    }
+
+    /**
+     * Redoes the last undone edit to the model
+     *
+     * @return true if there was an edit to redo
+     */
+    protected boolean redo() {
+        return !importing && history.redo(this);
+    }
+
+    /**
+     * @return name of the edit to undo, null if none
+     */
+    protected String getUndoName() {
+        return history.getUndoName();
+    }
+
+    /**
+     * @return name of the edit to redo, null if none
+     */
+    protected String getRedoName() {
+        return history.getRedoName();
+    }
+
+    /*Edits made by undo and redo, frames and blocks are given by position*/
+
+    /**
+     * Inserts a block and selects it
+     *
+     * @param framePos position of the frame
+     * @param pos position of the new block
+     * @param step step shown by the new block
+     */
+    void insertBlockAt(int framePos, int pos, Step step) {
+        ProcessFrame aFrame = frames.get(framePos);
+        aFrame.insertBlock(pos, step);
+        selectBlock(aFrame.getBlocks().get(pos));
+        setEditPane(true);
+        repaintFrame(aFrame);
+    }
+
+    /**
+     * Removes a block, deselecting it if needed
+     *
+     * @param framePos position of the frame
+     * @param pos position of the block
+     */
+    void removeBlockAt(int framePos, int pos) {
+        ProcessFrame aFrame = frames.get(framePos);
+        ProcessBlock aBlock = aFrame.getBlocks().get(pos);
+        if (aBlock == selBlock) {
+            selBlock = null;
+            setEditPane(false);
+        }
+        if (aBlock == hoverBlock) {
+            hoverBlock = null;
+        }
+        repaintFrame(aFrame);//before the last block goes
+        aFrame.removeBlock(pos);
+    }
+
+    /**
+     * Swaps two blocks of a frame
+     *
+     * @param framePos position of the frame
+     * @param a position of a block
+     * @param b position of the other block
+     */
+    void swapBlocksAt(int framePos, int a, int b) {
+        ProcessFrame aFrame = frames.get(framePos);
+        aFrame.swapBlocks(aFrame.getBlocks().get(a), aFrame.getBlocks().get(b));
+        repaintFrame(aFrame);
+    }
+
+    /**
+     * Moves a block within its frame
+     *
+     * @param framePos position of the frame
+     * @param from position of the block
+     * @param to position of the block after the move
+     */
+    void moveBlockAt(int framePos, int from, int to) {
+        ProcessFrame aFrame = frames.get(framePos);
+        aFrame.moveBlock(from, to);
+        repaintFrame(aFrame);
+    }
+
+    /**
+     * Sets a block's entity or attributes and selects the block
+     *
+     * @param framePos position of the frame
+     * @param pos position of the block
+     * @param entity true for the entity, false for the attributes
+     * @param text new text
+     */
+    void setBlockText(int framePos, int pos, boolean entity, String text) {
+        ProcessBlock aBlock = frames.get(framePos).getBlocks().get(pos);
+        if (entity) {
+            aBlock.getStep().setEntity(new Entity(text));
+        } else {
+            aBlock.getStep().setAttributes(text);
+        }
+        selectBlock(aBlock);
+        setEditPane(true);
+        repaintBlock(aBlock);
+    }
+
+    /**
+     * Sets the entity of several blocks
+     *
+     * @param framePos positions of the frames
+     * @param pos positions of the blocks in their frames
+     * @param name name of the entity
+     */
+    void setEntitiesAt(int[] framePos, int[] pos, String name) {
+        Entity entity = model.getEntities().intern(name);
+        for (int i = 0; i < pos.length; i++) {
+            ProcessFrame aFrame = frames.get(framePos[i]);
+            aFrame.getBlocks().get(pos[i]).getStep().setEntity(entity);
+            if (i == 0 || framePos[i] != framePos[i - 1]) {
+                repaintFrame(aFrame);
+            }
+        }
+        if (selBlock != null) {//its entity may have changed
+            setEditPane(true);
+        }
+    }
+
+    /**
+     * Assigns all blocks of an entity to another entity, which renames the
+     * entity if no block had the new name before. The blocks are found
+     * through the model's entity registry, only the frames holding them are
+     * looked at.
+     *
+     * @param from name of the entity whose blocks are reassigned
+     * @param to name of the entity the blocks are assigned to
+     *
+     * @return number of blocks reassigned
+     */
+    protected int reassignEntity(String from, String to) {
+        List<Step> moved = model.getEntities().reassign(new Entity(from),
+                new Entity(to));
+        if (moved.isEmpty()) {
+            return 0;
+        }
+
+        /*Positions of the blocks, for undo and the journal*/
+        Set<Step> movedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        movedSet.addAll(moved);
+        Set<ProcedureFrame> touched
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Step aStep : moved) {
+            touched.add(aStep.getFrame());
+        }
+        ProcedureFrame[] inOrder = touched.toArray(new ProcedureFrame[0]);
+        Arrays.sort(inOrder, Comparator.comparingInt(ProcedureFrame::getIndex));
+        int[] framePos = new int[moved.size()];
+        int[] pos = new int[moved.size()];
+        int count = 0;
+        for (ProcedureFrame aFrame : inOrder) {
+            int i = aFrame.getIndex();
+            List<Step> steps = aFrame.getSteps();
+            for (int j = 0; j < steps.size(); j++) {
+                if (movedSet.contains(steps.get(j))) {
+                    framePos[count] = i;
+                    pos[count++] = j;
+                }
+            }
+            repaintFrame(frames.get(i));
+        }
+        recordEdit(ModelEdits.setEntities(framePos, pos, from, to));
+
+        if (selBlock != null && movedSet.contains(selBlock.getStep())) {
+            setEditPane(true);
+        }
+        return moved.size();
+    }
+
+    /**
+     * Inserts an empty subprocess, sliding the ones below it down
+     *
+     * @param pos position of the new frame
+     * @param name name of the new frame
+     */
+    void insertFrame(int pos, String name) {
+        ProcedureFrame newFrame = new ProcedureFrame(name, pos);
+        model.insertFrame(pos, newFrame);
+        frames.add(pos, new ProcessFrame(newFrame));
+        SlideFrames(pos);
+        selectFrame(frames.get(pos));
+        repaint();
+    }
+
+    /**
+     * Removes a subprocess, deselecting it if needed
+     *
+     * @param pos position of the frame
+     */
+    void removeFrameAt(int pos) {
+        ProcessFrame aFrame = frames.get(pos);
+        if (aFrame == selFrame) {
+            selFrame = null;
+        }
+        clearHover();
+        removeFrame(aFrame);
+    }
+
+    /**
+     * Renames a frame
+     *
+     * @param pos position of the frame
+     * @param name new name
+     */
+    void renameFrame(int pos, String name) {
+        ProcessFrame aFrame = frames.get(pos);
+        aFrame.setName(name);
+        repaintHeader(aFrame, true);
+    }
+
     protected void clearModel() {
+        this.model = new Procedure();
         this.frames = new ArrayList<>();
+        frameIndex.setFrames(frames);
+        clearBlockCache();
+        clearHover();
+        history.clear();
+        if (journal != null) {//after the caller has set up the new model
+            SwingUtilities.invokeLater(() -> journal.reset(model));
+        }
         totalSubs = 0;
         repaint();
     }
@@ -429,11 +1451,11 @@ public class WorkspacePanel extends JPanel {
         return this.frames;
     }
 
-    protected int getTotalSubs() {
-        return WorkspacePanel.totalSubs;
+    public Procedure getModel() {
+        return this.model;
     }
 
-    public static void increaseSubCount() {
-        WorkspacePanel.totalSubs++;
+    protected int getTotalSubs() {
+        return WorkspacePanel.totalSubs;
     }
 }
@@ -0,0 +1,161 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The entities of a procedure. Every entity name is held by a single Entity
+ * shared by all of its steps, and every entity knows its steps, so an entity
+ * can be renamed or its steps reassigned by touching only those steps.
+ *
+ * Steps are registered by the procedure as they join or leave it, see
+ * Procedure. Only intern(String) may be called from several threads at once,
+ * so importers can build frames in parallel before the procedure exists.
+ *
+ * @author Christos Darisaplis
+ */
+public final class EntityRegistry {
+
+    private final ConcurrentHashMap<String, Entity> entities;//by name
+    private final HashMap<Entity, Set<Step>> steps;//steps of each entity
+
+    public EntityRegistry() {
+        entities = new ConcurrentHashMap<>();
+        steps = new HashMap<>();
+    }
+
+    /**
+     * Returns the entity with the given name, the same instance every time
+     *
+     * @param name name of the entity
+     *
+     * @return shared entity
+     */
+    public Entity intern(String name) {
+        Entity entity = entities.get(name);
+        return entity != null ? entity : entities.computeIfAbsent(name,
+                Entity::new);
+    }
+
+    /**
+     * Returns the shared entity equal to an entity
+     */
+    private Entity intern(Entity entity) {
+        Entity shared = entities.putIfAbsent(entity.getName(), entity);
+        return shared != null ? shared : entity;
+    }
+
+    /**
+     * @return read only view of the entities that have steps in the procedure
+     */
+    public Set<Entity> getEntities() {
+        return Collections.unmodifiableSet(steps.keySet());
+    }
+
+    /**
+     * Returns the steps of an entity
+     *
+     * @param entity entity
+     *
+     * @return read only view of the entity's steps, in no particular order
+     */
+    public Set<Step> getSteps(Entity entity) {
+        Set<Step> entSteps = steps.get(entity);
+        return entSteps != null ? Collections.unmodifiableSet(entSteps)
+                : Collections.emptySet();
+    }
+
+    /**
+     * Assigns all steps of an entity to another one, which also renames the
+     * entity if no step had the new name before
+     *
+     * @param from entity whose steps are reassigned
+     * @param to entity the steps are assigned to
+     *
+     * @return steps reassigned
+     */
+    public List<Step> reassign(Entity from, Entity to) {
+        Set<Step> entSteps = steps.get(from);
+        if (entSteps == null || from.equals(to)) {
+            return Collections.emptyList();
+        }
+        List<Step> moved = new ArrayList<>(entSteps);
+        Entity shared = intern(to);
+        for (Step aStep : moved) {
+            aStep.setEntity(shared);//moves it in the index
+        }
+        return moved;
+    }
+
+    /**
+     * Registers a step that has joined the procedure
+     *
+     * @param step step added
+     */
+    void add(Step step) {
+        Entity shared = intern(step.getEntity());
+        step.shareEntity(shared);
+        steps.computeIfAbsent(shared,
+                e -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                .add(step);
+    }
+
+    /**
+     * Unregisters a step that has left the procedure
+     *
+     * @param step step removed
+     */
+    void remove(Step step) {
+        remove(step, step.getEntity());
+    }
+
+    /**
+     * Moves a step whose entity has changed
+     *
+     * @param step step changed
+     * @param old entity before the change
+     */
+    void entityChanged(Step step, Entity old) {
+        remove(step, old);
+        add(step);
+    }
+
+    private void remove(Step step, Entity entity) {
+        Set<Step> entSteps = steps.get(entity);
+        if (entSteps != null && entSteps.remove(step) && entSteps.isEmpty()) {
+            /*Names nobody uses any more, e.g. typed on the way to another
+            one, are forgotten*/
+            steps.remove(entity);
+            entities.remove(entity.getName());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An entire model: the main process and all of its subprocesses. This is what
+ * gets imported, exported and drawn, it doesn't depend on AWT.
+ *
+ * @author Christos Darisaplis
+ */
+public class Procedure {
+
+    private final ArrayList<ProcedureFrame> frames;
+    private final EntityRegistry entities;//entities of all steps
+
+    /**
+     * Creates an empty procedure
+     */
+    public Procedure() {
+        frames = new ArrayList<>();
+        entities = new EntityRegistry();
+    }
+
+    /**
+     * Creates a procedure out of a list of frames
+     *
+     * @param frames frames in order, the list is copied
+     */
+    public Procedure(List<ProcedureFrame> frames) {
+        this(frames, new EntityRegistry());
+    }
+
+    /**
+     * Creates a procedure out of a list of frames whose entities have been
+     * interned by a registry, which then becomes the procedure's
+     *
+     * @param frames frames in order, the list is copied
+     * @param entities registry the frames' entities come from
+     */
+    public Procedure(List<ProcedureFrame> frames, EntityRegistry entities) {
+        this.frames = new ArrayList<>(frames);
+        this.entities = Objects.requireNonNull(entities);
+        for (ProcedureFrame aFrame : this.frames) {
+            attach(aFrame);
+        }
+    }
+
+    /**
+     * Adds a frame at the end of the procedure
+     *
+     * @param frame frame to add
+     */
+    public void addFrame(ProcedureFrame frame) {
+        frames.add(Objects.requireNonNull(frame));
+        attach(frame);
+    }
+
+    /**
+     * Inserts a frame
+     *
+     * @param pos position of the frame
+     * @param frame frame to insert
+     */
+    public void insertFrame(int pos, ProcedureFrame frame) {
+        frames.add(pos, Objects.requireNonNull(frame));
+        attach(frame);
+    }
+
+    /**
+     * Removes a frame
+     *
+     * @param pos position of the frame
+     *
+     * @return the removed frame
+     */
+    public ProcedureFrame removeFrame(int pos) {
+        ProcedureFrame removed = frames.remove(pos);
+        if (removed.getProcedure() == this) {
+            removed.setProcedure(null);
+            for (Step aStep : removed.getSteps()) {
+                entities.remove(aStep);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return entities of the procedure's steps
+     */
+    public EntityRegistry getEntities() {
+        return entities;
+    }
+
+    /**
+     * Registers the steps of a frame that has joined the procedure
+     */
+    private void attach(ProcedureFrame frame) {
+        frame.setProcedure(this);
+        for (Step aStep : frame.getSteps()) {
+            entities.add(aStep);
+        }
+    }
+
+    public ProcedureFrame getFrame(int pos) {
+        return frames.get(pos);
+    }
+
+    /**
+     * @return read only view of the frames
+     */
+    public List<ProcedureFrame> getFrames() {
+        return Collections.unmodifiableList(frames);
+    }
+
+    public int size() {
+        return frames.size();
+    }
+}
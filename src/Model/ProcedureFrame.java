@@ -0,0 +1,196 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The steps of a process or subprocess, in order. Holds no display data, so
+ * it can be built and read without a screen.
+ *
+ * @author Christos Darisaplis
+ */
+public class ProcedureFrame {
+
+    private String name;//title of the frame
+    private int index;//index of the frame in its procedure, 0 is the main process
+    private final ArrayList<Step> steps;
+    private int modCount;//changes to the name and steps, see getModCount()
+    private Procedure procedure;//procedure holding the frame, null if none
+
+    public ProcedureFrame(String name, int index) {
+        this.name = Objects.requireNonNull(name);
+        this.index = index;
+        steps = new ArrayList<>();
+        modCount = 0;
+    }
+
+    /**
+     * Adds a new step at the end of the frame
+     *
+     * @param stepName name of the step
+     * @param entName entity of the step
+     * @param attributes attributes of the step
+     *
+     * @return the new step
+     */
+    public Step addStep(String stepName, String entName, String attributes) {
+        return addStep(stepName, new Entity(entName), attributes);
+    }
+
+    /**
+     * Adds a new step at the end of the frame
+     *
+     * @param stepName name of the step
+     * @param entity entity of the step, see EntityRegistry.intern()
+     * @param attributes attributes of the step
+     *
+     * @return the new step
+     */
+    public Step addStep(String stepName, Entity entity, String attributes) {
+        Step toAdd = new Step(stepName, entity, attributes);
+        toAdd.setFrame(this);
+        steps.add(toAdd);
+        modCount++;
+        if (procedure != null) {
+            procedure.getEntities().add(toAdd);
+        }
+        return toAdd;
+    }
+
+    /**
+     * Inserts a step
+     *
+     * @param pos position of the step
+     * @param step step to insert
+     */
+    public void insertStep(int pos, Step step) {
+        steps.add(pos, Objects.requireNonNull(step));
+        step.setFrame(this);
+        modCount++;
+        if (procedure != null) {
+            procedure.getEntities().add(step);
+        }
+    }
+
+    /**
+     * Removes a step
+     *
+     * @param pos position of the step
+     *
+     * @return the removed step
+     */
+    public Step removeStep(int pos) {
+        Step removed = steps.remove(pos);
+        if (removed.getFrame() == this) {
+            removed.setFrame(null);
+        }
+        modCount++;
+        if (procedure != null) {
+            procedure.getEntities().remove(removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Swaps two steps
+     *
+     * @param a position of the first step
+     * @param b position of the second step
+     */
+    public void swapSteps(int a, int b) {
+        Collections.swap(steps, a, b);
+        modCount++;
+    }
+
+    /**
+     * @return read only view of the steps
+     */
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = Objects.requireNonNull(name);
+        modCount++;
+    }
+
+    /**
+     * Counts the changes to the frame's name, to the order of its steps and
+     * to the steps themselves. The index of the frame isn't counted.
+     *
+     * @return number of changes so far
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Called by the frame's steps when they change
+     */
+    void changed() {
+        modCount++;
+    }
+
+    /**
+     * Called by the frame's steps when their entity changes
+     *
+     * @param step step changed
+     * @param old entity before the change
+     */
+    void entityChanged(Step step, Entity old) {
+        if (procedure != null) {
+            procedure.getEntities().entityChanged(step, old);
+        }
+    }
+
+    /**
+     * Sets the procedure holding the frame, see Procedure
+     *
+     * @param procedure procedure holding the frame, null if none
+     */
+    void setProcedure(Procedure procedure) {
+        this.procedure = procedure;
+    }
+
+    Procedure getProcedure() {
+        return procedure;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+}
@@ -0,0 +1,112 @@
+/* 
+ * Copyright (c) 2002 JSON.org
+ * Copyright (c) 2019 Christos Darisaplis
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * The Software shall be used for Good, not Evil.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package Model;
+
+import java.util.Objects;
+
+/**
+ * A single step of a procedure frame, shown as a process block
+ *
+ * @author Christos Darisaplis
+ */
+public class Step {
+
+    private String name;
+    private Entity entity;//entity that carries out the step
+    private String attributes;
+    private ProcedureFrame frame;//frame holding the step, null if none
+
+    public Step(String name, Entity entity, String attributes) {
+        this.name = Objects.requireNonNull(name);
+        this.entity = Objects.requireNonNull(entity);
+        this.attributes = Objects.requireNonNull(attributes);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = Objects.requireNonNull(name);
+        changed();
+    }
+
+    public Entity getEntity() {
+        return entity;
+    }
+
+    public void setEntity(Entity entity) {
+        Entity old = this.entity;
+        this.entity = Objects.requireNonNull(entity);
+        changed();
+        if (frame != null) {
+            frame.entityChanged(this, old);
+        }
+    }
+
+    /**
+     * Replaces the entity with the equal one shared by all steps, see
+     * EntityRegistry
+     *
+     * @param shared entity equal to the current one
+     */
+    void shareEntity(Entity shared) {
+        entity = shared;
+    }
+
+    public String getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(String attributes) {
+        this.attributes = Objects.requireNonNull(attributes);
+        changed();
+    }
+
+    /**
+     * Lets the frame holding the step know that it has changed
+     */
+    private void changed() {
+        if (frame != null) {
+            frame.changed();
+        }
+    }
+
+    /**
+     * Sets the frame holding the step, see ProcedureFrame
+     *
+     * @param frame frame holding the step, null if none
+     */
+    void setFrame(ProcedureFrame frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * @return frame holding the step, null if none
+     */
+    public ProcedureFrame getFrame() {
+        return frame;
+    }
+}